@@ -0,0 +1,164 @@
+package org.ptr.orders.app.bench;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import ma.glasnost.orika.MapperFactory;
+import ma.glasnost.orika.impl.ConfigurableMapper;
+import org.mapstruct.factory.Mappers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.ptr.orders.app.mapper.CustomerMapper;
+import org.ptr.orders.app.mapper.CustomerRequestMapper;
+import org.ptr.orders.app.mapper.ProductMapper;
+import org.ptr.orders.app.model.Customer;
+import org.ptr.orders.app.model.Product;
+import org.ptr.orders.app.rest.dto.CustomerRequest;
+import org.ptr.orders.app.rest.dto.CustomerResponse;
+import org.ptr.orders.app.rest.dto.ProductResponse;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+
+/**
+ * Generated (MapStruct) mappers against the Orika ConfigurableMapper setup they replaced,
+ * for single objects and for a page of products mapped through Page.map as the service does
+ *
+ * */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "--add-opens=java.base/java.lang=ALL-UNNAMED")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MapperBenchmark {
+
+    private static final int PAGE_SIZE = 100;
+
+    private final CustomerMapper customerMapper = Mappers.getMapper(CustomerMapper.class);
+    private final CustomerRequestMapper customerRequestMapper = Mappers.getMapper(CustomerRequestMapper.class);
+    private final ProductMapper productMapper = Mappers.getMapper(ProductMapper.class);
+
+    private ConfigurableMapper orikaCustomerMapper;
+    private ConfigurableMapper orikaCustomerRequestMapper;
+    private ConfigurableMapper orikaProductMapper;
+
+    private Customer customer;
+    private CustomerRequest customerRequest;
+    private Product product;
+    private Page<Product> productPage;
+
+    @Setup
+    public void setUp() {
+
+        orikaCustomerMapper = new OrikaCustomerMapper();
+        orikaCustomerRequestMapper = new OrikaCustomerRequestMapper();
+        orikaProductMapper = new OrikaProductMapper();
+
+        customer = Customer.builder()
+            .id(1L)
+            .title("Benchmark customer")
+            .isDeleted(Boolean.FALSE)
+            .createdAt(LocalDateTime.now())
+            .modifiedAt(LocalDateTime.now())
+            .build();
+        customerRequest = CustomerRequest.builder()
+            .title("Benchmark customer updated")
+            .modifiedAt(LocalDateTime.now())
+            .build();
+        product = product(1L);
+        List<Product> products = LongStream.rangeClosed(1, PAGE_SIZE).mapToObj(this::product).collect(Collectors.toList());
+        productPage = new PageImpl<>(products);
+    }
+
+    @Benchmark
+    public CustomerResponse customerToResponseOrika() {
+        return orikaCustomerMapper.map(customer, CustomerResponse.class);
+    }
+
+    @Benchmark
+    public CustomerResponse customerToResponseGenerated() {
+        return customerMapper.map(customer);
+    }
+
+    @Benchmark
+    public Customer customerRequestOntoCustomerOrika() {
+        orikaCustomerRequestMapper.map(customerRequest, customer);
+        return customer;
+    }
+
+    @Benchmark
+    public Customer customerRequestOntoCustomerGenerated() {
+        customerRequestMapper.map(customerRequest, customer);
+        return customer;
+    }
+
+    @Benchmark
+    public ProductResponse productToResponseOrika() {
+        return orikaProductMapper.map(product, ProductResponse.class);
+    }
+
+    @Benchmark
+    public ProductResponse productToResponseGenerated() {
+        return productMapper.map(product);
+    }
+
+    @Benchmark
+    public Page<ProductResponse> productPageOrika() {
+        return productPage.map(item -> orikaProductMapper.map(item, ProductResponse.class));
+    }
+
+    @Benchmark
+    public Page<ProductResponse> productPageGenerated() {
+        return productPage.map(item -> productMapper.map(item));
+    }
+
+    private Product product(long id) {
+        return Product.builder()
+            .id(id)
+            .customer(customer)
+            .title("Benchmark product " + id)
+            .description("Benchmark product description")
+            .price(BigDecimal.valueOf(id * 100))
+            .isDeleted(Boolean.FALSE)
+            .createdAt(LocalDateTime.now())
+            .build();
+    }
+
+    private static class OrikaCustomerMapper extends ConfigurableMapper {
+
+        protected void configure(MapperFactory factory) {
+            factory.classMap(Customer.class, CustomerResponse.class).byDefault().register();
+        }
+    }
+
+    private static class OrikaCustomerRequestMapper extends ConfigurableMapper {
+
+        protected void configure(MapperFactory factory) {
+            factory.classMap(CustomerRequest.class, Customer.class)
+                .mapNulls(false)
+                .byDefault().register();
+        }
+    }
+
+    private static class OrikaProductMapper extends ConfigurableMapper {
+
+        protected void configure(MapperFactory factory) {
+            factory.classMap(Product.class, ProductResponse.class)
+                .byDefault()
+                .field("customer.id", "customerId")
+                .mapNulls(Boolean.TRUE)
+                .register();
+        }
+    }
+}
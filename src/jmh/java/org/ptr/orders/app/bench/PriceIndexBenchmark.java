@@ -0,0 +1,142 @@
+package org.ptr.orders.app.bench;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.mockito.Mockito;
+import org.ptr.orders.app.dao.ProductsRepository;
+import org.ptr.orders.app.model.ProductPrice;
+import org.ptr.orders.app.service.EntityCountCache;
+import org.ptr.orders.app.service.ProductPriceIndex;
+import org.ptr.orders.app.service.ProductSearchIndex;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * First page of 10 products of one customer holding {@code productsPerCustomer} products, price range
+ * covering about a tenth of them : price index, binary search over a sorted BigDecimal array,
+ * and filter and sort of the BigDecimal prices as done without any index. The price index loads the customer
+ * through its usual read path, from a repository stub
+ *
+ * */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PriceIndexBenchmark {
+
+    private static final Long CUSTOMER_ID = 1L;
+    private static final int PAGE_SIZE = 10;
+    private static final BigDecimal MIN_PRICE = new BigDecimal("450.00");
+    private static final BigDecimal MAX_PRICE = new BigDecimal("549.99");
+    private static final Comparator<ProductPrice> BY_PRICE =
+        Comparator.comparing(ProductPrice::getPrice).thenComparing(ProductPrice::getProductId);
+
+    @Param("100000")
+    public int productsPerCustomer;
+
+    private ProductPriceIndex productPriceIndex;
+
+    private List<ProductPrice> productPrices;
+
+    private BigDecimal[] sortedPrices;
+
+    private long[] sortedIds;
+
+    @Setup
+    public void setUp() {
+
+        Random random = new Random(42);
+        productPrices = new ArrayList<>(productsPerCustomer);
+        for (long id = 1; id <= productsPerCustomer; id++) {
+            productPrices.add(new ProductPrice(id, CUSTOMER_ID, BigDecimal.valueOf(random.nextInt(100_000), 2)));
+        }
+        ProductsRepository productsRepository = Mockito.mock(ProductsRepository.class);
+        Mockito.when(productsRepository.countByCustomerId(CUSTOMER_ID)).thenReturn((long) productsPerCustomer);
+        Mockito.when(productsRepository.findProductPricesByCustomerId(CUSTOMER_ID)).thenReturn(productPrices);
+        EntityCountCache entityCountCache = new EntityCountCache();
+        entityCountCache.setProductsRepository(productsRepository);
+        ReflectionTestUtils.setField(entityCountCache, "maxCustomers", 1);
+        productPriceIndex = new ProductPriceIndex();
+        productPriceIndex.setProductsRepository(productsRepository);
+        productPriceIndex.setEntityCountCache(entityCountCache);
+        ReflectionTestUtils.setField(productPriceIndex, "maxCustomers", 1);
+        ReflectionTestUtils.setField(productPriceIndex, "maxProductsPerCustomer", productsPerCustomer);
+        priceIndex();
+
+        List<ProductPrice> sorted = productPrices.stream().sorted(BY_PRICE).collect(Collectors.toList());
+        sortedPrices = sorted.stream().map(ProductPrice::getPrice).toArray(BigDecimal[]::new);
+        sortedIds = sorted.stream().mapToLong(ProductPrice::getProductId).toArray();
+    }
+
+    @Benchmark
+    public Optional<ProductSearchIndex.Hits> priceIndex() {
+        return productPriceIndex.find(CUSTOMER_ID, MIN_PRICE, MAX_PRICE, false, 0, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<Long> bigDecimalBinarySearch() {
+
+        int from = lowerBound(MIN_PRICE);
+        int to = upperBound(MAX_PRICE);
+        List<Long> page = new ArrayList<>(PAGE_SIZE);
+        for (int i = from; i < Math.min(to, from + PAGE_SIZE); i++) {
+            page.add(sortedIds[i]);
+        }
+        return page;
+    }
+
+    @Benchmark
+    public List<ProductPrice> bigDecimalFilterSort() {
+        return productPrices.stream()
+            .filter(price -> price.getPrice().compareTo(MIN_PRICE) >= 0 && price.getPrice().compareTo(MAX_PRICE) <= 0)
+            .sorted(BY_PRICE)
+            .limit(PAGE_SIZE)
+            .collect(Collectors.toList());
+    }
+
+    private int lowerBound(BigDecimal price) {
+        int low = 0;
+        int high = sortedPrices.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sortedPrices[middle].compareTo(price) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int upperBound(BigDecimal price) {
+        int low = 0;
+        int high = sortedPrices.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sortedPrices[middle].compareTo(price) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,93 @@
+package org.ptr.orders.app.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.ptr.orders.app.model.ProductTitle;
+import org.ptr.orders.app.service.ProductSearchIndex;
+
+/**
+ * Query latency of the product title index holding {@code products} generated titles
+ * ("adjective noun model-number", {@code productsPerCustomer} per customer), first page of 10 hits :
+ * broad prefix, two term prefix, exact rare term and customer scoped query
+ *
+ * */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Threads(4)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SearchIndexBenchmark {
+
+    private static final String[] ADJECTIVES = {"red", "green", "blue", "black", "white", "silver", "golden",
+        "compact", "portable", "wireless", "smart", "heavy", "light", "classic", "modern", "vintage", "steel",
+        "wooden", "plastic", "carbon"};
+    private static final String[] NOUNS = {"widget", "gadget", "sprocket", "gear", "lamp", "chair", "table",
+        "speaker", "charger", "cable", "router", "camera", "monitor", "keyboard", "mouse", "bottle", "backpack",
+        "jacket", "watch", "wallet"};
+    private static final int INDEX_BATCH = 10_000;
+    private static final int PAGE_SIZE = 10;
+
+    @Param("1000000")
+    public int products;
+
+    @Param("100")
+    public int productsPerCustomer;
+
+    private ProductSearchIndex productSearchIndex;
+
+    @Setup
+    public void setUp() {
+
+        productSearchIndex = new ProductSearchIndex();
+        Random random = new Random(42);
+        List<ProductTitle> batch = new ArrayList<>(INDEX_BATCH);
+        for (long id = 1; id <= products; id++) {
+            String title = ADJECTIVES[random.nextInt(ADJECTIVES.length)] + " "
+                + NOUNS[random.nextInt(NOUNS.length)] + " " + "m" + random.nextInt(products);
+            batch.add(new ProductTitle(id, id / productsPerCustomer + 1, title));
+            if (batch.size() == INDEX_BATCH) {
+                productSearchIndex.index(batch);
+                batch.clear();
+            }
+        }
+        productSearchIndex.index(batch);
+    }
+
+    @Benchmark
+    public ProductSearchIndex.Hits broadPrefix() {
+        return productSearchIndex.search("wid", null, 0, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public ProductSearchIndex.Hits twoTermPrefix() {
+        return productSearchIndex.search("blue wid", null, 0, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public ProductSearchIndex.Hits exactRareTerm() {
+        return productSearchIndex.search("m" + ThreadLocalRandom.current().nextInt(products), null, 0, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public ProductSearchIndex.Hits customerScoped() {
+        long customerId = ThreadLocalRandom.current().nextInt(products / productsPerCustomer) + 1;
+        return productSearchIndex.search("wid", customerId, 0, PAGE_SIZE);
+    }
+}
@@ -0,0 +1,80 @@
+package org.ptr.orders.app.bench;
+
+import java.util.concurrent.ThreadLocalRandom;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.ptr.orders.app.OrdersManagementApplication;
+import org.ptr.orders.app.dao.CustomersRepository;
+import org.ptr.orders.app.model.Customer;
+import org.ptr.orders.app.service.CustomerProductsService;
+import org.ptr.orders.app.service.DatasetGenerator;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Application context running against in-memory H2, seeded by {@link DatasetGenerator} with {@code customers}
+ * customers having {@code productsPerCustomer} products on average, spread as {@code productsDistribution},
+ * shared by all threads of a benchmark trial
+ *
+ * */
+@State(Scope.Benchmark)
+public class SeededApplication {
+
+    static final String[] EMBEDDED_DATABASE_ARGS = {
+        "--spring.datasource.url=jdbc:h2:mem:bench;DB_CLOSE_DELAY=-1",
+        "--spring.datasource.username=sa",
+        "--spring.datasource.password=sa",
+        "--spring.datasource.driver-class-name=org.h2.Driver",
+        "--spring.jpa.show-sql=false"
+    };
+
+    @Param("1000")
+    public int customers;
+
+    @Param("100")
+    public int productsPerCustomer;
+
+    @Param("FIXED")
+    public DatasetGenerator.Distribution productsDistribution;
+
+    private ConfigurableApplicationContext context;
+    private CustomerProductsService customerProductsService;
+    private long[] customerIds;
+
+    @Setup(Level.Trial)
+    public void start() {
+
+        context = new SpringApplicationBuilder(OrdersManagementApplication.class)
+            .web(WebApplicationType.NONE)
+            .run(EMBEDDED_DATABASE_ARGS);
+        customerProductsService = context.getBean(CustomerProductsService.class);
+
+        DatasetGenerator datasetGenerator = context.getBean(DatasetGenerator.class);
+        datasetGenerator.generate(datasetGenerator.configuredSpec().toBuilder()
+            .customers(customers)
+            .productsPerCustomer(productsPerCustomer)
+            .productsDistribution(productsDistribution)
+            .build());
+        customerIds = context.getBean(CustomersRepository.class).findAll().stream()
+            .mapToLong(Customer::getId)
+            .toArray();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    public CustomerProductsService service() {
+        return customerProductsService;
+    }
+
+    public Long randomCustomerId() {
+        return customerIds[ThreadLocalRandom.current().nextInt(customerIds.length)];
+    }
+}
@@ -0,0 +1,91 @@
+package org.ptr.orders.app.bench;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.ptr.orders.app.rest.dto.CustomerResponse;
+import org.ptr.orders.app.rest.dto.CustomersTotalResponse;
+import org.ptr.orders.app.rest.dto.ProductResponse;
+import org.ptr.orders.app.rest.dto.ProductTotalResponse;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * Jackson serialization of listing responses, object mapper configured like the Spring Boot one
+ *
+ * */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SerializationBenchmark {
+
+    @Param({"10", "100"})
+    public int pageSize;
+
+    private ObjectWriter productsWriter;
+    private ObjectWriter customersWriter;
+    private ProductTotalResponse productTotalResponse;
+    private CustomersTotalResponse customersTotalResponse;
+
+    @Setup
+    public void setUp() {
+
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        productsWriter = objectMapper.writerFor(ProductTotalResponse.class);
+        customersWriter = objectMapper.writerFor(CustomersTotalResponse.class);
+
+        productTotalResponse = ProductTotalResponse.builder()
+            .productsList(LongStream.rangeClosed(1, pageSize).mapToObj(id -> ProductResponse.builder()
+                .id(id)
+                .customerId(1L)
+                .title("Benchmark product " + id)
+                .price(BigDecimal.valueOf(id * 100 + 99, 2))
+                .isDeleted(Boolean.FALSE)
+                .createdAt(LocalDateTime.now())
+                .modifiedAt(LocalDateTime.now())
+                .build()
+            ).collect(Collectors.toList()))
+            .currentPage(0)
+            .totalItems(10_000L)
+            .build();
+        customersTotalResponse = CustomersTotalResponse.builder()
+            .customersList(LongStream.rangeClosed(1, pageSize).mapToObj(id -> CustomerResponse.builder()
+                .id(id)
+                .title("Benchmark customer " + id)
+                .isDeleted(Boolean.FALSE)
+                .createdAt(LocalDateTime.now())
+                .build()
+            ).collect(Collectors.toList()))
+            .currentPage(0)
+            .totalItems(10_000L)
+            .build();
+    }
+
+    @Benchmark
+    public byte[] productTotalResponse() throws JsonProcessingException {
+        return productsWriter.writeValueAsBytes(productTotalResponse);
+    }
+
+    @Benchmark
+    public byte[] customersTotalResponse() throws JsonProcessingException {
+        return customersWriter.writeValueAsBytes(customersTotalResponse);
+    }
+}
@@ -0,0 +1,44 @@
+package org.ptr.orders.app.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.ptr.orders.app.rest.dto.CustomerResponse;
+import org.ptr.orders.app.rest.dto.ProductResponse;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+
+/**
+ * CustomerProductsService read paths against seeded embedded database, random customer per call
+ *
+ * */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Threads(4)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ServiceBenchmark {
+
+    @Benchmark
+    public Page<ProductResponse> getProductsByCustomerIdFirstPage(SeededApplication application) {
+        return application.service().getProductsByCustomerId(application.randomCustomerId(), PageRequest.of(0, 10));
+    }
+
+    @Benchmark
+    public Page<ProductResponse> getProductsByCustomerIdLastPage(SeededApplication application) {
+        int lastPage = Math.max(0, application.productsPerCustomer / 10 - 1);
+        return application.service().getProductsByCustomerId(application.randomCustomerId(), PageRequest.of(lastPage, 10));
+    }
+
+    @Benchmark
+    public CustomerResponse getCustomerById(SeededApplication application) {
+        return application.service().getCustomerById(application.randomCustomerId());
+    }
+}
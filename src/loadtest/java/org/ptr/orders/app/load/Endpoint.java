@@ -0,0 +1,138 @@
+package org.ptr.orders.app.load;
+
+import java.math.BigDecimal;
+import java.util.Random;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPatch;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+
+/**
+ * Endpoints of {@code CustomersProductsController} driven by the load test, named as in {@code load.mix}.
+ * Requests pick customers and products of the generated dataset at random
+ *
+ * */
+public enum Endpoint {
+
+    GET_CUSTOMER("getCustomer") {
+        @Override
+        HttpUriRequest request(String baseUrl, Dataset dataset, Random random) {
+            return new HttpGet(baseUrl + "/customers/" + dataset.randomCustomerId(random));
+        }
+    },
+    LIST_PRODUCTS("listProducts") {
+        @Override
+        HttpUriRequest request(String baseUrl, Dataset dataset, Random random) {
+            return new HttpGet(baseUrl + "/customers/" + dataset.randomCustomerId(random) + "/products?size=20");
+        }
+    },
+    LIST_PRODUCTS_BY_PRICE("listProductsByPrice") {
+        @Override
+        HttpUriRequest request(String baseUrl, Dataset dataset, Random random) {
+            return new HttpGet(baseUrl + "/customers/" + dataset.randomCustomerId(random)
+                + "/products?size=20&minPrice=10&maxPrice=100&sort=price,desc");
+        }
+    },
+    GET_PRODUCT("getProduct") {
+        @Override
+        HttpUriRequest request(String baseUrl, Dataset dataset, Random random) {
+            return new HttpGet(baseUrl + "/products/" + dataset.randomProductId(random));
+        }
+    },
+    SEARCH_PRODUCTS("searchProducts") {
+        @Override
+        HttpUriRequest request(String baseUrl, Dataset dataset, Random random) {
+            return new HttpGet(baseUrl + "/products/search?q=" + SEARCH_QUERIES[random.nextInt(SEARCH_QUERIES.length)]);
+        }
+    },
+    CREATE_PRODUCT("createProduct") {
+        @Override
+        HttpUriRequest request(String baseUrl, Dataset dataset, Random random) {
+            HttpPost post = new HttpPost(baseUrl + "/customers/" + dataset.randomCustomerId(random) + "/products");
+            post.setEntity(json("{\"title\":\"Load product " + random.nextInt(1_000_000) + "\",\"price\":"
+                + randomPrice(random) + "}"));
+            return post;
+        }
+    },
+    UPDATE_PRODUCT("updateProduct") {
+        @Override
+        HttpUriRequest request(String baseUrl, Dataset dataset, Random random) {
+            HttpPut put = new HttpPut(baseUrl + "/products/" + dataset.randomProductId(random));
+            put.setEntity(json("{\"title\":\"Load update " + random.nextInt(1_000_000) + "\",\"price\":"
+                + randomPrice(random) + "}"));
+            return put;
+        }
+    },
+    PATCH_PRODUCT("patchProduct") {
+        @Override
+        HttpUriRequest request(String baseUrl, Dataset dataset, Random random) {
+            HttpPatch patch = new HttpPatch(baseUrl + "/products/" + dataset.randomProductId(random));
+            patch.setEntity(json("{\"price\":" + randomPrice(random) + "}"));
+            return patch;
+        }
+    };
+
+    private static final String[] SEARCH_QUERIES = {"pro", "smart", "silver", "golden", "eco", "max+pre", "nova+s"};
+
+    private final String key;
+
+    Endpoint(String key) {
+        this.key = key;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    abstract HttpUriRequest request(String baseUrl, Dataset dataset, Random random);
+
+    public static Endpoint byKey(String key) {
+        for (Endpoint endpoint : values()) {
+            if (endpoint.key.equals(key)) {
+                return endpoint;
+            }
+        }
+        throw new IllegalArgumentException("unknown endpoint in load.mix : " + key);
+    }
+
+    private static StringEntity json(String body) {
+        return new StringEntity(body, ContentType.APPLICATION_JSON);
+    }
+
+    private static BigDecimal randomPrice(Random random) {
+        return BigDecimal.valueOf(1 + random.nextInt(100_000), 2);
+    }
+
+    /**
+     * ids of the customers and live products requests are spread over
+     * */
+    public static final class Dataset {
+
+        private final long[] customerIds;
+        private final long[] productIds;
+
+        public Dataset(long[] customerIds, long[] productIds) {
+            this.customerIds = customerIds;
+            this.productIds = productIds;
+        }
+
+        public int customers() {
+            return customerIds.length;
+        }
+
+        public int products() {
+            return productIds.length;
+        }
+
+        long randomCustomerId(Random random) {
+            return customerIds[random.nextInt(customerIds.length)];
+        }
+
+        long randomProductId(Random random) {
+            return productIds[random.nextInt(productIds.length)];
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package org.ptr.orders.app.load;
+
+import java.io.Serializable;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Getter
+@Setter
+public class EndpointResult implements Serializable {
+
+    private String endpoint;
+    private Long requests;
+    private Long errors;
+    private Double throughput;
+    private Double meanMillis;
+    private Double p50Millis;
+    private Double p90Millis;
+    private Double p99Millis;
+    private Double p999Millis;
+    private Double maxMillis;
+
+}
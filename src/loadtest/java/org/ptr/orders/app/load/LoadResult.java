@@ -0,0 +1,34 @@
+package org.ptr.orders.app.load;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * saved result of one load test run, settings included so runs are compared like for like
+ * */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Getter
+@Setter
+public class LoadResult implements Serializable {
+
+    private String startedAt;
+    private Map<String, String> settings;
+    private Integer customers;
+    private Integer products;
+    private Double elapsedSeconds;
+    private Long requests;
+    private Long errors;
+    private Double throughput;
+    private List<EndpointResult> endpoints;
+
+}
@@ -0,0 +1,321 @@
+package org.ptr.orders.app.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.HdrHistogram.Recorder;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.ptr.orders.app.OrdersManagementApplication;
+import org.ptr.orders.app.load.Endpoint.Dataset;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ *
+ * HTTP load test of the REST API : boots the application on a random port against in-memory H2 with a dataset
+ * from the dataset generator, then {@code load.threads} clients send requests picked from {@code load.mix}
+ * (endpoint=weight pairs) for {@code load.warmup-seconds} not measured and {@code load.duration-seconds}
+ * measured. Clients are closed loop unless {@code load.rate} (requests per second, all clients together) is set,
+ * latency is then taken from the time each request was due, so a stalled server is not hidden by clients
+ * waiting on it (coordinated omission).
+ * Throughput and HDR latency percentiles per endpoint are printed and saved to {@code load.results-dir} as json
+ * summary and HdrHistogram log (one histogram per endpoint, tagged with its name, for HistogramLogAnalyzer
+ * and similar tools). With {@code load.baseline} naming an earlier json summary, changes against it are printed.
+ *
+ * */
+@Slf4j
+public final class LoadTest {
+
+    private static final String[] EMBEDDED_DATABASE_ARGS = {
+        "--spring.datasource.url=jdbc:h2:mem:load;DB_CLOSE_DELAY=-1",
+        "--spring.datasource.username=sa",
+        "--spring.datasource.password=sa",
+        "--spring.datasource.driver-class-name=org.h2.Driver",
+        "--spring.jpa.show-sql=false",
+        "--server.port=0"
+    };
+
+    private static final String[][] DEFAULT_SETTINGS = {
+        {"load.threads", "16"},
+        {"load.warmup-seconds", "10"},
+        {"load.duration-seconds", "30"},
+        {"load.rate", "0"},
+        {"load.mix", "getCustomer=20,listProducts=25,listProductsByPrice=10,getProduct=20,searchProducts=5,"
+            + "createProduct=5,updateProduct=10,patchProduct=5"},
+        {"load.customers", "1000"},
+        {"load.products-per-customer", "100"},
+        {"load.products-distribution", "ZIPF"},
+        {"load.app-args", ""},
+        {"load.results-dir", "target/loadtest"},
+        {"load.baseline", ""}
+    };
+
+    private static final DateTimeFormatter RUN_NAME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    private static final double MICROS_PER_MILLI = 1000.0;
+
+    private final Map<String, String> settings;
+    private final Map<Endpoint, Recorder> recorders = new EnumMap<>(Endpoint.class);
+    private final Map<Endpoint, LongAdder> errors = new EnumMap<>(Endpoint.class);
+    private final Endpoint[] endpoints;
+    private final int[] cumulativeWeights;
+
+    private volatile boolean stopped;
+
+    private LoadTest(Map<String, String> settings) {
+
+        this.settings = settings;
+        Map<Endpoint, Integer> mix = Arrays.stream(settings.get("load.mix").split(","))
+            .map(String::trim)
+            .filter(pair -> !pair.isEmpty())
+            .map(pair -> pair.split("="))
+            .collect(Collectors.toMap(pair -> Endpoint.byKey(pair[0].trim()), pair -> Integer.valueOf(pair[1].trim()),
+                Integer::sum, () -> new EnumMap<>(Endpoint.class)));
+        endpoints = mix.keySet().toArray(new Endpoint[0]);
+        cumulativeWeights = new int[endpoints.length];
+        int total = 0;
+        for (int i = 0; i < endpoints.length; i++) {
+            total += mix.get(endpoints[i]);
+            cumulativeWeights[i] = total;
+            recorders.put(endpoints[i], new Recorder(3));
+            errors.put(endpoints[i], new LongAdder());
+        }
+        if (total <= 0) {
+            throw new IllegalArgumentException("load.mix has no weight : " + settings.get("load.mix"));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        Map<String, String> settings = new LinkedHashMap<>();
+        for (String[] setting : DEFAULT_SETTINGS) {
+            settings.put(setting[0], System.getProperty(setting[0], setting[1]).trim());
+        }
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        new LoadTest(settings).run();
+        System.exit(0);
+    }
+
+    private void run() throws Exception {
+
+        List<String> appArgs = new ArrayList<>(Arrays.asList(EMBEDDED_DATABASE_ARGS));
+        appArgs.add("--app.dataset.customers=" + settings.get("load.customers"));
+        appArgs.add("--app.dataset.products-per-customer=" + settings.get("load.products-per-customer"));
+        appArgs.add("--app.dataset.products-distribution=" + settings.get("load.products-distribution"));
+        if (!settings.get("load.app-args").isEmpty()) {
+            appArgs.addAll(Arrays.asList(settings.get("load.app-args").split("\\s+")));
+        }
+        log.info("starting application : {}", appArgs);
+        try (ServletWebServerApplicationContext context = (ServletWebServerApplicationContext)
+            new SpringApplicationBuilder(OrdersManagementApplication.class).run(appArgs.toArray(new String[0]))) {
+
+            JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+            Dataset dataset = new Dataset(
+                ids(jdbcTemplate, "select id from customers where is_deleted = false"),
+                ids(jdbcTemplate, "select id from products where is_deleted = false"));
+            String baseUrl = "http://localhost:" + context.getWebServer().getPort();
+            LoadResult result = drive(baseUrl, dataset);
+            report(result, System.out);
+            save(result);
+        }
+    }
+
+    private LoadResult drive(String baseUrl, Dataset dataset) throws Exception {
+
+        int threads = Integer.parseInt(settings.get("load.threads"));
+        double rate = Double.parseDouble(settings.get("load.rate"));
+        long intervalNanos = rate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) * threads / rate) : 0L;
+        LocalDateTime startedAt = LocalDateTime.now();
+        log.info("{} clients against {} customers and {} products, {}", threads, dataset.customers(),
+            dataset.products(), rate > 0 ? rate + " requests per second" : "closed loop");
+
+        ExecutorService clients = Executors.newFixedThreadPool(threads);
+        try (CloseableHttpClient httpClient = HttpClients.custom()
+            .setMaxConnTotal(threads)
+            .setMaxConnPerRoute(threads)
+            .disableCookieManagement()
+            .build()) {
+            for (int i = 0; i < threads; i++) {
+                clients.execute(() -> client(httpClient, baseUrl, dataset, intervalNanos));
+            }
+            TimeUnit.SECONDS.sleep(Long.parseLong(settings.get("load.warmup-seconds")));
+            recorders.values().forEach(Recorder::reset);
+            errors.values().forEach(LongAdder::reset);
+            long measureStarted = System.nanoTime();
+            TimeUnit.SECONDS.sleep(Long.parseLong(settings.get("load.duration-seconds")));
+            stopped = true;
+            clients.shutdown();
+            clients.awaitTermination(1, TimeUnit.MINUTES);
+            double elapsedSeconds = (System.nanoTime() - measureStarted) / 1e9;
+            return result(startedAt, dataset, elapsedSeconds);
+        }
+    }
+
+    private void client(CloseableHttpClient httpClient, String baseUrl, Dataset dataset, long intervalNanos) {
+
+        Random random = ThreadLocalRandom.current();
+        long due = System.nanoTime() + (intervalNanos > 0 ? (long) (random.nextDouble() * intervalNanos) : 0L);
+        while (!stopped) {
+            if (intervalNanos > 0) {
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+            }
+            Endpoint endpoint = pick(random);
+            long started = intervalNanos > 0 ? due : System.nanoTime();
+            boolean failed;
+            try {
+                HttpUriRequest request = endpoint.request(baseUrl, dataset, random);
+                HttpResponse response = httpClient.execute(request);
+                EntityUtils.consume(response.getEntity());
+                failed = response.getStatusLine().getStatusCode() >= 300;
+            } catch (IOException | RuntimeException e) {
+                failed = true;
+            }
+            long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started);
+            if (failed) {
+                errors.get(endpoint).increment();
+            } else {
+                recorders.get(endpoint).recordValue(Math.max(1L, micros));
+            }
+            due += intervalNanos;
+        }
+    }
+
+    private Endpoint pick(Random random) {
+
+        int value = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (value < cumulativeWeights[i]) {
+                return endpoints[i];
+            }
+        }
+        return endpoints[endpoints.length - 1];
+    }
+
+    private LoadResult result(LocalDateTime startedAt, Dataset dataset, double elapsedSeconds) throws IOException {
+
+        File resultsDir = new File(settings.get("load.results-dir"));
+        resultsDir.mkdirs();
+        String runName = "load-" + RUN_NAME.format(startedAt);
+        List<EndpointResult> endpointResults = new ArrayList<>();
+        try (PrintStream hlog = new PrintStream(new File(resultsDir, runName + ".hlog"))) {
+            HistogramLogWriter logWriter = new HistogramLogWriter(hlog);
+            logWriter.outputLogFormatVersion();
+            logWriter.outputLegend();
+            for (Endpoint endpoint : endpoints) {
+                Histogram histogram = recorders.get(endpoint).getIntervalHistogram();
+                histogram.setTag(endpoint.getKey());
+                logWriter.outputIntervalHistogram(histogram);
+                endpointResults.add(endpointResult(endpoint, histogram, elapsedSeconds));
+            }
+        }
+        long requests = endpointResults.stream().mapToLong(EndpointResult::getRequests).sum();
+        return LoadResult.builder()
+            .startedAt(startedAt.toString())
+            .settings(settings)
+            .customers(dataset.customers())
+            .products(dataset.products())
+            .elapsedSeconds(elapsedSeconds)
+            .requests(requests)
+            .errors(endpointResults.stream().mapToLong(EndpointResult::getErrors).sum())
+            .throughput(requests / elapsedSeconds)
+            .endpoints(endpointResults)
+            .build();
+    }
+
+    private EndpointResult endpointResult(Endpoint endpoint, Histogram histogram, double elapsedSeconds) {
+        return EndpointResult.builder()
+            .endpoint(endpoint.getKey())
+            .requests(histogram.getTotalCount())
+            .errors(errors.get(endpoint).sum())
+            .throughput(histogram.getTotalCount() / elapsedSeconds)
+            .meanMillis(histogram.getMean() / MICROS_PER_MILLI)
+            .p50Millis(histogram.getValueAtPercentile(50) / MICROS_PER_MILLI)
+            .p90Millis(histogram.getValueAtPercentile(90) / MICROS_PER_MILLI)
+            .p99Millis(histogram.getValueAtPercentile(99) / MICROS_PER_MILLI)
+            .p999Millis(histogram.getValueAtPercentile(99.9) / MICROS_PER_MILLI)
+            .maxMillis(histogram.getMaxValue() / MICROS_PER_MILLI)
+            .build();
+    }
+
+    private void report(LoadResult result, PrintStream out) throws IOException {
+
+        out.printf("%n%-20s %9s %7s %10s %9s %9s %9s %9s %9s %9s%n", "endpoint", "requests", "errors", "req/s",
+            "mean ms", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (EndpointResult endpoint : result.getEndpoints()) {
+            out.printf("%-20s %9d %7d %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f %9.2f%n", endpoint.getEndpoint(),
+                endpoint.getRequests(), endpoint.getErrors(), endpoint.getThroughput(), endpoint.getMeanMillis(),
+                endpoint.getP50Millis(), endpoint.getP90Millis(), endpoint.getP99Millis(), endpoint.getP999Millis(),
+                endpoint.getMaxMillis());
+        }
+        out.printf("%-20s %9d %7d %10.1f%n", "total", result.getRequests(), result.getErrors(), result.getThroughput());
+
+        String baselinePath = settings.get("load.baseline");
+        if (baselinePath.isEmpty()) {
+            return;
+        }
+        LoadResult baseline = objectMapper().readValue(new File(baselinePath), LoadResult.class);
+        Map<String, EndpointResult> baselineEndpoints = baseline.getEndpoints().stream()
+            .collect(Collectors.toMap(EndpointResult::getEndpoint, Function.identity()));
+        out.printf("%nagainst %s (%s)%n%-20s %10s %10s %10s%n", baselinePath, baseline.getStartedAt(), "endpoint",
+            "req/s", "p50", "p99");
+        for (EndpointResult endpoint : result.getEndpoints()) {
+            EndpointResult before = baselineEndpoints.get(endpoint.getEndpoint());
+            if (before != null) {
+                out.printf("%-20s %10s %10s %10s%n", endpoint.getEndpoint(),
+                    change(before.getThroughput(), endpoint.getThroughput()),
+                    change(before.getP50Millis(), endpoint.getP50Millis()),
+                    change(before.getP99Millis(), endpoint.getP99Millis()));
+            }
+        }
+        out.printf("%-20s %10s%n", "total", change(baseline.getThroughput(), result.getThroughput()));
+    }
+
+    private void save(LoadResult result) throws IOException {
+
+        File summary = new File(settings.get("load.results-dir"),
+            "load-" + RUN_NAME.format(LocalDateTime.parse(result.getStartedAt())) + ".json");
+        objectMapper().writeValue(summary, result);
+        log.info("results saved to {}", summary.getAbsolutePath());
+    }
+
+    private static String change(Double before, Double after) {
+        return before == null || before == 0 ? "n/a" : String.format("%+.1f%%", (after - before) * 100 / before);
+    }
+
+    private static long[] ids(JdbcTemplate jdbcTemplate, String query) {
+        return jdbcTemplate.queryForList(query, Long.class).stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private static ObjectMapper objectMapper() {
+        return new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+    }
+}
@@ -0,0 +1,233 @@
+package org.ptr.orders.app.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.ptr.orders.app.OrdersManagementApplication;
+
+/**
+ *
+ * Startup benchmark : time from launching a fresh JVM running the application to its first successful
+ * {@code GET /customers/1}, measured {@code startup.runs} times with the default configuration and with the
+ * {@code fast-startup} profile. The default configuration creates the schema and seeds in-memory H2, the
+ * profile runs against an H2 file database prepared beforehand by one unmeasured default run, as it would
+ * against a production schema. Medians are printed and saved to {@code startup.results-dir}. The run fails
+ * when the profile median exceeds {@code startup.budget-ms}, or regresses by more than {@code startup.tolerance}
+ * against {@code startup.baseline} : an earlier json summary, by default the latest passing one in the results
+ * directory. Summaries of failing runs are saved as {@code failed-startup-*.json} so they never become the baseline
+ *
+ * */
+@Slf4j
+public final class StartupBenchmark {
+
+    private static final String[][] DEFAULT_SETTINGS = {
+        {"startup.runs", "5"},
+        {"startup.budget-ms", "25000"},
+        {"startup.baseline", "latest"},
+        {"startup.tolerance", "0.2"},
+        {"startup.timeout-ms", "120000"},
+        {"startup.jvm-args", "-Xmx512m"},
+        {"startup.results-dir", "target/startup"}
+    };
+
+    private static final String FAST_STARTUP_PROFILE = "fast-startup";
+    private static final String FIRST_REQUEST_PATH = "/customers/1";
+    private static final long POLL_MILLIS = 10L;
+    private static final DateTimeFormatter RUN_NAME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final Map<String, String> settings;
+    private final File resultsDir;
+
+    private StartupBenchmark(Map<String, String> settings) {
+        this.settings = settings;
+        this.resultsDir = new File(settings.get("startup.results-dir")).getAbsoluteFile();
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        Map<String, String> settings = new LinkedHashMap<>();
+        for (String[] setting : DEFAULT_SETTINGS) {
+            settings.put(setting[0], System.getProperty(setting[0], setting[1]).trim());
+        }
+        System.exit(new StartupBenchmark(settings).run() ? 0 : 1);
+    }
+
+    private boolean run() throws Exception {
+
+        resultsDir.mkdirs();
+        File baseline = baseline();
+        String fileDatabase = "jdbc:h2:file:" + new File(resultsDir, "db").getPath();
+        for (File file : resultsDir.listFiles((dir, name) -> name.startsWith("db."))) {
+            file.delete();
+        }
+        log.info("preparing schema and data of {}", fileDatabase);
+        start("prepare", appArgs(fileDatabase, "--spring.jpa.hibernate.ddl-auto=create"));
+
+        int runs = Integer.parseInt(settings.get("startup.runs"));
+        List<Long> defaultMillis = new ArrayList<>();
+        List<Long> fastMillis = new ArrayList<>();
+        for (int i = 0; i < runs; i++) {
+            defaultMillis.add(start("default-" + i, appArgs("jdbc:h2:mem:startup;DB_CLOSE_DELAY=-1")));
+            fastMillis.add(start(FAST_STARTUP_PROFILE + "-" + i,
+                appArgs(fileDatabase, "--spring.profiles.active=" + FAST_STARTUP_PROFILE)));
+        }
+
+        long budgetMillis = Long.parseLong(settings.get("startup.budget-ms"));
+        long defaultMedian = median(defaultMillis);
+        long fastMedian = median(fastMillis);
+        System.out.printf("%n%-14s %10s %10s %10s   runs (ms)%n", "configuration", "median ms", "min ms", "max ms");
+        print("default", defaultMillis);
+        print(FAST_STARTUP_PROFILE, fastMillis);
+        System.out.printf("%s budget %d ms : %s%n", FAST_STARTUP_PROFILE, budgetMillis,
+            fastMedian <= budgetMillis ? "met" : "EXCEEDED");
+        boolean regressed = baseline != null && regressed(baseline, defaultMedian, fastMedian);
+        boolean passed = fastMedian <= budgetMillis && !regressed;
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("startedAt", LocalDateTime.now().toString());
+        result.put("settings", settings);
+        result.put("defaultMillis", defaultMillis);
+        result.put("defaultMedianMillis", defaultMedian);
+        result.put("fastStartupMillis", fastMillis);
+        result.put("fastStartupMedianMillis", fastMedian);
+        result.put("passed", passed);
+        File summary = new File(resultsDir,
+            (passed ? "" : "failed-") + "startup-" + RUN_NAME.format(LocalDateTime.now()) + ".json");
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(summary, result);
+        log.info("results saved to {}", summary);
+        return passed;
+    }
+
+    /**
+     * @return summary to compare with, null when {@code startup.baseline} is empty or no earlier run passed
+     * */
+    private File baseline() {
+
+        String baseline = settings.get("startup.baseline");
+        if (!"latest".equals(baseline)) {
+            return baseline.isEmpty() ? null : new File(baseline);
+        }
+        File[] summaries = resultsDir.listFiles((dir, name) -> name.startsWith("startup-") && name.endsWith(".json"));
+        return summaries == null ? null
+            : Arrays.stream(summaries).max(Comparator.comparing(File::getName)).orElse(null);
+    }
+
+    /**
+     * @return true when the profile median is slower than the baseline one by more than the tolerance
+     * */
+    private boolean regressed(File baseline, long defaultMedian, long fastMedian) throws IOException {
+
+        Map<?, ?> before = new ObjectMapper().readValue(baseline, Map.class);
+        long baselineDefault = ((Number) before.get("defaultMedianMillis")).longValue();
+        long baselineFast = ((Number) before.get("fastStartupMedianMillis")).longValue();
+        double tolerance = Double.parseDouble(settings.get("startup.tolerance"));
+        boolean regressed = fastMedian > baselineFast * (1 + tolerance);
+        System.out.printf("%nagainst %s (%s)%n%-14s %+9.1f%%%n%-14s %+9.1f%%   tolerance %.0f%% : %s%n",
+            baseline.getName(), before.get("startedAt"), "default", change(baselineDefault, defaultMedian),
+            FAST_STARTUP_PROFILE, change(baselineFast, fastMedian), tolerance * 100, regressed ? "REGRESSED" : "met");
+        return regressed;
+    }
+
+    private static double change(long before, long after) {
+        return before > 0 ? (after - before) * 100.0 / before : 0.0;
+    }
+
+    /**
+     * launches the application in a new JVM, waits for its first successful request and stops it gracefully
+     * @return milliseconds from launch to first successful request
+     * */
+    private long start(String runName, List<String> appArgs) throws IOException, InterruptedException {
+
+        int port = freePort();
+        List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+        command.addAll(Arrays.asList(settings.get("startup.jvm-args").split("\\s+")));
+        command.add("-Dspring.devtools.restart.enabled=false");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(OrdersManagementApplication.class.getName());
+        command.add("--server.port=" + port);
+        command.addAll(appArgs);
+
+        File output = new File(resultsDir, runName + ".log");
+        long started = System.nanoTime();
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(output).start();
+        try {
+            long deadline = started + TimeUnit.MILLISECONDS.toNanos(Long.parseLong(settings.get("startup.timeout-ms")));
+            URL url = new URL("http://localhost:" + port + FIRST_REQUEST_PATH);
+            while (!succeeds(url)) {
+                if (!process.isAlive() || System.nanoTime() > deadline) {
+                    throw new IllegalStateException(
+                        runName + " did not answer " + FIRST_REQUEST_PATH + ", see " + output);
+                }
+                TimeUnit.MILLISECONDS.sleep(POLL_MILLIS);
+            }
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+            log.info("{} : first successful request after {} ms", runName, millis);
+            return millis;
+        } finally {
+            process.destroy();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    private static boolean succeeds(URL url) {
+
+        try {
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setConnectTimeout(100);
+            connection.setReadTimeout(5000);
+            try {
+                return connection.getResponseCode() == HttpURLConnection.HTTP_OK;
+            } finally {
+                connection.disconnect();
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static List<String> appArgs(String databaseUrl, String... args) {
+
+        List<String> appArgs = new ArrayList<>(Arrays.asList("--spring.datasource.url=" + databaseUrl,
+            "--spring.datasource.username=sa", "--spring.datasource.password=sa",
+            "--spring.datasource.driver-class-name=org.h2.Driver"));
+        appArgs.addAll(Arrays.asList(args));
+        return appArgs;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static long median(List<Long> millis) {
+
+        List<Long> sorted = new ArrayList<>(millis);
+        sorted.sort(Long::compare);
+        return sorted.get(sorted.size() / 2);
+    }
+
+    private static void print(String configuration, List<Long> millis) {
+        System.out.printf("%-14s %10d %10d %10d   %s%n", configuration, median(millis),
+            millis.stream().mapToLong(Long::longValue).min().orElse(0L),
+            millis.stream().mapToLong(Long::longValue).max().orElse(0L), millis);
+    }
+}
@@ -4,7 +4,9 @@ package org.ptr.orders.app;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.util.Arrays;
+import java.util.TimeZone;
 import lombok.extern.slf4j.Slf4j;
 import org.ptr.orders.app.dao.CustomersRepository;
 import org.ptr.orders.app.dao.ProductsRepository;
@@ -13,6 +15,7 @@ import org.ptr.orders.app.model.Product;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 
 
@@ -23,12 +26,20 @@ public class OrdersManagementApplication {
     public static final String TEST_CUSTOMER = "Test customer ";
     public static final String TEST_PRODUCT = "Test product ";
 
+    /**
+     * runs in UTC : LocalDateTime columns are then written and read without daylight saving shifts
+     * */
     public static final void main(String[] args){
 
+        TimeZone.setDefault(TimeZone.getTimeZone(ZoneOffset.UTC));
         SpringApplication.run(OrdersManagementApplication.class, args);
     }
 
+    /**
+     * demo rows, off with {@code app.seed.enabled=false} where the schema and data are managed elsewhere
+     * */
     @Bean
+    @ConditionalOnProperty(name = "app.seed.enabled", havingValue = "true", matchIfMissing = true)
     public CommandLineRunner run(CustomersRepository customersRepository, ProductsRepository productsRepository) {
         return (String[] args) -> {
             Arrays.asList(1, 2 , 3 , 4, 5).stream().forEach((i) -> {
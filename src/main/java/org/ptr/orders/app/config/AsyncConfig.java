@@ -0,0 +1,58 @@
+package org.ptr.orders.app.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ *
+ * Bulkhead executors of the async mode : reads and writes run on separately sized pools with bounded queues,
+ * so a burst of slow listing queries cannot take threads or queue slots away from writes and vice versa.
+ * Enabled by {@code app.async.enabled=true}
+ *
+ * */
+@Configuration
+@ConditionalOnProperty(name = "app.async.enabled", havingValue = "true")
+public class AsyncConfig {
+
+    public static final String READ_EXECUTOR = "readExecutor";
+    public static final String WRITE_EXECUTOR = "writeExecutor";
+
+    private static final int SHUTDOWN_AWAIT_SECONDS = 10;
+
+    @Value("${app.async.read.pool-size:16}")
+    private int readPoolSize;
+
+    @Value("${app.async.read.queue-capacity:200}")
+    private int readQueueCapacity;
+
+    @Value("${app.async.write.pool-size:4}")
+    private int writePoolSize;
+
+    @Value("${app.async.write.queue-capacity:50}")
+    private int writeQueueCapacity;
+
+    @Bean(READ_EXECUTOR)
+    public ThreadPoolTaskExecutor readExecutor() {
+        return executor("read-", readPoolSize, readQueueCapacity);
+    }
+
+    @Bean(WRITE_EXECUTOR)
+    public ThreadPoolTaskExecutor writeExecutor() {
+        return executor("write-", writePoolSize, writeQueueCapacity);
+    }
+
+    private static ThreadPoolTaskExecutor executor(String threadNamePrefix, int poolSize, int queueCapacity) {
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix(threadNamePrefix);
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(SHUTDOWN_AWAIT_SECONDS);
+        return executor;
+    }
+}
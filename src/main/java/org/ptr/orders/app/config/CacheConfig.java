@@ -0,0 +1,50 @@
+package org.ptr.orders.app.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.util.Arrays;
+import org.ptr.orders.app.service.CustomerProductsService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.cache.support.SimpleCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+/**
+ *
+ * In-process by-id caches of customers and products, each bounded by its own Caffeine spec
+ * (size and TTL eviction) from application.properties, with hit / miss / eviction statistics recorded.
+ * Cache advice wraps transaction advice (whose order is left at {@link Ordered#LOWEST_PRECEDENCE}) : entries are
+ * evicted once the write has committed and cache hits open no transaction. A read that missed before the commit
+ * and stores the old row after the eviction is refused by {@link EvictionGuardedCaffeineCache}
+ *
+ * */
+@Configuration
+@EnableCaching(order = CacheConfig.CACHE_ADVICE_ORDER)
+public class CacheConfig {
+
+    public static final int CACHE_ADVICE_ORDER = Ordered.LOWEST_PRECEDENCE - 1;
+
+    @Value("${app.cache.customers.spec:maximumSize=10000,expireAfterWrite=10m}")
+    private String customersCacheSpec;
+
+    @Value("${app.cache.products.spec:maximumSize=50000,expireAfterWrite=5m}")
+    private String productsCacheSpec;
+
+    @Bean
+    public CacheManager cacheManager() {
+
+        SimpleCacheManager cacheManager = new SimpleCacheManager();
+        cacheManager.setCaches(Arrays.asList(
+            caffeineCache(CustomerProductsService.CUSTOMERS_CACHE, customersCacheSpec),
+            caffeineCache(CustomerProductsService.PRODUCTS_CACHE, productsCacheSpec)
+        ));
+        return cacheManager;
+    }
+
+    private static CaffeineCache caffeineCache(String name, String spec) {
+        return new EvictionGuardedCaffeineCache(name, Caffeine.from(spec).recordStats().build());
+    }
+}
@@ -0,0 +1,85 @@
+package org.ptr.orders.app.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.springframework.cache.caffeine.CaffeineCache;
+
+/**
+ *
+ * Caffeine cache refusing stale puts : a value read from the database after a miss is not stored when its key
+ * (or the whole cache) was evicted between the miss and the put, because the read may have seen the row before
+ * the write that evicted it committed. The miss is remembered per thread for the last key looked up, evictions
+ * are counted per key stripe, so a key sharing a stripe with an evicted one only costs another miss
+ *
+ * */
+class EvictionGuardedCaffeineCache extends CaffeineCache {
+
+    private static final int STRIPES = 1024;
+
+    private final AtomicLongArray evictions = new AtomicLongArray(STRIPES);
+
+    private final AtomicLong clears = new AtomicLong();
+
+    private final ThreadLocal<Miss> lastMiss = new ThreadLocal<>();
+
+    EvictionGuardedCaffeineCache(String name, Cache<Object, Object> cache) {
+        super(name, cache);
+    }
+
+    @Override
+    protected Object lookup(Object key) {
+
+        Object value = super.lookup(key);
+        if (value == null) {
+            lastMiss.set(new Miss(key, evictions.get(stripeOf(key)), clears.get()));
+        }
+        return value;
+    }
+
+    /**
+     * puts not preceded by a miss of the same key on this thread, as of {@code @CachePut}, are stored
+     * */
+    @Override
+    public void put(Object key, Object value) {
+
+        Miss miss = lastMiss.get();
+        if (miss != null && miss.key.equals(key)) {
+            lastMiss.remove();
+            if (miss.evictions != evictions.get(stripeOf(key)) || miss.clears != clears.get()) {
+                return;
+            }
+        }
+        super.put(key, value);
+    }
+
+    @Override
+    public void evict(Object key) {
+        evictions.incrementAndGet(stripeOf(key));
+        super.evict(key);
+    }
+
+    @Override
+    public void clear() {
+        clears.incrementAndGet();
+        super.clear();
+    }
+
+    private static int stripeOf(Object key) {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+    }
+
+    private static final class Miss {
+
+        private final Object key;
+        private final long evictions;
+        private final long clears;
+
+        Miss(Object key, long evictions, long clears) {
+            this.key = key;
+            this.evictions = evictions;
+            this.clears = clears;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package org.ptr.orders.app.config;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ *
+ * Lazy initialisation of application beans, enabled by {@code app.startup.lazy-init=true} : beans not yet
+ * marked otherwise are created on first use instead of during startup. Left eager are beans of infrastructure
+ * role, the data source and entity manager factory (so Hibernate boots during startup, not on the first request),
+ * beans with {@link Scheduled} methods (scheduling only sees created beans) and beans of {@link #EAGER_BEANS}
+ *
+ * */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(name = "app.startup.lazy-init", havingValue = "true")
+public class LazyInitializationConfig {
+
+    /**
+     * write-behind registers its meters and starts its flush timer when created
+     * */
+    private static final Set<String> EAGER_BEANS = new HashSet<>(Arrays.asList(
+        "dataSource", "entityManagerFactory", "productWriteBehind"));
+
+    @Bean
+    public static BeanFactoryPostProcessor lazyInitializationPostProcessor() {
+        return beanFactory -> {
+            int lazy = 0;
+            for (String beanName : beanFactory.getBeanDefinitionNames()) {
+                BeanDefinition definition = beanFactory.getBeanDefinition(beanName);
+                if (definition.isLazyInit() || definition.getRole() != BeanDefinition.ROLE_APPLICATION
+                    || EAGER_BEANS.contains(beanName)
+                    || hasScheduledMethods(definition, beanFactory.getBeanClassLoader())) {
+                    continue;
+                }
+                definition.setLazyInit(true);
+                lazy++;
+            }
+            log.info("{} beans initialised lazily", lazy);
+        };
+    }
+
+    private static boolean hasScheduledMethods(BeanDefinition definition, ClassLoader classLoader) {
+
+        String className = definition.getBeanClassName();
+        if (className == null || !ClassUtils.isPresent(className, classLoader)) {
+            return false;
+        }
+        boolean[] scheduled = {false};
+        ReflectionUtils.doWithMethods(ClassUtils.resolveClassName(className, classLoader),
+            method -> scheduled[0] = true, method -> method.isAnnotationPresent(Scheduled.class));
+        return scheduled[0];
+    }
+}
@@ -0,0 +1,135 @@
+package org.ptr.orders.app.config;
+
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+
+/**
+ *
+ * Times calls of the service, the repositories and the mappers, one timer per class and method, tagged with
+ * the exception thrown or "None". Calls made from inside the same bean are not seen. Repository methods returning
+ * a stream are timed until the stream is returned, not until it is read. Timers are looked up once per target class,
+ * method and outcome and then kept, so a timed call neither builds tags nor searches the registry
+ *
+ * */
+@Aspect
+public class MetricsAspect {
+
+    public static final String SERVICE_TIMER = "app.service";
+    public static final String REPOSITORY_TIMER = "app.repository";
+    public static final String MAPPING_TIMER = "app.mapping";
+
+    private static final String NO_EXCEPTION = "None";
+    private static final String APP_PACKAGE = "org.ptr.orders.app.";
+
+    private final MeterRegistry meterRegistry;
+
+    private final Clock clock;
+
+    private final ConcurrentMap<Class<?>, ConcurrentMap<Method, MethodTimers>> timersByTarget =
+        new ConcurrentHashMap<>();
+
+    public MetricsAspect(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.clock = meterRegistry.config().clock();
+    }
+
+    @Around("execution(public * org.ptr.orders.app.service.CustomerProductsService.*(..))")
+    public Object timeService(ProceedingJoinPoint joinPoint) throws Throwable {
+        return time(SERVICE_TIMER, joinPoint);
+    }
+
+    @Around("target(org.ptr.orders.app.dao.CustomersRepository) || target(org.ptr.orders.app.dao.ProductsRepository)")
+    public Object timeRepository(ProceedingJoinPoint joinPoint) throws Throwable {
+        return time(REPOSITORY_TIMER, joinPoint);
+    }
+
+    @Around("execution(* org.ptr.orders.app.mapper.*.*(..))")
+    public Object timeMapping(ProceedingJoinPoint joinPoint) throws Throwable {
+        return time(MAPPING_TIMER, joinPoint);
+    }
+
+    private Object time(String timerName, ProceedingJoinPoint joinPoint) throws Throwable {
+
+        long start = clock.monotonicTime();
+        Object result;
+        try {
+            result = joinPoint.proceed();
+        } catch (Throwable e) {
+            timersOf(timerName, joinPoint).failed(e.getClass()).record(clock.monotonicTime() - start,
+                TimeUnit.NANOSECONDS);
+            throw e;
+        }
+        timersOf(timerName, joinPoint).succeeded.record(clock.monotonicTime() - start, TimeUnit.NANOSECONDS);
+        return result;
+    }
+
+    /**
+     * keyed by target class too : repositories share methods inherited from Spring Data interfaces
+     * */
+    private MethodTimers timersOf(String timerName, ProceedingJoinPoint joinPoint) {
+
+        Class<?> target = joinPoint.getTarget().getClass();
+        ConcurrentMap<Method, MethodTimers> timersByMethod = timersByTarget.get(target);
+        if (timersByMethod == null) {
+            timersByMethod = timersByTarget.computeIfAbsent(target, type -> new ConcurrentHashMap<>());
+        }
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        MethodTimers timers = timersByMethod.get(method);
+        if (timers == null) {
+            timers = timersByMethod.computeIfAbsent(method,
+                timed -> new MethodTimers(timerName, classOf(target), timed.getName()));
+        }
+        return timers;
+    }
+
+    /**
+     * own interface of repositories and mappers rather than the generated class behind it
+     * */
+    private static String classOf(Class<?> type) {
+
+        for (Class<?> contract : type.getInterfaces()) {
+            if (contract.getName().startsWith(APP_PACKAGE)) {
+                return contract.getSimpleName();
+            }
+        }
+        return type.getSimpleName();
+    }
+
+    /**
+     * timer of calls of one method completing normally, and one per exception class thrown
+     * */
+    private final class MethodTimers {
+
+        private final String timerName;
+        private final String className;
+        private final String methodName;
+        private final Timer succeeded;
+        private final ConcurrentMap<Class<?>, Timer> failedByException = new ConcurrentHashMap<>();
+
+        MethodTimers(String timerName, String className, String methodName) {
+            this.timerName = timerName;
+            this.className = className;
+            this.methodName = methodName;
+            this.succeeded = timer(NO_EXCEPTION);
+        }
+
+        Timer failed(Class<?> exception) {
+            Timer timer = failedByException.get(exception);
+            return timer != null ? timer
+                : failedByException.computeIfAbsent(exception, thrown -> timer(thrown.getSimpleName()));
+        }
+
+        private Timer timer(String exception) {
+            return meterRegistry.timer(timerName, "class", className, "method", methodName, "exception", exception);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package org.ptr.orders.app.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ *
+ * Timers of the application on top of what actuator binds by itself (http.server.requests per endpoint,
+ * hikaricp pool, hibernate statistics, caches, jvm) : service, repository and mapper calls and json
+ * serialization of responses. Percentiles are set per timer in application.properties, all meters are scraped
+ * from {@code /actuator/prometheus}
+ *
+ * */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public MetricsAspect metricsAspect(MeterRegistry meterRegistry) {
+        return new MetricsAspect(meterRegistry);
+    }
+
+    /**
+     * replaces the json converter spring boot would register
+     * */
+    @Bean
+    public TimedJackson2HttpMessageConverter timedJackson2HttpMessageConverter(ObjectMapper objectMapper,
+        MeterRegistry meterRegistry) {
+        return new TimedJackson2HttpMessageConverter(objectMapper, meterRegistry);
+    }
+}
@@ -0,0 +1,17 @@
+package org.ptr.orders.app.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ *
+ * Background jobs, currently the purge of soft deleted rows. Enabled by {@code app.purge.enabled=true},
+ * so tests and short lived instances do not run it
+ *
+ * */
+@Configuration
+@EnableScheduling
+@ConditionalOnProperty(name = "app.purge.enabled", havingValue = "true")
+public class SchedulingConfig {
+}
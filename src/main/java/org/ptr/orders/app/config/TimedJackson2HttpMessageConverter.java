@@ -0,0 +1,42 @@
+package org.ptr.orders.app.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJacksonValue;
+
+/**
+ *
+ * Json converter of response bodies and event stream data timing each write, tagged with the written type.
+ * Time covers serialization and writing to the response, so it grows when a large body waits for a slow client
+ *
+ * */
+public class TimedJackson2HttpMessageConverter extends MappingJackson2HttpMessageConverter {
+
+    public static final String SERIALIZATION_TIMER = "app.serialization";
+
+    private final MeterRegistry meterRegistry;
+
+    public TimedJackson2HttpMessageConverter(ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        super(objectMapper);
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    protected void writeInternal(Object object, Type type, HttpOutputMessage outputMessage)
+        throws IOException, HttpMessageNotWritableException {
+
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            super.writeInternal(object, type, outputMessage);
+        } finally {
+            Object value = object instanceof MappingJacksonValue ? ((MappingJacksonValue) object).getValue() : object;
+            sample.stop(meterRegistry.timer(SERIALIZATION_TIMER, "type", value.getClass().getSimpleName()));
+        }
+    }
+}
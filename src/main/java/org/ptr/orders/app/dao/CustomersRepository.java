@@ -1,11 +1,82 @@
 package org.ptr.orders.app.dao;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
 import org.ptr.orders.app.model.Customer;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+/**
+ * Customers are soft deleted : every read below skips rows with isDeleted = true,
+ * inherited {@link JpaRepository} finders do not and are left to purge and seeding
+ *
+ * */
 @Repository
 
 public interface CustomersRepository extends JpaRepository<Customer, Long> {
 
+    Optional<Customer> findByIdAndIsDeletedFalse(Long id);
+
+    List<Customer> findByIdInAndIsDeletedFalse(Collection<Long> ids);
+
+    Page<Customer> findByIsDeletedFalse(Pageable pageable);
+
+    long countByIsDeletedFalse();
+
+    /**
+     * keyset (seek) page : customers with id greater than given one, no offset and no count query
+     * */
+    Slice<Customer> findByIdGreaterThanAndIsDeletedFalse(Long id, Pageable pageable);
+
+    /**
+     * page of customers as slice : hasNext only, no count query
+     * */
+    @Query("select c from Customer c where c.isDeleted = false")
+    Slice<Customer> findAllBy(Pageable pageable);
+
+    /**
+     * latest change of any customer, deleted ones included so removals move it as well :
+     * read from the end of the (changed_at, id) index
+     * */
+    @Query("select max(c.changedAt) from Customer c")
+    LocalDateTime findLastChangedAt();
+
+    /**
+     * change feed : customers, deleted ones included, changed after position (changedAt, afterId) and not
+     * after {@code until}, ordered by (changedAt, id) : one range scan of the (changed_at, id) index
+     * */
+    @Query("select c from Customer c where c.changedAt <= :until and (c.changedAt > :changedAt "
+        + "or (c.changedAt = :changedAt and c.id > :afterId)) order by c.changedAt, c.id")
+    List<Customer> findChangedAfter(@Param("changedAt") LocalDateTime changedAt, @Param("afterId") Long afterId,
+        @Param("until") LocalDateTime until, Pageable pageable);
+
+    /**
+     * flags customer as deleted with one UPDATE, products are flagged separately
+     * @return 1 when customer was deleted, 0 when it is not found or already deleted
+     * */
+    @Modifying
+    @Query("update Customer c set c.isDeleted = true, c.modifiedAt = :deletedAt, c.changedAt = :deletedAt, "
+        + "c.version = c.version + 1 where c.id = :customerId and c.isDeleted = false")
+    int softDeleteById(@Param("customerId") Long customerId, @Param("deletedAt") LocalDateTime deletedAt);
+
+    /**
+     * ids of customers deleted before given time and left without any product row, oldest first : soft delete
+     * stamps changedAt, so tombstones are one contiguous range of the (is_deleted, changed_at, id) index,
+     * live rows are not scanned
+     * */
+    @Query("select c.id from Customer c where c.changedAt < :deletedBefore and c.isDeleted = true "
+        + "and not exists (select p.id from Product p where p.customer = c) order by c.changedAt, c.id")
+    List<Long> findPurgeableIds(@Param("deletedBefore") LocalDateTime deletedBefore, Pageable pageable);
+
+    @Modifying
+    @Query("delete from Customer c where c.id in :ids")
+    int deleteByIds(@Param("ids") Collection<Long> ids);
 }
@@ -1,16 +1,182 @@
 package org.ptr.orders.app.dao;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+import javax.persistence.QueryHint;
 import org.ptr.orders.app.model.Customer;
+import org.ptr.orders.app.model.PriceSummary;
 import org.ptr.orders.app.model.Product;
+import org.ptr.orders.app.model.ProductPrice;
+import org.ptr.orders.app.model.ProductTitle;
+import org.ptr.orders.app.rest.dto.ProductResponse;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+/**
+ * Products are soft deleted : every read below skips rows with isDeleted = true,
+ * inherited {@link JpaRepository} finders do not and are left to purge and seeding
+ *
+ * */
 @Repository
 public interface ProductsRepository extends JpaRepository<Product, Long> {
 
-    Page<Product> findProductsByCustomer_Id(@Param("customer_id") Long customerId, Pageable pageable);
+    /**
+     * selects exactly the ProductResponse columns, customer_id read from the products row itself (no join),
+     * rows are returned as plain dtos and never enter the persistence context
+     * */
+    String SELECT_PRODUCT_RESPONSE = "select new org.ptr.orders.app.rest.dto.ProductResponse("
+        + "p.id, p.customer.id, p.title, p.isDeleted, p.price, p.createdAt, p.modifiedAt, p.version) from Product p ";
+
+    /**
+     * rows fetched per round trip while streaming, needs useCursorFetch=true on MySQL to be honored
+     * */
+    String STREAM_FETCH_SIZE = "1000";
+
+    String SELECT_PRICE_SUMMARY = "select new org.ptr.orders.app.model.PriceSummary(p.customer.id, count(p), "
+        + "count(p.price), sum(p.price), min(p.price), max(p.price)) from Product p ";
+
+    Optional<Product> findByIdAndIsDeletedFalse(Long id);
+
+    String SELECT_PRODUCT_PRICE = "select new org.ptr.orders.app.model.ProductPrice(p.id, p.customer.id, p.price) "
+        + "from Product p ";
+
+    @Query(SELECT_PRODUCT_PRICE + "where p.id = :productId and p.isDeleted = false")
+    Optional<ProductPrice> findProductPriceById(@Param("productId") Long productId);
+
+    /**
+     * prices of all live products of customer, read from the (customer_id, price, id) index alone
+     * */
+    @Query(SELECT_PRODUCT_PRICE + "where p.customer.id = :customerId and p.isDeleted = false")
+    List<ProductPrice> findProductPricesByCustomerId(@Param("customerId") Long customerId);
+
+    @Query(value = SELECT_PRODUCT_RESPONSE + "where p.customer.id = :customerId and p.isDeleted = false",
+        countQuery = "select count(p) from Product p where p.customer.id = :customerId and p.isDeleted = false")
+    Page<ProductResponse> findProductResponsesByCustomerId(@Param("customerId") Long customerId, Pageable pageable);
+
+    /**
+     * page of customer products with price in [minPrice, maxPrice], ordered by the pageable sort :
+     * a range scan of the (customer_id, price, id) index when sorted by price and id
+     * */
+    @Query(value = SELECT_PRODUCT_RESPONSE + "where p.customer.id = :customerId and p.isDeleted = false "
+        + "and p.price between :minPrice and :maxPrice",
+        countQuery = "select count(p) from Product p where p.customer.id = :customerId and p.isDeleted = false "
+            + "and p.price between :minPrice and :maxPrice")
+    Page<ProductResponse> findProductResponsesByCustomerIdAndPriceBetween(@Param("customerId") Long customerId,
+        @Param("minPrice") BigDecimal minPrice, @Param("maxPrice") BigDecimal maxPrice, Pageable pageable);
+
+    /**
+     * page of customer products as slice : hasNext only, no count query
+     * */
+    @Query(SELECT_PRODUCT_RESPONSE + "where p.customer.id = :customerId and p.isDeleted = false")
+    Slice<ProductResponse> findProductResponseSliceByCustomerId(@Param("customerId") Long customerId,
+        Pageable pageable);
+
+    /**
+     * keyset (seek) page over (customer_id, id) : products of customer with id greater than given one
+     * */
+    @Query(SELECT_PRODUCT_RESPONSE + "where p.customer.id = :customerId and p.isDeleted = false and p.id > :afterId")
+    Slice<ProductResponse> findProductResponsesByCustomerIdAfter(@Param("customerId") Long customerId,
+        @Param("afterId") Long afterId, Pageable pageable);
+
+    /**
+     * all products of customer as forward-only stream of dtos, must be consumed and closed inside a transaction
+     * */
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE))
+    @Query(SELECT_PRODUCT_RESPONSE + "where p.customer.id = :customerId and p.isDeleted = false order by p.id")
+    Stream<ProductResponse> streamProductResponsesByCustomerId(@Param("customerId") Long customerId);
+
+    @Query("select count(p) from Product p where p.customer.id = :customerId and p.isDeleted = false")
+    long countByCustomerId(@Param("customerId") Long customerId);
+
+    /**
+     * latest change of any product of customer, deleted ones included so removals move it as well :
+     * read from the end of the customer range of the (customer_id, changed_at) index
+     * */
+    @Query("select max(p.changedAt) from Product p where p.customer.id = :customerId")
+    LocalDateTime findLastChangedAtByCustomerId(@Param("customerId") Long customerId);
+
+    /**
+     * live products with given ids as dtos, in no particular order
+     * */
+    @Query(SELECT_PRODUCT_RESPONSE + "where p.id in :ids and p.isDeleted = false")
+    List<ProductResponse> findProductResponsesByIds(@Param("ids") Collection<Long> ids);
+
+    /**
+     * keyset batch of live product titles with id in (afterId, toId], ordered by id
+     * */
+    @Query("select new org.ptr.orders.app.model.ProductTitle(p.id, p.customer.id, p.title) from Product p "
+        + "where p.isDeleted = false and p.id > :afterId and p.id <= :toId order by p.id")
+    List<ProductTitle> findProductTitles(@Param("afterId") Long afterId, @Param("toId") Long toId,
+        Pageable pageable);
+
+    @Query("select max(p.id) from Product p")
+    Long findMaxId();
+
+    /**
+     * price aggregate of one customer, read over the customer_id index
+     * */
+    @Query(SELECT_PRICE_SUMMARY + "where p.customer.id = :customerId and p.isDeleted = false group by p.customer.id")
+    Optional<PriceSummary> findPriceSummaryByCustomerId(@Param("customerId") Long customerId);
+
+    /**
+     * price aggregates of all customers having live products, one full scan
+     * */
+    @Query(SELECT_PRICE_SUMMARY + "where p.isDeleted = false group by p.customer.id")
+    List<PriceSummary> findPriceSummaries();
+
+    /**
+     * customers with highest total price of live products first, one full scan and sort
+     * */
+    @Query(SELECT_PRICE_SUMMARY + "where p.isDeleted = false group by p.customer.id order by sum(p.price) desc")
+    List<PriceSummary> findTopPriceSummaries(Pageable pageable);
+
+    /**
+     * change feed : products, deleted ones included, changed after position (changedAt, afterId) and not
+     * after {@code until}, ordered by (changedAt, id) : one range scan of the (changed_at, id) index
+     * */
+    @Query("select p from Product p where p.changedAt <= :until and (p.changedAt > :changedAt "
+        + "or (p.changedAt = :changedAt and p.id > :afterId)) order by p.changedAt, p.id")
+    List<Product> findChangedAfter(@Param("changedAt") LocalDateTime changedAt, @Param("afterId") Long afterId,
+        @Param("until") LocalDateTime until, Pageable pageable);
+
+    /**
+     * flags one product as deleted with one UPDATE
+     * @return 1 when product was deleted, 0 when it is not found or already deleted
+     * */
+    @Modifying
+    @Query("update Product p set p.isDeleted = true, p.modifiedAt = :deletedAt, p.changedAt = :deletedAt, "
+        + "p.version = p.version + 1 where p.id = :productId and p.isDeleted = false")
+    int softDeleteById(@Param("productId") Long productId, @Param("deletedAt") LocalDateTime deletedAt);
+
+    /**
+     * flags all products of customer as deleted with one UPDATE
+     * @return number of products deleted
+     * */
+    @Modifying
+    @Query("update Product p set p.isDeleted = true, p.modifiedAt = :deletedAt, p.changedAt = :deletedAt, "
+        + "p.version = p.version + 1 where p.customer.id = :customerId and p.isDeleted = false")
+    int softDeleteByCustomerId(@Param("customerId") Long customerId, @Param("deletedAt") LocalDateTime deletedAt);
+
+    /**
+     * ids of products deleted before given time, oldest first : soft delete stamps changedAt,
+     * so tombstones are one contiguous range of the (is_deleted, changed_at, id) index, live rows are not scanned
+     * */
+    @Query("select p.id from Product p where p.changedAt < :deletedBefore and p.isDeleted = true "
+        + "order by p.changedAt, p.id")
+    List<Long> findPurgeableIds(@Param("deletedBefore") LocalDateTime deletedBefore, Pageable pageable);
+
+    @Modifying
+    @Query("delete from Product p where p.id in :ids")
+    int deleteByIds(@Param("ids") Collection<Long> ids);
 }
@@ -1,15 +1,23 @@
 package org.ptr.orders.app.mapper;
 
-import ma.glasnost.orika.MapperFactory;
-import ma.glasnost.orika.impl.ConfigurableMapper;
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+import org.mapstruct.ReportingPolicy;
 import org.ptr.orders.app.model.Customer;
+import org.ptr.orders.app.rest.dto.CustomerRequest;
 import org.ptr.orders.app.rest.dto.CustomerResponse;
-import org.springframework.stereotype.Component;
 
-@Component
-public class CustomerMapper extends ConfigurableMapper {
+/**
+ * Customer mappings, implementation is generated at compile time by MapStruct (plain getters/setters, no reflection)
+ *
+ * */
+@Mapper(componentModel = "spring", unmappedTargetPolicy = ReportingPolicy.IGNORE)
+public interface CustomerMapper {
 
-    protected void configure(MapperFactory factory) {
-        factory.classMap(Customer.class, CustomerResponse.class).byDefault().register();
-    }
+    CustomerResponse map(Customer customer);
+
+    @Mapping(target = "id", ignore = true)
+    @Mapping(target = "customerProducts", ignore = true)
+    @Mapping(target = "isDeleted", ignore = true)
+    Customer map(CustomerRequest customerRequest);
 }
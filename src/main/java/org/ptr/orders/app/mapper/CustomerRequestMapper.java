@@ -1,18 +1,24 @@
 package org.ptr.orders.app.mapper;
 
-import ma.glasnost.orika.MapperFactory;
-import ma.glasnost.orika.impl.ConfigurableMapper;
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+import org.mapstruct.MappingTarget;
+import org.mapstruct.NullValuePropertyMappingStrategy;
+import org.mapstruct.ReportingPolicy;
 import org.ptr.orders.app.model.Customer;
 import org.ptr.orders.app.rest.dto.CustomerRequest;
-import org.springframework.stereotype.Component;
 
-@Component
-public class CustomerRequestMapper extends ConfigurableMapper {
+/**
+ * Applies customer request onto existing customer, null request fields leave customer fields untouched
+ *
+ * */
+@Mapper(componentModel = "spring", unmappedTargetPolicy = ReportingPolicy.IGNORE,
+    nullValuePropertyMappingStrategy = NullValuePropertyMappingStrategy.IGNORE)
+public interface CustomerRequestMapper {
 
-    protected void configure(MapperFactory factory) {
-        factory.classMap(CustomerRequest.class, Customer.class)
-            .mapNulls(false)
-            .byDefault().register();
-    }
+    @Mapping(target = "id", ignore = true)
+    @Mapping(target = "customerProducts", ignore = true)
+    @Mapping(target = "isDeleted", ignore = true)
+    void map(CustomerRequest customerRequest, @MappingTarget Customer customer);
 
 }
@@ -1,20 +1,38 @@
 package org.ptr.orders.app.mapper;
 
-import ma.glasnost.orika.MapperFactory;
-import ma.glasnost.orika.impl.ConfigurableMapper;
+import org.hibernate.proxy.HibernateProxy;
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+import org.mapstruct.Named;
+import org.mapstruct.ReportingPolicy;
+import org.ptr.orders.app.model.Customer;
 import org.ptr.orders.app.model.Product;
 import org.ptr.orders.app.rest.dto.ProductRequest;
 import org.ptr.orders.app.rest.dto.ProductResponse;
-import org.springframework.stereotype.Component;
 
-@Component
-public class ProductMapper extends ConfigurableMapper {
+/**
+ * Product mappings, implementation is generated at compile time by MapStruct
+ *
+ * */
+@Mapper(componentModel = "spring", unmappedTargetPolicy = ReportingPolicy.IGNORE)
+public interface ProductMapper {
 
-    protected void configure(MapperFactory factory) {
-        factory.classMap(Product.class, ProductResponse.class)
-            .byDefault()
-            .field("customer.id", "customerId")
-            .mapNulls(Boolean.TRUE)
-            .register();
+    @Mapping(target = "customerId", source = "customer", qualifiedByName = "customerId")
+    ProductResponse map(Product product);
+
+    @Mapping(target = "id", ignore = true)
+    @Mapping(target = "customer", ignore = true)
+    @Mapping(target = "isDeleted", ignore = true)
+    Product map(ProductRequest productRequest);
+
+    /**
+     * id of lazy customer is taken from the proxy itself, so mapping never initializes it
+     * */
+    @Named("customerId")
+    default Long customerId(Customer customer) {
+        if (customer instanceof HibernateProxy) {
+            return (Long) ((HibernateProxy) customer).getHibernateLazyInitializer().getIdentifier();
+        }
+        return customer != null ? customer.getId() : null;
     }
-}
\ No newline at end of file
+}
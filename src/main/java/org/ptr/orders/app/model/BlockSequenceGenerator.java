@@ -0,0 +1,41 @@
+package org.ptr.orders.app.model;
+
+import java.util.Map;
+import java.util.Properties;
+import org.hibernate.MappingException;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.id.enhanced.StandardOptimizerDescriptor;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+/**
+ *
+ * Id generator allocating ids in blocks : one sequence (or sequence table on MySQL) round trip per block,
+ * ids of the block are then handed out in memory by the pooled-lo optimizer, so concurrent inserts do not
+ * serialize on a single sequence row and JDBC insert batching stays enabled.
+ * Block size is read from {@code orders.id.<sequence_name>.block_size}, then {@code orders.id.block_size}
+ * (both passed as spring.jpa.properties.*), {@value #DEFAULT_BLOCK_SIZE} when none is set.
+ *
+ * */
+public class BlockSequenceGenerator extends SequenceStyleGenerator {
+
+    public static final String BLOCK_SIZE_SETTING = "orders.id.block_size";
+    public static final String SEQUENCE_BLOCK_SIZE_SETTING = "orders.id.%s.block_size";
+    public static final int DEFAULT_BLOCK_SIZE = 50;
+
+    @Override
+    public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException {
+
+        Map<?, ?> settings = serviceRegistry.getService(ConfigurationService.class).getSettings();
+        Object blockSize = settings.get(String.format(SEQUENCE_BLOCK_SIZE_SETTING, params.getProperty(SEQUENCE_PARAM)));
+        if (blockSize == null) {
+            blockSize = settings.get(BLOCK_SIZE_SETTING);
+        }
+        Properties blockParams = new Properties();
+        blockParams.putAll(params);
+        blockParams.setProperty(INCREMENT_PARAM, blockSize != null ? blockSize.toString() : String.valueOf(DEFAULT_BLOCK_SIZE));
+        blockParams.setProperty(OPT_PARAM, StandardOptimizerDescriptor.POOLED_LO.getExternalName());
+        super.configure(type, blockParams, serviceRegistry);
+    }
+}
@@ -0,0 +1,82 @@
+package org.ptr.orders.app.model;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import org.ptr.orders.app.service.TransactionCallbacks;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ *
+ * Source of changedAt stamps : UTC wall clock at microsecond precision (what a TIMESTAMP(6) column keeps),
+ * so stamps never repeat an hour when daylight saving time ends, moved forward by one microsecond whenever
+ * they would repeat or go back, so stamps taken by this node are strictly increasing. Ties between nodes are
+ * broken by entity and id in the change feed. The first stamp of every transaction is kept until the
+ * transaction completes : rows stamped after it may commit before it, so readers of changes settle before it
+ *
+ * */
+public final class ChangeClock {
+
+    private static final long MICROS_PER_SECOND = 1_000_000L;
+    private static final long NANOS_PER_MICRO = 1_000L;
+
+    private static final AtomicLong LAST_MICROS = new AtomicLong();
+
+    /**
+     * first stamps of transactions still open on this node, issued and read under its own lock
+     * */
+    private static final NavigableSet<Long> OPEN_STAMPS = new ConcurrentSkipListSet<>();
+
+    /**
+     * transaction resource telling the first stamp of the transaction is kept
+     * */
+    private static final Object OPEN_STAMP_KEY = new Object();
+
+    private ChangeClock() {
+    }
+
+    public static LocalDateTime next() {
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()
+            || TransactionSynchronizationManager.hasResource(OPEN_STAMP_KEY)) {
+            return toDateTime(nextMicros());
+        }
+        long stamp;
+        synchronized (OPEN_STAMPS) {
+            stamp = nextMicros();
+            OPEN_STAMPS.add(stamp);
+        }
+        TransactionSynchronizationManager.bindResource(OPEN_STAMP_KEY, stamp);
+        TransactionCallbacks.afterCompletion(committed -> {
+            TransactionSynchronizationManager.unbindResourceIfPossible(OPEN_STAMP_KEY);
+            OPEN_STAMPS.remove(stamp);
+        });
+        return toDateTime(stamp);
+    }
+
+    /**
+     * @return latest stamp every row stamped at or before has been committed or rolled back, as far as
+     * transactions of this node tell : just before the first stamp of the oldest open transaction, now otherwise
+     * */
+    public static LocalDateTime settled() {
+
+        synchronized (OPEN_STAMPS) {
+            long now = nextMicros();
+            return toDateTime(OPEN_STAMPS.isEmpty() ? now : OPEN_STAMPS.first() - 1);
+        }
+    }
+
+    private static long nextMicros() {
+        Instant now = Instant.now();
+        long micros = now.getEpochSecond() * MICROS_PER_SECOND + now.getNano() / NANOS_PER_MICRO;
+        return LAST_MICROS.accumulateAndGet(micros, (last, current) -> Math.max(last + 1, current));
+    }
+
+    private static LocalDateTime toDateTime(long micros) {
+        return LocalDateTime.ofInstant(Instant.EPOCH.plus(micros, ChronoUnit.MICROS), ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,24 @@
+package org.ptr.orders.app.model;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ *
+ * Position on the change feed : the feed is ordered by (changedAt, entity, id), a consumer resumes
+ * after the position of the last change it has seen
+ *
+ * */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChangePosition implements Serializable {
+
+    private LocalDateTime changedAt;
+    private ChangedEntity entity;
+    private Long id;
+
+}
@@ -0,0 +1,13 @@
+package org.ptr.orders.app.model;
+
+/**
+ *
+ * Entities published on the change feed, declaration order breaks ties of equal changedAt
+ *
+ * */
+public enum ChangedEntity {
+
+    CUSTOMER,
+    PRODUCT
+
+}
@@ -9,9 +9,14 @@ import javax.persistence.CascadeType;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.OneToMany;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
 import javax.persistence.Table;
+import javax.persistence.Version;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -20,6 +25,9 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 import lombok.ToString;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 
 @Data
 @NoArgsConstructor
@@ -30,28 +38,61 @@ import lombok.ToString;
 @ToString
 @EqualsAndHashCode
 @Entity
-@Table(name = "Customers")
+@Table(name = "Customers", indexes = {
+    @Index(name = "idx_customers_changed_at_id", columnList = "changed_at, id"),
+    @Index(name = "idx_customers_is_deleted_changed_at_id", columnList = "is_deleted, changed_at, id")
+})
 public class Customer implements Serializable {
 
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "customers_seq")
+    @GenericGenerator(name = "customers_seq", strategy = "org.ptr.orders.app.model.BlockSequenceGenerator",
+        parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "customers_seq"))
     private Long id;
 
     @Column
     private String title;
 
-    @Column(name = "is_deleted")
+    @Column(name = "is_deleted", nullable = false)
     private Boolean isDeleted;
 
-    @Column(name = "created_at", columnDefinition = "TIMESTAMP")
+    @Column(name = "created_at", columnDefinition = "TIMESTAMP(6)")
     private LocalDateTime createdAt;
 
-    @Column(name = "modified_at", columnDefinition = "TIMESTAMP")
+    @Column(name = "modified_at", columnDefinition = "TIMESTAMP(6)")
     private LocalDateTime  modifiedAt;
 
+    /**
+     * change feed position, stamped by {@link ChangeClock} on every write and never taken from requests
+     * */
+    @Column(name = "changed_at", columnDefinition = "TIMESTAMP(6)")
+    private LocalDateTime changedAt;
+
+    @Version
+    @Column(nullable = false)
+    private Long version;
+
     @OneToMany(cascade = CascadeType.ALL, mappedBy = "customer")
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
     private List<Product> customerProducts;
 
+    /**
+     * rows always carry a validator timestamp, creation time is used until first modification,
+     * and are created live : the deleted flag is only ever set by soft delete
+     * */
+    @PrePersist
+    void initDefaults() {
+        if (createdAt == null) {
+            createdAt = LocalDateTime.now();
+        }
+        isDeleted = Boolean.FALSE;
+        changedAt = ChangeClock.next();
+    }
 
-}
+    @PreUpdate
+    void stampChange() {
+        changedAt = ChangeClock.next();
+    }
 
+}
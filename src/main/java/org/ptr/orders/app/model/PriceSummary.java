@@ -0,0 +1,27 @@
+package org.ptr.orders.app.model;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ *
+ * Price aggregate of live products of one customer, read with one grouped query :
+ * number of products, number of priced products (sum / min / max / average skip null prices) and the aggregates
+ *
+ * */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PriceSummary implements Serializable {
+
+    private Long customerId;
+    private Long productCount;
+    private Long pricedCount;
+    private BigDecimal totalPrice;
+    private BigDecimal minPrice;
+    private BigDecimal maxPrice;
+
+}
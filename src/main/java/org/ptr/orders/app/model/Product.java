@@ -9,10 +9,15 @@ import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
 import javax.persistence.Table;
+import javax.persistence.Version;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -21,6 +26,9 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 import lombok.ToString;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 
 @Data
 @NoArgsConstructor
@@ -31,17 +39,27 @@ import lombok.ToString;
 @ToString
 @EqualsAndHashCode
 @Entity
-@Table(name = "Products")
+@Table(name = "Products", indexes = {
+    @Index(name = "idx_products_customer_id_id", columnList = "customer_id, id"),
+    @Index(name = "idx_products_customer_id_price", columnList = "customer_id, price, id"),
+    @Index(name = "idx_products_customer_id_changed_at", columnList = "customer_id, changed_at"),
+    @Index(name = "idx_products_changed_at_id", columnList = "changed_at, id"),
+    @Index(name = "idx_products_is_deleted_changed_at_id", columnList = "is_deleted, changed_at, id")
+})
 public class Product implements Serializable {
 
 
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "products_seq")
+    @GenericGenerator(name = "products_seq", strategy = "org.ptr.orders.app.model.BlockSequenceGenerator",
+        parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "products_seq"))
     private Long id;
 
 
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "customer_id", referencedColumnName = "id")
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
     private Customer customer;
 
     @Column
@@ -53,14 +71,41 @@ public class Product implements Serializable {
     @Column
     private BigDecimal price;
 
-    @Column
+    @Column(name = "is_deleted", nullable = false)
     private Boolean isDeleted;
 
-    @Column(name = "created_at", columnDefinition = "TIMESTAMP")
+    @Column(name = "created_at", columnDefinition = "TIMESTAMP(6)")
     private LocalDateTime createdAt;
 
-    @Column(name = "modified_at", columnDefinition = "TIMESTAMP")
+    @Column(name = "modified_at", columnDefinition = "TIMESTAMP(6)")
     private LocalDateTime  modifiedAt;
 
+    /**
+     * change feed position, stamped by {@link ChangeClock} on every write and never taken from requests
+     * */
+    @Column(name = "changed_at", columnDefinition = "TIMESTAMP(6)")
+    private LocalDateTime changedAt;
+
+    @Version
+    @Column(nullable = false)
+    private Long version;
+
+    /**
+     * rows always carry a validator timestamp, creation time is used until first modification,
+     * and are created live : the deleted flag is only ever set by soft delete
+     * */
+    @PrePersist
+    void initDefaults() {
+        if (createdAt == null) {
+            createdAt = LocalDateTime.now();
+        }
+        isDeleted = Boolean.FALSE;
+        changedAt = ChangeClock.next();
+    }
+
+    @PreUpdate
+    void stampChange() {
+        changedAt = ChangeClock.next();
+    }
 
 }
@@ -0,0 +1,23 @@
+package org.ptr.orders.app.model;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ *
+ * Id, owner and price of one product, read instead of the entity where only these are needed
+ *
+ * */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductPrice implements Serializable {
+
+    private Long productId;
+    private Long customerId;
+    private BigDecimal price;
+
+}
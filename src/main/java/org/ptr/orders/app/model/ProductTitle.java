@@ -0,0 +1,22 @@
+package org.ptr.orders.app.model;
+
+import java.io.Serializable;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ *
+ * Id, owner and title of one product, all the search index needs to know about it
+ *
+ * */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductTitle implements Serializable {
+
+    private Long id;
+    private Long customerId;
+    private String title;
+
+}
@@ -0,0 +1,25 @@
+package org.ptr.orders.app.model;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ *
+ * Validator of a set of rows, read without loading the rows : latest changedAt with number of rows,
+ * so that both changes and removals are visible, and last commit of an update on this node, so that updates
+ * committed out of changedAt order are visible as well
+ *
+ * */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class VersionStamp implements Serializable {
+
+    private LocalDateTime lastModified;
+    private Long discriminator;
+    private LocalDateTime committedAt;
+
+}
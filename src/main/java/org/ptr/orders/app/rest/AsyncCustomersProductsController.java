@@ -0,0 +1,262 @@
+package org.ptr.orders.app.rest;
+
+import io.swagger.annotations.Api;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.ptr.orders.app.config.AsyncConfig;
+import org.ptr.orders.app.rest.dto.CustomerRequest;
+import org.ptr.orders.app.rest.dto.ProductRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+
+/**
+ *
+ * Async mode of {@link CustomersProductsController}, same endpoints under {@code /async}. Servlet thread is
+ * released right away, reads run on the read executor and writes on the write executor. When executor queue is
+ * full 503 is returned instead of waiting, as well as for a read not ready within {@code app.async.timeout-ms}.
+ * A write not ready in time is left to finish and answered 504 without retry hint, since it may still commit
+ *
+ * */
+@Slf4j
+@Api(
+    value = "Customers and Products async API",
+    produces = "application/json"
+)
+@RestController
+@RequestMapping("/async")
+@ConditionalOnProperty(name = "app.async.enabled", havingValue = "true")
+public class AsyncCustomersProductsController {
+
+    public static final String EXECUTOR_SATURATED = "%s executor is saturated, retry later";
+    public static final String REQUEST_TIMED_OUT = "request not completed within %d ms, retry later";
+    public static final String WRITE_TIMED_OUT =
+        "write not completed within %d ms, it may still complete : read the resource before retrying";
+
+    private static final String RETRY_AFTER_SECONDS = "1";
+
+    private CustomersProductsController customersProductsController;
+
+    private AsyncTaskExecutor readExecutor;
+
+    private AsyncTaskExecutor writeExecutor;
+
+    @Value("${app.async.timeout-ms:5000}")
+    private long timeoutMillis;
+
+
+    @GetMapping(value = "/customers", produces = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<ResponseEntity<?>> getCustomers(@RequestParam(defaultValue = "0") int page,
+        @RequestParam(defaultValue = "2") int size, @RequestParam(required = false) String after,
+        @RequestParam(defaultValue = "true") boolean exactCount, @RequestHeader HttpHeaders requestHeaders) {
+
+        return read(() -> customersProductsController.getCustomers(page, size, after, exactCount, requestHeaders));
+    }
+
+    @GetMapping(value = "/customers/{customerId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<ResponseEntity<?>> getCustomerById(@PathVariable Long customerId,
+        @RequestHeader HttpHeaders requestHeaders) {
+
+        return read(() -> customersProductsController.getCustomerById(customerId, requestHeaders));
+    }
+
+    @GetMapping(value = "/customers/{customerId}/products", produces = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<ResponseEntity<?>> getProductsByCustomerId(@PathVariable Long customerId,
+        @RequestParam(defaultValue = "0") int page, @RequestParam(defaultValue = "10") int size,
+        @RequestParam(required = false) String after, @RequestParam(defaultValue = "true") boolean exactCount,
+        @RequestParam(required = false) BigDecimal minPrice, @RequestParam(required = false) BigDecimal maxPrice,
+        @RequestParam(required = false) String sort, @RequestHeader HttpHeaders requestHeaders) {
+
+        return read(() -> customersProductsController.getProductsByCustomerId(customerId, page, size, after,
+            exactCount, minPrice, maxPrice, sort, requestHeaders));
+    }
+
+    @GetMapping(value = "/products/{productId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<ResponseEntity<?>> getProductById(@PathVariable Long productId,
+        @RequestHeader HttpHeaders requestHeaders) {
+
+        return read(() -> customersProductsController.getProductById(productId, requestHeaders));
+    }
+
+    @GetMapping(value = "/customers/{customerId}/products/stats", produces = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<ResponseEntity<?>> getProductStatsByCustomerId(@PathVariable Long customerId) {
+
+        return read(() -> customersProductsController.getProductStatsByCustomerId(customerId));
+    }
+
+    @GetMapping(value = "/customers/stats/top", produces = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<ResponseEntity<?>> getTopCustomersByTotalPrice(
+        @RequestParam(defaultValue = "10") int limit) {
+
+        return read(() -> customersProductsController.getTopCustomersByTotalPrice(limit));
+    }
+
+    @PostMapping(value = "/customers", produces = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<ResponseEntity<?>> createCustomer(@RequestBody CustomerRequest customerRequest) {
+
+        return write(() -> customersProductsController.createCustomer(customerRequest));
+    }
+
+    @PutMapping(value = "/customers/{customerId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<ResponseEntity<?>> updateCustomer(@PathVariable Long customerId,
+        @RequestBody CustomerRequest customerRequest) {
+
+        return write(() -> customersProductsController.updateCustomer(customerId, customerRequest));
+    }
+
+    @PatchMapping(value = "/customers/{customerId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<ResponseEntity<?>> patchCustomer(@PathVariable Long customerId,
+        @RequestBody CustomerRequest customerRequest,
+        @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+
+        return write(() -> customersProductsController.patchCustomer(customerId, customerRequest, ifMatch));
+    }
+
+    @DeleteMapping(value = "/customers/{customerId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<ResponseEntity<?>> deleteCustomer(@PathVariable Long customerId) {
+
+        return write(() -> customersProductsController.deleteCustomer(customerId));
+    }
+
+    @PostMapping(value = "/customers/{customerId}/products", produces = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<ResponseEntity<?>> createNewProductForCustomer(@PathVariable Long customerId,
+        @RequestBody ProductRequest productRequest) {
+
+        return write(() -> customersProductsController.createNewProductForCustomer(customerId, productRequest));
+    }
+
+    @PostMapping(value = "/customers/{customerId}/products/batch", produces = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<ResponseEntity<?>> createNewProductsForCustomer(@PathVariable Long customerId,
+        @RequestBody List<ProductRequest> productRequests) {
+
+        return write(() -> customersProductsController.createNewProductsForCustomer(customerId, productRequests));
+    }
+
+    @GetMapping(value = "/products/search", produces = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<ResponseEntity<?>> searchProducts(@RequestParam String q,
+        @RequestParam(required = false) Long customerId, @RequestParam(defaultValue = "0") int page,
+        @RequestParam(defaultValue = "10") int size) {
+
+        return read(() -> customersProductsController.searchProducts(q, customerId, page, size));
+    }
+
+    @GetMapping(value = "/changes", produces = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<ResponseEntity<?>> getChanges(@RequestParam(required = false) String since,
+        @RequestParam(defaultValue = "100") int limit) {
+
+        return read(() -> customersProductsController.getChanges(since, limit));
+    }
+
+    @PutMapping(value = "/products/{productId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<ResponseEntity<?>> updateProduct(@PathVariable Long productId,
+        @RequestBody ProductRequest productRequest) {
+
+        return write(() -> customersProductsController.updateProduct(productId, productRequest));
+    }
+
+    @PatchMapping(value = "/products/{productId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<ResponseEntity<?>> patchProduct(@PathVariable Long productId,
+        @RequestBody ProductRequest productRequest,
+        @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+
+        return write(() -> customersProductsController.patchProduct(productId, productRequest, ifMatch));
+    }
+
+    @DeleteMapping(value = "/products/{productId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<ResponseEntity<?>> deleteProduct(@PathVariable Long productId) {
+
+        return write(() -> customersProductsController.deleteProduct(productId));
+    }
+
+    /**
+     * timed out read is interrupted so it gives its thread back as soon as it can
+     * */
+    private DeferredResult<ResponseEntity<?>> read(Supplier<ResponseEntity<?>> handler) {
+
+        DeferredResult<ResponseEntity<?>> result = new DeferredResult<>(timeoutMillis,
+            serviceUnavailable(String.format(REQUEST_TIMED_OUT, timeoutMillis)));
+        Future<?> task = submit(readExecutor, "read", handler, result);
+        if (task != null) {
+            result.onTimeout(() -> task.cancel(true));
+        }
+        return result;
+    }
+
+    /**
+     * timed out write is not interrupted : it keeps running to its commit or rollback, the client only learns
+     * that the outcome is unknown yet
+     * */
+    private DeferredResult<ResponseEntity<?>> write(Supplier<ResponseEntity<?>> handler) {
+
+        DeferredResult<ResponseEntity<?>> result = new DeferredResult<>(timeoutMillis,
+            ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(String.format(WRITE_TIMED_OUT, timeoutMillis)));
+        submit(writeExecutor, "write", handler, result);
+        return result;
+    }
+
+    /**
+     * runs handler on executor, exceptions of handler are passed to the usual MVC exception handling.
+     * Returns the task, or null when executor rejected it and result is already set
+     * */
+    private Future<?> submit(AsyncTaskExecutor executor, String executorName, Supplier<ResponseEntity<?>> handler,
+        DeferredResult<ResponseEntity<?>> result) {
+
+        try {
+            return executor.submit(() -> {
+                try {
+                    result.setResult(handler.get());
+                } catch (RuntimeException e) {
+                    result.setErrorResult(e);
+                }
+            });
+        } catch (TaskRejectedException e) {
+            log.debug("{} request rejected, executor is saturated", executorName);
+            result.setResult(serviceUnavailable(String.format(EXECUTOR_SATURATED, executorName)));
+            return null;
+        }
+    }
+
+    private static ResponseEntity<?> serviceUnavailable(String message) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+            .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+            .body(message);
+    }
+
+    @Autowired
+    public void setCustomersProductsController(CustomersProductsController customersProductsController) {
+        this.customersProductsController = customersProductsController;
+    }
+
+    @Autowired
+    public void setReadExecutor(@Qualifier(AsyncConfig.READ_EXECUTOR) AsyncTaskExecutor readExecutor) {
+        this.readExecutor = readExecutor;
+    }
+
+    @Autowired
+    public void setWriteExecutor(@Qualifier(AsyncConfig.WRITE_EXECUTOR) AsyncTaskExecutor writeExecutor) {
+        this.writeExecutor = writeExecutor;
+    }
+
+}
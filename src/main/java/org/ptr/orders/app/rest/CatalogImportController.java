@@ -0,0 +1,69 @@
+package org.ptr.orders.app.rest;
+
+import io.swagger.annotations.Api;
+import java.io.IOException;
+import javax.servlet.http.HttpServletRequest;
+import org.ptr.orders.app.rest.dto.ImportResponse;
+import org.ptr.orders.app.service.CatalogImportService;
+import org.ptr.orders.app.service.CatalogImportService.Format;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@Api(
+    value = "Customers and Products import API",
+    produces = "application/json"
+)
+@RestController
+public class CatalogImportController {
+
+    public static final String TEXT_CSV_VALUE = "text/csv";
+
+    private static final MediaType TEXT_CSV = MediaType.parseMediaType(TEXT_CSV_VALUE);
+
+    private CatalogImportService catalogImportService;
+
+
+    /**
+     * import customers from request body, newline delimited json or csv with header row,
+     * body is streamed and never held in memory as a whole
+     *
+     * @return import totals and failed chunks
+     */
+    @PostMapping(value = "/import/customers", produces = MediaType.APPLICATION_JSON_VALUE,
+        consumes = {CustomersProductsController.APPLICATION_NDJSON_VALUE, TEXT_CSV_VALUE})
+    public ResponseEntity<ImportResponse> importCustomers(HttpServletRequest request) throws IOException {
+
+        ImportResponse importResponse = catalogImportService.importCustomers(request.getInputStream(),
+            formatOf(request));
+        return ResponseEntity.ok(importResponse);
+    }
+
+    /**
+     * import products from request body, newline delimited json or csv with header row,
+     * each row refers to its customer by customerId
+     *
+     * @return import totals and failed chunks
+     */
+    @PostMapping(value = "/import/products", produces = MediaType.APPLICATION_JSON_VALUE,
+        consumes = {CustomersProductsController.APPLICATION_NDJSON_VALUE, TEXT_CSV_VALUE})
+    public ResponseEntity<ImportResponse> importProducts(HttpServletRequest request) throws IOException {
+
+        ImportResponse importResponse = catalogImportService.importProducts(request.getInputStream(),
+            formatOf(request));
+        return ResponseEntity.ok(importResponse);
+    }
+
+    private static Format formatOf(HttpServletRequest request) {
+        return TEXT_CSV.isCompatibleWith(MediaType.parseMediaType(request.getContentType())) ? Format.CSV
+            : Format.NDJSON;
+    }
+
+    @Autowired
+    public void setCatalogImportService(CatalogImportService catalogImportService) {
+        this.catalogImportService = catalogImportService;
+    }
+
+}
@@ -0,0 +1,82 @@
+package org.ptr.orders.app.rest;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import org.apache.commons.lang3.StringUtils;
+import org.ptr.orders.app.model.ChangePosition;
+import org.ptr.orders.app.model.ChangedEntity;
+
+/**
+ * Encodes keyset positions into opaque cursor tokens handed out to clients,
+ * and decodes them back when a client asks for the next slice
+ *
+ * */
+public final class CursorCodec {
+
+    public static final String CURSOR_INVALID = "cursor %s is not valid";
+
+    private static final String POSITION_SEPARATOR = "|";
+    private static final int POSITION_PARTS = 3;
+
+    private CursorCodec() {
+    }
+
+    /**
+     * @param lastId id of the last element returned to the client
+     * @return opaque url-safe cursor token
+     * */
+    public static String encode(Long lastId) {
+        return Base64.getUrlEncoder().withoutPadding()
+            .encodeToString(String.valueOf(lastId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param cursor token produced by {@link #encode(Long)}, blank token means the very first slice
+     * @return id to seek after, or null when the client starts from the beginning
+     * @throws IllegalArgumentException when the token cannot be decoded
+     * */
+    public static Long decode(String cursor) {
+        if (StringUtils.isBlank(cursor)) {
+            return null;
+        }
+        try {
+            return Long.valueOf(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(String.format(CURSOR_INVALID, cursor), e);
+        }
+    }
+
+    /**
+     * @param position change feed position of the last change returned to the client
+     * @return opaque url-safe cursor token
+     * */
+    public static String encode(ChangePosition position) {
+        String value = position.getChangedAt() + POSITION_SEPARATOR + position.getEntity() + POSITION_SEPARATOR
+            + position.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param cursor token produced by {@link #encode(ChangePosition)}, blank token means start of the feed
+     * @return position to resume after, or null when the client starts from the beginning
+     * @throws IllegalArgumentException when the token cannot be decoded
+     * */
+    public static ChangePosition decodePosition(String cursor) {
+        if (StringUtils.isBlank(cursor)) {
+            return null;
+        }
+        try {
+            String[] parts = StringUtils.split(new String(Base64.getUrlDecoder().decode(cursor),
+                StandardCharsets.UTF_8), POSITION_SEPARATOR);
+            if (parts.length != POSITION_PARTS) {
+                throw new IllegalArgumentException(String.format(CURSOR_INVALID, cursor));
+            }
+            return new ChangePosition(LocalDateTime.parse(parts[0]), ChangedEntity.valueOf(parts[1]),
+                Long.valueOf(parts[2]));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new IllegalArgumentException(String.format(CURSOR_INVALID, cursor), e);
+        }
+    }
+}
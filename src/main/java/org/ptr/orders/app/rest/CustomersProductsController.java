@@ -1,6 +1,16 @@
 package org.ptr.orders.app.rest;
 
 import io.swagger.annotations.Api;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Function;
+import javax.servlet.http.HttpServletResponse;
+import org.ptr.orders.app.model.ChangePosition;
+import org.ptr.orders.app.model.VersionStamp;
+import org.ptr.orders.app.rest.dto.ChangeResponse;
+import org.ptr.orders.app.rest.dto.ChangesResponse;
 import org.ptr.orders.app.rest.dto.CustomerResponse;
 import org.ptr.orders.app.rest.dto.CustomerRequest;
 import org.ptr.orders.app.rest.dto.CustomersTotalResponse;
@@ -8,18 +18,24 @@ import org.ptr.orders.app.rest.dto.ProductRequest;
 import org.ptr.orders.app.rest.dto.ProductResponse;
 import org.ptr.orders.app.rest.dto.ProductTotalResponse;
 import org.ptr.orders.app.service.CustomerProductsService;
+import org.ptr.orders.app.service.ProductWriteBehind;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
@@ -34,20 +50,65 @@ public class CustomersProductsController {
     public static final String CUSTOMER_BY_ID_NOT_FOUND = "customer not found by given customerId %s";
     public static final String PRODUCT_ID_MUST_BE_NOT_EMPTY = "input path variable productId must not be empty/null";
     public static final String PRODUCT_DATA_ID_MUST_BE_NOT_EMPTY = "input product object must not be empty/null";
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+    public static final String TOP_LIMIT_INVALID = "limit must be between 1 and %d";
+    public static final int MAX_TOP_LIMIT = 100;
+    public static final String SEARCH_QUERY_MUST_BE_NOT_EMPTY = "search query q must not be empty";
+    public static final String SEARCH_INDEX_NOT_READY = "search index is being built, retry later";
+    public static final String SORT_INVALID = "sort must be one of price, price,asc, price,desc";
+    public static final String PRICE_RANGE_INVALID = "minPrice must not be greater than maxPrice";
+    public static final int MAX_CHANGES_LIMIT = 1000;
+    public static final String CHANGES_CURSOR_EXPIRED = "since cursor is older than %s, deletes before it may be "
+        + "purged : read customers and products again and restart the feed without since";
+
+    private static final String SORT_BY_PRICE = "price";
+    private static final String SORT_BY_PRICE_ASC = "price,asc";
+    private static final String SORT_BY_PRICE_DESC = "price,desc";
+    private static final String SEARCH_RETRY_AFTER_SECONDS = "5";
 
     private CustomerProductsService customerProductsService;
 
+    private ProductWriteBehind productWriteBehind;
+
 
     /**
-     * get All customers
+     * get All customers, either by page number or, when {@code after} cursor is given (may be empty for the
+     * first slice), by keyset seek on id. With {@code exactCount=false} page is read without count query
+     * and totalItems is approximate. Conditional requests of pages by number are answered 304 when the client
+     * copy is current, validators are taken from latest change, number of all customers and last committed
+     * customer update, computed for conditional requests only, cursor and count-free slices carry no validators
      *
      * @return list of all customers
      */
     @GetMapping(value = "/customers", produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<?> getCustomers(@RequestParam(defaultValue = "0") int page,
-        @RequestParam(defaultValue = "2") int size) {
+        @RequestParam(defaultValue = "2") int size, @RequestParam(required = false) String after,
+        @RequestParam(defaultValue = "true") boolean exactCount, @RequestHeader HttpHeaders requestHeaders) {
+
+        EntityValidator validator = after == null && exactCount && EntityValidator.isConditional(requestHeaders)
+            ? validatorOf(customerProductsService.getCustomersVersion()) : null;
+        if (validator != null && validator.isNotModified(requestHeaders)) {
+            return validator.notModified();
+        }
+        ResponseEntity<?> response = getCustomersPage(page, size, after, exactCount);
+        return validator != null ? validator.apply(response) : response;
+    }
+
+    private ResponseEntity<?> getCustomersPage(int page, int size, String after, boolean exactCount) {
 
+        if (after != null) {
+            return getCustomersAfter(after, size);
+        }
         Pageable paging = PageRequest.of(page, size);
+        if (!exactCount) {
+            Slice<CustomerResponse> sliceCustomerDtos = customerProductsService.getCustomersSlice(paging);
+            return ResponseEntity.ok(CustomersTotalResponse.builder()
+                .customersList(sliceCustomerDtos.getContent())
+                .totalItems(customerProductsService.getCustomersCount())
+                .currentPage(sliceCustomerDtos.getNumber())
+                .hasNext(sliceCustomerDtos.hasNext())
+                .build());
+        }
         Page<CustomerResponse> pageCustomerDtos = customerProductsService.getCustomers(paging);
 
         CustomersTotalResponse customersTotalResponseResponse = CustomersTotalResponse.builder()
@@ -56,34 +117,99 @@ public class CustomersProductsController {
             .currentPage(pageCustomerDtos.getNumber())
             .build();
         return ResponseEntity.ok(customersTotalResponseResponse);
-
     }
 
 
     /**
-     * get One customer by path
+     * get One customer by path, 304 when ETag / Last-Modified of the client copy is current. Validators are
+     * taken from version and modification time of the (cached) customer served, so they always match the body
      *
      * @return customer found
      */
     @GetMapping(value = "/customers/{customerId}", produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<?> getCustomerById(@PathVariable Long customerId) {
+    public ResponseEntity<?> getCustomerById(@PathVariable Long customerId, @RequestHeader HttpHeaders requestHeaders) {
 
         CustomerResponse customerResponse;
         if (customerId != null) {
             customerResponse = customerProductsService.getCustomerById(customerId);
-            return ResponseEntity.ok(customerResponse);
+            return conditionalResponse(validatorOf(customerResponse.getVersion(), customerResponse.getCreatedAt(),
+                customerResponse.getModifiedAt()), requestHeaders, customerResponse);
         } else {
             return ResponseEntity.badRequest().body(String.format(CUSTOMER_BY_ID_NOT_FOUND, customerId));
         }
     }
 
 
+    /**
+     * get products of customer, either by page number or by keyset seek on (customer_id, id)
+     * when {@code after} cursor is given. With {@code exactCount=false} page is read without count query
+     * and totalItems is approximate. Conditional requests of pages by number or price are answered 304 when
+     * the client copy is current, validators are taken from latest change, number of customer products and
+     * last committed product update, computed for conditional requests only, cursor and count-free slices carry
+     * no validators.
+     * With {@code minPrice} / {@code maxPrice} (inclusive) or {@code sort=price[,asc|desc]} products within
+     * the price range are paged in price order, {@code after} and {@code exactCount} are then ignored
+     *
+     * @return list of customer products
+     */
     @GetMapping(value = "/customers/{customerId}/products", produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<?> getProductsByCustomerId(@PathVariable Long customerId,
-        @RequestParam(defaultValue = "0") int page, @RequestParam(defaultValue = "10") int size) {
+        @RequestParam(defaultValue = "0") int page, @RequestParam(defaultValue = "10") int size,
+        @RequestParam(required = false) String after, @RequestParam(defaultValue = "true") boolean exactCount,
+        @RequestParam(required = false) BigDecimal minPrice, @RequestParam(required = false) BigDecimal maxPrice,
+        @RequestParam(required = false) String sort, @RequestHeader HttpHeaders requestHeaders) {
+
+        if (sort != null && !SORT_BY_PRICE.equals(sort) && !SORT_BY_PRICE_ASC.equals(sort)
+            && !SORT_BY_PRICE_DESC.equals(sort)) {
+            return ResponseEntity.badRequest().body(SORT_INVALID);
+        }
+        if (minPrice != null && maxPrice != null && minPrice.compareTo(maxPrice) > 0) {
+            return ResponseEntity.badRequest().body(PRICE_RANGE_INVALID);
+        }
+
+        boolean byPrice = minPrice != null || maxPrice != null || sort != null;
+        EntityValidator validator = customerId != null && (byPrice || after == null && exactCount)
+            && EntityValidator.isConditional(requestHeaders)
+            ? validatorOf(customerProductsService.getProductsVersion(customerId)) : null;
+        if (validator != null && validator.isNotModified(requestHeaders)) {
+            return validator.notModified();
+        }
+        ResponseEntity<?> response = customerId != null && byPrice
+            ? getProductsByPrice(customerId, minPrice, maxPrice, SORT_BY_PRICE_DESC.equals(sort), page, size)
+            : getProductsPage(customerId, page, size, after, exactCount);
+        return validator != null ? validator.apply(response) : response;
+    }
+
+    private ResponseEntity<?> getProductsByPrice(Long customerId, BigDecimal minPrice, BigDecimal maxPrice,
+        boolean descending, int page, int size) {
+
+        Page<ProductResponse> pageProductsDto = customerProductsService.getProductsByCustomerIdAndPrice(customerId,
+            minPrice, maxPrice, descending, PageRequest.of(page, size));
+        return ResponseEntity.ok(ProductTotalResponse.builder()
+            .productsList(pageProductsDto.getContent())
+            .totalItems(pageProductsDto.getTotalElements())
+            .totalPages((long) pageProductsDto.getTotalPages())
+            .currentPage(pageProductsDto.getNumber())
+            .hasNext(pageProductsDto.hasNext())
+            .build());
+    }
+
+    private ResponseEntity<?> getProductsPage(Long customerId, int page, int size, String after,
+        boolean exactCount) {
 
         Pageable paging = PageRequest.of(page, size);
-        if (customerId != null) {
+        if (customerId != null && after != null) {
+            return getProductsByCustomerIdAfter(customerId, after, size);
+        } else if (customerId != null && !exactCount) {
+            Slice<ProductResponse> sliceProductsDto =
+                customerProductsService.getProductsSliceByCustomerId(customerId, paging);
+            return ResponseEntity.ok(ProductTotalResponse.builder()
+                .productsList(sliceProductsDto.getContent())
+                .totalItems(customerProductsService.getProductsCount(customerId))
+                .currentPage(sliceProductsDto.getNumber())
+                .hasNext(sliceProductsDto.hasNext())
+                .build());
+        } else if (customerId != null) {
             Page<ProductResponse> pageProductsDto = customerProductsService.getProductsByCustomerId(customerId, paging);
             ProductTotalResponse productsTotalDtoResponse = ProductTotalResponse.builder()
                 .productsList(pageProductsDto.getContent())
@@ -97,6 +223,51 @@ public class CustomersProductsController {
     }
 
 
+    /**
+     * export all products of customer as newline delimited json, streamed row by row into the response
+     *
+     */
+    @GetMapping(value = "/customers/{customerId}/products/export", produces = APPLICATION_NDJSON_VALUE)
+    public void exportProductsByCustomerId(@PathVariable Long customerId, HttpServletResponse response)
+        throws IOException {
+
+        response.setContentType(APPLICATION_NDJSON_VALUE);
+        customerProductsService.exportProductsByCustomerId(customerId, response.getOutputStream());
+    }
+
+
+    /**
+     * count and total / min / max / average price of customer products, answered from an aggregate
+     * maintained on writes, no products are read
+     *
+     * @return product stats of customer
+     */
+    @GetMapping(value = "/customers/{customerId}/products/stats", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> getProductStatsByCustomerId(@PathVariable Long customerId) {
+
+        if (customerId != null) {
+            return ResponseEntity.ok(customerProductsService.getProductStats(customerId));
+        } else {
+            return ResponseEntity.badRequest().body(CUSTOMER_ID_MUST_BE_NOT_EMPTY);
+        }
+    }
+
+    /**
+     * customers ranked by total price of their products, highest first
+     *
+     * @return product stats of top customers
+     */
+    @GetMapping(value = "/customers/stats/top", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> getTopCustomersByTotalPrice(@RequestParam(defaultValue = "10") int limit) {
+
+        if (limit > 0 && limit <= MAX_TOP_LIMIT) {
+            return ResponseEntity.ok(customerProductsService.getTopCustomersByTotalPrice(limit));
+        } else {
+            return ResponseEntity.badRequest().body(String.format(TOP_LIMIT_INVALID, MAX_TOP_LIMIT));
+        }
+    }
+
+
     @PostMapping(value = "/customers", produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<?> createCustomer(@RequestBody CustomerRequest customerRequest) {
 
@@ -126,6 +297,30 @@ public class CustomersProductsController {
 
     }
 
+    /**
+     * Partial update of customer, only fields present in request are changed, in a single UPDATE statement.
+     * With If-Match (strong ETags of the customer) the update applies only to a listed version, 412 otherwise
+     *
+     * @return customerId
+     */
+    @PatchMapping(value = "/customers/{customerId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> patchCustomer(@PathVariable Long customerId, @RequestBody CustomerRequest customerRequest,
+        @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+
+        if (customerRequest != null && customerId != null) {
+            List<Long> expectedVersions;
+            try {
+                expectedVersions = EntityValidator.versionsOf(ifMatch);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).body(e.getMessage());
+            }
+            customerProductsService.patchCustomer(customerId, customerRequest, expectedVersions);
+            return ResponseEntity.ok(customerId);
+        } else {
+            return ResponseEntity.badRequest().body(CUSTOMER_ID_MUST_BE_NOT_EMPTY);
+        }
+    }
+
     @DeleteMapping(value = "/customers/{customerId}", produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<?> deleteCustomer(@PathVariable Long customerId) {
 
@@ -154,22 +349,124 @@ public class CustomersProductsController {
         }
     }
 
+    /**
+     * Create many new products for existing customer in one call
+     *
+     * @return ids of created products or bad request
+     */
+    @PostMapping(value = "/customers/{customerId}/products/batch", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> createNewProductsForCustomer(@PathVariable Long customerId,
+        @RequestBody List<ProductRequest> productRequests) {
+
+        if (productRequests != null && customerId != null) {
+            List<Long> productIds = customerProductsService.createProducts(customerId, productRequests);
+            return ResponseEntity.ok(productIds);
+        } else {
+            return ResponseEntity.badRequest().body(PRODUCT_DATA_ID_MUST_BE_NOT_EMPTY);
+        }
+    }
+
+    /**
+     * get One product by path, 304 when ETag / Last-Modified of the client copy is current. Validators are
+     * taken from version and modification time of the (cached) product served, so they always match the body
+     *
+     * @return product found
+     */
     @GetMapping(value = "/products/{productId}", produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<?> getProductById(@PathVariable Long productId) {
+    public ResponseEntity<?> getProductById(@PathVariable Long productId, @RequestHeader HttpHeaders requestHeaders) {
 
         ProductResponse productResponse;
         if (productId != null) {
             productResponse = customerProductsService.getProductById(productId);
-            return ResponseEntity.ok(productResponse);
+            return conditionalResponse(validatorOf(productResponse.getVersion(), productResponse.getCreatedAt(),
+                productResponse.getModifiedAt()), requestHeaders, productResponse);
         } else {
             return ResponseEntity.badRequest().body(PRODUCT_ID_MUST_BE_NOT_EMPTY);
         }
     }
 
+    /**
+     * search products by title, every token of {@code q} matches as a prefix of a title token,
+     * optionally within products of one customer. Served from an in-memory index, ranked best first.
+     * 503 with Retry-After until the index is first built, rather than incomplete hits
+     *
+     * @return page of products found with total number of hits
+     */
+    @GetMapping(value = "/products/search", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> searchProducts(@RequestParam String q, @RequestParam(required = false) Long customerId,
+        @RequestParam(defaultValue = "0") int page, @RequestParam(defaultValue = "10") int size) {
+
+        if (q.trim().isEmpty()) {
+            return ResponseEntity.badRequest().body(SEARCH_QUERY_MUST_BE_NOT_EMPTY);
+        }
+        if (!customerProductsService.isSearchReady()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, SEARCH_RETRY_AFTER_SECONDS)
+                .body(SEARCH_INDEX_NOT_READY);
+        }
+        Page<ProductResponse> pageProductsDto =
+            customerProductsService.searchProducts(q, customerId, PageRequest.of(page, size));
+        return ResponseEntity.ok(ProductTotalResponse.builder()
+            .productsList(pageProductsDto.getContent())
+            .totalItems(pageProductsDto.getTotalElements())
+            .totalPages((long) pageProductsDto.getTotalPages())
+            .currentPage(pageProductsDto.getNumber())
+            .hasNext(pageProductsDto.hasNext())
+            .build());
+    }
+
+    /**
+     * change feed of customers and products, created, updated or deleted after the {@code since} cursor,
+     * oldest first. Returned cursor is passed as {@code since} of the next call, also when there are no changes.
+     * 410 when the cursor is older than deleted rows are kept, the client has to resync from the listings
+     *
+     * @return changes with current state of each changed row
+     */
+    @GetMapping(value = "/changes", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> getChanges(@RequestParam(required = false) String since,
+        @RequestParam(defaultValue = "100") int limit) {
+
+        if (limit <= 0 || limit > MAX_CHANGES_LIMIT) {
+            return ResponseEntity.badRequest().body(String.format(TOP_LIMIT_INVALID, MAX_CHANGES_LIMIT));
+        }
+        ChangePosition after;
+        try {
+            after = CursorCodec.decodePosition(since);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+        LocalDateTime horizon = after != null ? customerProductsService.getChangesHorizon() : null;
+        if (horizon != null && after.getChangedAt().isBefore(horizon)) {
+            return ResponseEntity.status(HttpStatus.GONE).body(String.format(CHANGES_CURSOR_EXPIRED, horizon));
+        }
+        Slice<ChangeResponse> changes = customerProductsService.getChanges(after, limit);
+        String nextCursor = since;
+        if (changes.hasContent()) {
+            ChangeResponse last = changes.getContent().get(changes.getNumberOfElements() - 1);
+            nextCursor = CursorCodec.encode(new ChangePosition(last.getChangedAt(), last.getEntity(), last.getId()));
+        }
+        return ResponseEntity.ok(ChangesResponse.builder()
+            .changes(changes.getContent())
+            .nextCursor(nextCursor)
+            .hasMore(changes.hasNext())
+            .build());
+    }
+
+    /**
+     * Full update of product. In write-behind mode the update is buffered and 202 is answered before it is
+     * written, unless the buffer is full : then the update pending for the product is written first, so that
+     * it does not overwrite this one later
+     *
+     * @return productId
+     */
     @PutMapping(value = "/products/{productId}", produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<?> updateProduct(@PathVariable Long productId, @RequestBody ProductRequest productRequest) {
 
         if (productId != null && productRequest != null) {
+            if (productWriteBehind.submit(productId, productRequest)) {
+                return ResponseEntity.accepted().body(productId);
+            }
+            productWriteBehind.flush(productId);
             productId = customerProductsService.updateProduct(productId, productRequest);
             return ResponseEntity.ok(productId);
         } else {
@@ -179,10 +476,36 @@ public class CustomersProductsController {
     }
 
 
+    /**
+     * Partial update of product, only fields present in request are changed, in a single UPDATE statement.
+     * With If-Match (strong ETags of the product) the update applies only to a listed version, 412 otherwise
+     *
+     * @return productId
+     */
+    @PatchMapping(value = "/products/{productId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> patchProduct(@PathVariable Long productId, @RequestBody ProductRequest productRequest,
+        @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+
+        if (productId != null && productRequest != null) {
+            List<Long> expectedVersions;
+            try {
+                expectedVersions = EntityValidator.versionsOf(ifMatch);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).body(e.getMessage());
+            }
+            productWriteBehind.flush(productId);
+            customerProductsService.patchProduct(productId, productRequest, expectedVersions);
+            return ResponseEntity.ok(productId);
+        } else {
+            return ResponseEntity.badRequest().body(PRODUCT_DATA_ID_MUST_BE_NOT_EMPTY);
+        }
+    }
+
     @DeleteMapping(value = "/products/{productId}", produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<?> deleteProduct(@PathVariable Long productId) {
 
         if (productId != null) {
+            productWriteBehind.flush(productId);
             customerProductsService.deleteProduct(productId);
             return ResponseEntity.ok().body(String.format("removed productId : %d", productId) );
         } else {
@@ -190,9 +513,91 @@ public class CustomersProductsController {
         }
     }
 
+    /**
+     * counters of write-behind mode of product updates : coalescing ratio is the number of received updates
+     * per product row written, flush times cover all batches of one flush
+     *
+     * @return write-behind stats
+     */
+    @GetMapping(value = "/products/write-behind/stats", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> getWriteBehindStats() {
+        return ResponseEntity.ok(productWriteBehind.getStats());
+    }
+
+    private ResponseEntity<?> getCustomersAfter(String after, int size) {
+
+        Long afterId;
+        try {
+            afterId = CursorCodec.decode(after);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+        Slice<CustomerResponse> sliceCustomerDtos = customerProductsService.getCustomersAfter(afterId, size);
+        CustomersTotalResponse customersTotalResponse = CustomersTotalResponse.builder()
+            .customersList(sliceCustomerDtos.getContent())
+            .totalItems(customerProductsService.getCustomersCount())
+            .hasNext(sliceCustomerDtos.hasNext())
+            .nextCursor(nextCursor(sliceCustomerDtos, CustomerResponse::getId))
+            .build();
+        return ResponseEntity.ok(customersTotalResponse);
+    }
+
+    private ResponseEntity<?> getProductsByCustomerIdAfter(Long customerId, String after, int size) {
+
+        Long afterId;
+        try {
+            afterId = CursorCodec.decode(after);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+        Slice<ProductResponse> sliceProductsDto =
+            customerProductsService.getProductsByCustomerIdAfter(customerId, afterId, size);
+        ProductTotalResponse productsTotalDtoResponse = ProductTotalResponse.builder()
+            .productsList(sliceProductsDto.getContent())
+            .totalItems(customerProductsService.getProductsCount(customerId))
+            .hasNext(sliceProductsDto.hasNext())
+            .nextCursor(nextCursor(sliceProductsDto, ProductResponse::getId))
+            .build();
+        return ResponseEntity.ok(productsTotalDtoResponse);
+    }
+
+    private static EntityValidator validatorOf(VersionStamp versionStamp) {
+        return versionStamp != null
+            ? EntityValidator.of(versionStamp.getDiscriminator(), versionStamp.getLastModified(),
+            versionStamp.getCommittedAt()) : null;
+    }
+
+    private static EntityValidator validatorOf(Long version, LocalDateTime createdAt, LocalDateTime modifiedAt) {
+        return EntityValidator.of(version, modifiedAt != null ? modifiedAt : createdAt);
+    }
+
+    private static ResponseEntity<?> conditionalResponse(EntityValidator validator, HttpHeaders requestHeaders,
+        Object body) {
+
+        if (validator == null) {
+            return ResponseEntity.ok(body);
+        }
+        return validator.isNotModified(requestHeaders) ? validator.notModified()
+            : validator.apply(ResponseEntity.ok(body));
+    }
+
+    private static <T> String nextCursor(Slice<T> slice, Function<T, Long> idGetter) {
+
+        if (slice.hasNext() && slice.hasContent()) {
+            List<T> content = slice.getContent();
+            return CursorCodec.encode(idGetter.apply(content.get(content.size() - 1)));
+        }
+        return null;
+    }
+
     @Autowired
     public void setCustomerProductsService(CustomerProductsService customerProductsService) {
         this.customerProductsService = customerProductsService;
     }
 
+    @Autowired
+    public void setProductWriteBehind(ProductWriteBehind productWriteBehind) {
+        this.productWriteBehind = productWriteBehind;
+    }
+
 }
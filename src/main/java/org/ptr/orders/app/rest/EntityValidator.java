@@ -0,0 +1,161 @@
+package org.ptr.orders.app.rest;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * ETag and Last-Modified validators of a response, derived from version and coalesce(modifiedAt, createdAt)
+ * of the row it is built from, or from number of rows, their latest changedAt and the last committed update
+ * for a listing. Listing validators are checked against conditional request headers before the page is loaded,
+ * so a 304 costs an index lookup and no mapping or serialization
+ *
+ * */
+public final class EntityValidator {
+
+    public static final String ENTITY_TAG_NOT_MATCHED = "none of entity tags %s can match strongly";
+
+    private static final String ANY_TAG = "*";
+    private static final String WEAK_TAG_PREFIX = "W/";
+    private static final long MILLIS_PER_SECOND = 1000L;
+    private static final Pattern STRONG_ROW_TAG =
+        Pattern.compile("\"([0-9a-f]{1,16})-[0-9a-f]{1,16}\\.[0-9a-f]{1,8}\"");
+    private static final String TAG_SEPARATOR = ",";
+
+    private final String eTag;
+
+    private final long lastModifiedMillis;
+
+    private EntityValidator(String eTag, long lastModifiedMillis) {
+        this.eTag = eTag;
+        this.lastModifiedMillis = lastModifiedMillis;
+    }
+
+    /**
+     * @param discriminator version of the row, or number of rows for a listing, so removals change the tag as well
+     * @param lastModified latest modification time, null when it is not known
+     * @return validator, or null when there is nothing to derive it from
+     * */
+    public static EntityValidator of(Long discriminator, LocalDateTime lastModified) {
+        if (discriminator == null || lastModified == null) {
+            return null;
+        }
+        Instant instant = lastModified.atZone(ZoneOffset.UTC).toInstant();
+        return new EntityValidator(String.format("\"%x-%x.%x\"", discriminator, instant.getEpochSecond(),
+            instant.getNano()), instant.toEpochMilli());
+    }
+
+    /**
+     * @return true when request carries If-None-Match or If-Modified-Since, validators are worth computing
+     * */
+    public static boolean isConditional(HttpHeaders requestHeaders) {
+        return requestHeaders.containsKey(HttpHeaders.IF_NONE_MATCH)
+            || requestHeaders.containsKey(HttpHeaders.IF_MODIFIED_SINCE);
+    }
+
+    /**
+     * listing validator : updates committed out of changedAt order leave number of rows and latest changedAt
+     * as they were, so the last commit of an update is part of the tag and Last-Modified is the later of both
+     * @param discriminator number of rows of the listing
+     * @param lastModified latest changedAt of the rows, null when there is none
+     * @param committedAt last commit of an update of the rows, null when there was none
+     * @return validator, or null when there is nothing to derive it from
+     * */
+    public static EntityValidator of(Long discriminator, LocalDateTime lastModified, LocalDateTime committedAt) {
+        if (committedAt == null) {
+            return of(discriminator, lastModified);
+        }
+        if (discriminator == null || lastModified == null) {
+            return null;
+        }
+        Instant changed = lastModified.atZone(ZoneOffset.UTC).toInstant();
+        Instant committed = committedAt.atZone(ZoneOffset.UTC).toInstant();
+        return new EntityValidator(String.format("\"%x.%x.%x-%x.%x\"", discriminator, committed.getEpochSecond(),
+            committed.getNano(), changed.getEpochSecond(), changed.getNano()),
+            Math.max(changed.toEpochMilli(), committed.toEpochMilli()));
+    }
+
+    /**
+     * If-None-Match takes precedence over If-Modified-Since, Last-Modified is compared at whole seconds
+     * as sent in the header
+     * @return true when client copy is current
+     * */
+    public boolean isNotModified(HttpHeaders requestHeaders) {
+        List<String> ifNoneMatch = requestHeaders.getIfNoneMatch();
+        if (!ifNoneMatch.isEmpty()) {
+            return ifNoneMatch.stream().anyMatch(tag -> ANY_TAG.equals(tag) || eTag.equals(stripWeak(tag)));
+        }
+        long ifModifiedSince;
+        try {
+            ifModifiedSince = requestHeaders.getIfModifiedSince();
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        return ifModifiedSince >= 0
+            && lastModifiedMillis / MILLIS_PER_SECOND * MILLIS_PER_SECOND <= ifModifiedSince;
+    }
+
+    /**
+     * If-Match uses strong comparison : weak tags and tags not produced by this class never match,
+     * every other listed tag is a candidate, the update applies when the row is at any of their versions
+     * @param ifMatch If-Match header value, one or more comma separated tags produced for a row
+     * @return row versions the strong tags were produced for, null when header is absent or matches any version
+     * @throws IllegalArgumentException when none of the listed tags can match strongly
+     * */
+    public static List<Long> versionsOf(String ifMatch) {
+        if (ifMatch == null || ifMatch.trim().isEmpty() || ANY_TAG.equals(ifMatch.trim())) {
+            return null;
+        }
+        List<Long> versions = new ArrayList<>();
+        for (String listed : ifMatch.split(TAG_SEPARATOR)) {
+            Long version = strongVersionOf(listed.trim());
+            if (version != null && !versions.contains(version)) {
+                versions.add(version);
+            }
+        }
+        if (versions.isEmpty()) {
+            throw new IllegalArgumentException(String.format(ENTITY_TAG_NOT_MATCHED, ifMatch));
+        }
+        return versions;
+    }
+
+    /**
+     * tag must have the whole {@code "<version>-<epoch second>.<nano>"} form of a row tag, hex numbers :
+     * listing tags, truncated or otherwise altered tags are foreign
+     * @return version of a strong row tag produced by this class, null for weak or foreign tags
+     * */
+    private static Long strongVersionOf(String tag) {
+        Matcher matcher = STRONG_ROW_TAG.matcher(tag);
+        return matcher.matches() ? Long.parseUnsignedLong(matcher.group(1), 16) : null;
+    }
+
+    public String getETag() {
+        return eTag;
+    }
+
+    public ResponseEntity<?> notModified() {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).lastModified(lastModifiedMillis).build();
+    }
+
+    /**
+     * @return given response with validators added, non 200 responses are returned as is
+     * */
+    public ResponseEntity<?> apply(ResponseEntity<?> response) {
+        if (response.getStatusCode() != HttpStatus.OK) {
+            return response;
+        }
+        return ResponseEntity.ok().headers(response.getHeaders()).eTag(eTag).lastModified(lastModifiedMillis)
+            .body(response.getBody());
+    }
+
+    private static String stripWeak(String tag) {
+        return tag.startsWith(WEAK_TAG_PREFIX) ? tag.substring(WEAK_TAG_PREFIX.length()) : tag;
+    }
+}
@@ -0,0 +1,55 @@
+package org.ptr.orders.app.rest;
+
+import io.swagger.annotations.Api;
+import org.ptr.orders.app.service.ProductEventPublisher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+@Api(
+    value = "Product events API",
+    produces = MediaType.TEXT_EVENT_STREAM_VALUE
+)
+@RestController
+public class ProductEventsController {
+
+    private static final String RETRY_AFTER_SECONDS = "5";
+
+    private ProductEventPublisher productEventPublisher;
+
+    @Value("${app.events.timeout-ms:1800000}")
+    private long timeoutMillis;
+
+
+    /**
+     * Server-Sent Events stream of product changes of customer : {@code product} events carry created / updated
+     * state or deleted ids, {@code resync} tells a client that fell behind to read the listing again.
+     * Stream ends after {@code app.events.timeout-ms}, clients reconnect. 503 when subscribers are at the cap
+     *
+     * @return event stream
+     */
+    @GetMapping(value = "/customers/{customerId}/products/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> subscribeProductEvents(@PathVariable Long customerId) {
+
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        if (!productEventPublisher.subscribe(customerId, emitter)) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+                .build();
+        }
+        return ResponseEntity.ok(emitter);
+    }
+
+    @Autowired
+    public void setProductEventPublisher(ProductEventPublisher productEventPublisher) {
+        this.productEventPublisher = productEventPublisher;
+    }
+
+}
@@ -0,0 +1,26 @@
+package org.ptr.orders.app.rest;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+/**
+ * Maps service exceptions shared by sync and async controllers onto responses
+ *
+ * */
+@Slf4j
+@RestControllerAdvice
+public class RestExceptionHandler {
+
+    /**
+     * row was changed by someone else since the version the client (or the in-memory entity) is based on
+     * */
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public ResponseEntity<?> versionConflict(OptimisticLockingFailureException e) {
+        log.debug("version conflict : {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).body(e.getMessage());
+    }
+}
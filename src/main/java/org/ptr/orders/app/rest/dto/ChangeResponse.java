@@ -0,0 +1,37 @@
+package org.ptr.orders.app.rest.dto;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.ptr.orders.app.model.ChangedEntity;
+
+/**
+ *
+ * One entry of the change feed : current state of a customer or a product, only the one named by
+ * {@code entity} is set. Operation is DELETED for soft deleted rows, CREATED while the row is at its first version
+ *
+ * */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ChangeResponse implements Serializable {
+
+    public enum Operation {
+        CREATED,
+        UPDATED,
+        DELETED
+    }
+
+    private ChangedEntity entity;
+    private Long id;
+    private Operation operation;
+    private LocalDateTime changedAt;
+    private Long version;
+    private CustomerResponse customer;
+    private ProductResponse product;
+
+}
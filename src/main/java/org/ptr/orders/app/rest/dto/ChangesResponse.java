@@ -0,0 +1,21 @@
+package org.ptr.orders.app.rest.dto;
+
+import java.io.Serializable;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ChangesResponse implements Serializable {
+
+    private List<ChangeResponse> changes;
+    private String nextCursor;
+    private Boolean hasMore;
+
+}
@@ -25,5 +25,6 @@ public class CustomerResponse implements Serializable {
     private Boolean isDeleted;
     private LocalDateTime createdAt;
     private LocalDateTime modifiedAt;
+    private Long version;
 
 }
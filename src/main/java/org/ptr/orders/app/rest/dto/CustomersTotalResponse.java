@@ -21,5 +21,7 @@ public class CustomersTotalResponse {
     private Integer currentPage;
     private Long totalItems;
     private Long totalPages;
+    private Boolean hasNext;
+    private String nextCursor;
 
 }
@@ -0,0 +1,26 @@
+package org.ptr.orders.app.rest.dto;
+
+import java.io.Serializable;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Getter
+@Setter
+public class DatasetResponse implements Serializable {
+
+    private Long customers;
+    private Long products;
+    private Integer maxProductsPerCustomer;
+    private Long elapsedMillis;
+    private Long rowsPerSecond;
+
+}
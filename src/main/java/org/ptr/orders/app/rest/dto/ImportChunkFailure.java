@@ -0,0 +1,28 @@
+package org.ptr.orders.app.rest.dto;
+
+import java.io.Serializable;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Getter
+@Setter
+public class ImportChunkFailure implements Serializable {
+
+    private Integer chunk;
+    private Long firstRow;
+    private Long lastRow;
+    private Integer rejectedRows;
+    private Boolean rolledBack;
+    private List<String> messages;
+
+}
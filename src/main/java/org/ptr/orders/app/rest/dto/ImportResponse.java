@@ -0,0 +1,30 @@
+package org.ptr.orders.app.rest.dto;
+
+import java.io.Serializable;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Getter
+@Setter
+public class ImportResponse implements Serializable {
+
+    private Long rowsRead;
+    private Long rowsImported;
+    private Long rowsRejected;
+    private Integer chunksCommitted;
+    private Integer chunksFailed;
+    private Boolean completed;
+    private Long elapsedMillis;
+    private List<ImportChunkFailure> failures;
+
+}
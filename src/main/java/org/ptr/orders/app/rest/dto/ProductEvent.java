@@ -0,0 +1,41 @@
+package org.ptr.orders.app.rest.dto;
+
+import java.io.Serializable;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ *
+ * Product change pushed to subscribers of a customer : product holds the state after a create or update,
+ * DELETED carries ids only. DELETED without productId means all products of the customer were deleted
+ *
+ * */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ProductEvent implements Serializable {
+
+    private ChangeResponse.Operation operation;
+    private Long customerId;
+    private Long productId;
+    private ProductResponse product;
+
+    public static ProductEvent created(ProductResponse product) {
+        return new ProductEvent(ChangeResponse.Operation.CREATED, product.getCustomerId(), product.getId(), product);
+    }
+
+    public static ProductEvent updated(ProductResponse product) {
+        return new ProductEvent(ChangeResponse.Operation.UPDATED, product.getCustomerId(), product.getId(), product);
+    }
+
+    /**
+     * @param productId null when all products of customer were deleted
+     * */
+    public static ProductEvent deleted(Long customerId, Long productId) {
+        return new ProductEvent(ChangeResponse.Operation.DELETED, customerId, productId, null);
+    }
+
+}
@@ -26,5 +26,6 @@ public class ProductResponse implements Serializable {
     private BigDecimal price;
     private LocalDateTime createdAt;
     private LocalDateTime modifiedAt;
+    private Long version;
 
 }
@@ -22,5 +22,7 @@ public class ProductTotalResponse implements Serializable {
     private Integer currentPage;
     private Long totalItems;
     private Long totalPages;
+    private Boolean hasNext;
+    private String nextCursor;
 
 }
@@ -0,0 +1,34 @@
+package org.ptr.orders.app.rest.dto;
+
+import java.io.Serializable;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Getter
+@Setter
+public class WriteBehindStatsResponse implements Serializable {
+
+    private Boolean enabled;
+    private Long pendingProducts;
+    private Long receivedUpdates;
+    private Long coalescedUpdates;
+    private Long writtenThroughUpdates;
+    private Long flushedProducts;
+    private Long missingProducts;
+    private Long failedProducts;
+    private Long deadLetteredProducts;
+    private Double coalescingRatio;
+    private Long flushes;
+    private Double averageFlushMillis;
+    private Double maxFlushMillis;
+
+}
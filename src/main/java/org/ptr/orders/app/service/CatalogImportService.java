@@ -0,0 +1,339 @@
+package org.ptr.orders.app.service;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import lombok.extern.slf4j.Slf4j;
+import org.ptr.orders.app.dao.CustomersRepository;
+import org.ptr.orders.app.mapper.CustomerMapper;
+import org.ptr.orders.app.mapper.ProductMapper;
+import org.ptr.orders.app.model.Customer;
+import org.ptr.orders.app.model.Product;
+import org.ptr.orders.app.model.ProductPrice;
+import org.ptr.orders.app.model.ProductTitle;
+import org.ptr.orders.app.rest.dto.CustomerRequest;
+import org.ptr.orders.app.rest.dto.ImportChunkFailure;
+import org.ptr.orders.app.rest.dto.ImportResponse;
+import org.ptr.orders.app.rest.dto.ProductEvent;
+import org.ptr.orders.app.rest.dto.ProductRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+
+/**
+ *
+ * Bulk import of customers and products from newline delimited json or csv (with header row).
+ * Payload is read row by row from the input stream and written in chunks of {@code app.import.chunk-size} rows,
+ * each chunk in its own transaction with JDBC batching, so a failed chunk is rolled back and reported
+ * while the rest of the import goes on
+ *
+ * */
+@Slf4j
+@Service
+public class CatalogImportService {
+
+    public enum Format { NDJSON, CSV }
+
+    private static final int MAX_MESSAGES_PER_CHUNK = 10;
+    private static final int PROGRESS_LOG_CHUNKS = 10;
+
+    private static final String ROW_REJECTED = "row %d rejected : %s";
+    private static final String PAYLOAD_MALFORMED = "row %d malformed, import stopped : %s";
+    private static final String CHUNK_ROLLED_BACK = "chunk rolled back : %s";
+    private static final String PRODUCT_CUSTOMER_NOT_FOUND = "product '%s' rejected, customer by id : %d not found";
+
+    private static final CsvSchema CSV_WITH_HEADER = CsvSchema.emptySchema().withHeader();
+
+    private final CsvMapper csvMapper = csvMapper();
+
+    private CustomerMapper customerMapper;
+
+    private ProductMapper productMapper;
+
+    private CustomersRepository customersRepository;
+
+    private EntityCountCache entityCountCache;
+
+    private ProductStatsCache productStatsCache;
+
+    private ProductSearchIndex productSearchIndex;
+
+    private ProductPriceIndex productPriceIndex;
+
+    private ProductEventPublisher productEventPublisher;
+
+    private ObjectMapper objectMapper;
+
+    private TransactionTemplate transactionTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${app.import.chunk-size:1000}")
+    private int importChunkSize;
+
+    @Autowired
+    public void setCustomerMapper(CustomerMapper customerMapper) {
+        this.customerMapper = customerMapper;
+    }
+
+    @Autowired
+    public void setProductMapper(ProductMapper productMapper) {
+        this.productMapper = productMapper;
+    }
+
+    @Autowired
+    public void setCustomersRepository(CustomersRepository customersRepository) {
+        this.customersRepository = customersRepository;
+    }
+
+    @Autowired
+    public void setEntityCountCache(EntityCountCache entityCountCache) {
+        this.entityCountCache = entityCountCache;
+    }
+
+    @Autowired
+    public void setProductStatsCache(ProductStatsCache productStatsCache) {
+        this.productStatsCache = productStatsCache;
+    }
+
+    @Autowired
+    public void setProductSearchIndex(ProductSearchIndex productSearchIndex) {
+        this.productSearchIndex = productSearchIndex;
+    }
+
+    @Autowired
+    public void setProductPriceIndex(ProductPriceIndex productPriceIndex) {
+        this.productPriceIndex = productPriceIndex;
+    }
+
+    @Autowired
+    public void setProductEventPublisher(ProductEventPublisher productEventPublisher) {
+        this.productEventPublisher = productEventPublisher;
+    }
+
+    @Autowired
+    public void setObjectMapper(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Autowired
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+
+    /**
+     * Imports customers, one {@link CustomerRequest} per row
+     * @param inputStream payload, read once and left open
+     * @param format
+     * @return import totals with failed chunks
+     *
+     * */
+    public ImportResponse importCustomers(InputStream inputStream, Format format) throws IOException {
+        return importRows("customers", inputStream, format, CustomerRequest.class, this::writeCustomers);
+    }
+
+    /**
+     * Imports products, one {@link ProductRequest} per row, each row names its customer by customerId.
+     * Rows of customers that do not exist are rejected
+     * @param inputStream payload, read once and left open
+     * @param format
+     * @return import totals with failed chunks
+     *
+     * */
+    public ImportResponse importProducts(InputStream inputStream, Format format) throws IOException {
+        return importRows("products", inputStream, format, ProductRequest.class, this::writeProducts);
+    }
+
+
+    private <T> ImportResponse importRows(String entityName, InputStream inputStream, Format format,
+        Class<T> rowType, ChunkWriter<T> chunkWriter) throws IOException {
+
+        long started = System.nanoTime();
+        long rowsRead = 0;
+        long rowsImported = 0;
+        long rowsRejected = 0;
+        int chunks = 0;
+        int chunksCommitted = 0;
+        boolean completed = true;
+        List<ImportChunkFailure> failures = new ArrayList<>();
+
+        try (MappingIterator<T> rows = openRows(inputStream, format, rowType)) {
+            List<T> chunk = new ArrayList<>(importChunkSize);
+            List<String> rejections = new ArrayList<>();
+            long chunkFirstRow = 1;
+            boolean hasMore = true;
+            while (hasMore) {
+                long rowNumber = rowsRead + 1;
+                try {
+                    hasMore = rows.hasNextValue();
+                    if (hasMore) {
+                        rowsRead = rowNumber;
+                        chunk.add(rows.nextValue());
+                    }
+                } catch (JsonMappingException e) {
+                    rejections.add(String.format(ROW_REJECTED, rowNumber, e.getOriginalMessage()));
+                } catch (JsonParseException e) {
+                    rowsRead = rowNumber;
+                    rejections.add(String.format(PAYLOAD_MALFORMED, rowNumber, e.getOriginalMessage()));
+                    completed = false;
+                    hasMore = false;
+                }
+                if (rowsRead - chunkFirstRow + 1 < importChunkSize && hasMore || rowsRead < chunkFirstRow) {
+                    continue;
+                }
+
+                int chunkNumber = ++chunks;
+                boolean rolledBack = false;
+                int imported = 0;
+                try {
+                    imported = transactionTemplate.execute(status -> chunkWriter.write(chunk, rejections));
+                    chunksCommitted++;
+                } catch (RuntimeException e) {
+                    log.warn("{} import chunk {} rolled back", entityName, chunkNumber, e);
+                    rejections.add(String.format(CHUNK_ROLLED_BACK, e.getMessage()));
+                    rolledBack = true;
+                }
+                int rejected = (int) (rowsRead - chunkFirstRow + 1) - imported;
+                if (rolledBack || rejected > 0) {
+                    failures.add(ImportChunkFailure.builder()
+                        .chunk(chunkNumber)
+                        .firstRow(chunkFirstRow)
+                        .lastRow(rowsRead)
+                        .rejectedRows(rejected)
+                        .rolledBack(rolledBack)
+                        .messages(new ArrayList<>(
+                            rejections.subList(0, Math.min(rejections.size(), MAX_MESSAGES_PER_CHUNK))))
+                        .build());
+                }
+                rowsImported += imported;
+                rowsRejected += rejected;
+                if (chunkNumber % PROGRESS_LOG_CHUNKS == 0) {
+                    log.info("{} import : {} rows read, {} imported, {} rejected", entityName, rowsRead, rowsImported,
+                        rowsRejected);
+                }
+                chunk.clear();
+                rejections.clear();
+                chunkFirstRow = rowsRead + 1;
+            }
+        }
+
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        log.info("{} import {} in {} ms : {} rows read, {} imported, {} rejected, {} chunks failed", entityName,
+            completed ? "completed" : "stopped", elapsedMillis, rowsRead, rowsImported, rowsRejected, failures.size());
+        return ImportResponse.builder()
+            .rowsRead(rowsRead)
+            .rowsImported(rowsImported)
+            .rowsRejected(rowsRejected)
+            .chunksCommitted(chunksCommitted)
+            .chunksFailed(failures.size())
+            .completed(completed)
+            .elapsedMillis(elapsedMillis)
+            .failures(failures)
+            .build();
+    }
+
+    private <T> MappingIterator<T> openRows(InputStream inputStream, Format format, Class<T> rowType)
+        throws IOException {
+
+        if (format == Format.CSV) {
+            return csvMapper.readerFor(rowType).with(CSV_WITH_HEADER).readValues(inputStream);
+        }
+        return objectMapper.readerFor(rowType).readValues(inputStream);
+    }
+
+    private int writeCustomers(List<CustomerRequest> rows, List<String> rejections) {
+
+        for (CustomerRequest row : rows) {
+            entityManager.persist(customerMapper.map(row));
+        }
+        entityManager.flush();
+        entityManager.clear();
+        entityCountCache.customersCreated(rows.size());
+        return rows.size();
+    }
+
+    private int writeProducts(List<ProductRequest> rows, List<String> rejections) {
+
+        Set<Long> customerIds = rows.stream()
+            .map(ProductRequest::getCustomerId)
+            .filter(Objects::nonNull)
+            .collect(Collectors.toSet());
+        Map<Long, Customer> customers = customersRepository.findByIdInAndIsDeletedFalse(customerIds).stream()
+            .collect(Collectors.toMap(Customer::getId, Function.identity()));
+
+        Map<Long, List<BigDecimal>> createdByCustomer = new HashMap<>();
+        List<ProductTitle> createdTitles = new ArrayList<>(rows.size());
+        Map<Long, List<ProductPrice>> createdPrices = new HashMap<>();
+        List<ProductEvent> createdEvents = new ArrayList<>();
+        boolean publishEvents = productEventPublisher.hasSubscribers();
+        for (ProductRequest row : rows) {
+            Customer customer = row.getCustomerId() != null ? customers.get(row.getCustomerId()) : null;
+            if (customer == null) {
+                rejections.add(String.format(PRODUCT_CUSTOMER_NOT_FOUND, row.getTitle(), row.getCustomerId()));
+                continue;
+            }
+            Product product = productMapper.map(row);
+            product.setCustomer(customer);
+            entityManager.persist(product);
+            createdByCustomer.computeIfAbsent(customer.getId(), id -> new ArrayList<>()).add(product.getPrice());
+            createdTitles.add(new ProductTitle(product.getId(), customer.getId(), product.getTitle()));
+            createdPrices.computeIfAbsent(customer.getId(), id -> new ArrayList<>())
+                .add(new ProductPrice(product.getId(), customer.getId(), product.getPrice()));
+            if (publishEvents) {
+                createdEvents.add(ProductEvent.created(productMapper.map(product)));
+            }
+        }
+        entityManager.flush();
+        entityManager.clear();
+        createdByCustomer.forEach((customerId, prices) -> {
+            entityCountCache.productsCreated(customerId, prices.size());
+            productStatsCache.productsCreated(customerId, prices);
+        });
+        productSearchIndex.index(createdTitles);
+        createdPrices.forEach(productPriceIndex::productsCreated);
+        productEventPublisher.publish(createdEvents);
+        return createdByCustomer.values().stream().mapToInt(List::size).sum();
+    }
+
+    private static CsvMapper csvMapper() {
+
+        CsvMapper mapper = new CsvMapper();
+        mapper.registerModule(new JavaTimeModule());
+        mapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        return mapper;
+    }
+
+    @FunctionalInterface
+    private interface ChunkWriter<T> {
+
+        /**
+         * writes rows of one chunk inside the chunk transaction
+         * @return number of rows written, rows not written are described in rejections
+         * */
+        int write(List<T> rows, List<String> rejections);
+    }
+}
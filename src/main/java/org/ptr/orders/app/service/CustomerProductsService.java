@@ -1,7 +1,37 @@
 package org.ptr.orders.app.service;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.CriteriaUpdate;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.ptr.orders.app.dao.CustomersRepository;
@@ -9,15 +39,35 @@ import org.ptr.orders.app.dao.ProductsRepository;
 import org.ptr.orders.app.mapper.CustomerMapper;
 import org.ptr.orders.app.mapper.CustomerRequestMapper;
 import org.ptr.orders.app.mapper.ProductMapper;
+import org.ptr.orders.app.model.ChangeClock;
+import org.ptr.orders.app.model.ChangePosition;
+import org.ptr.orders.app.model.ChangedEntity;
 import org.ptr.orders.app.model.Customer;
 import org.ptr.orders.app.model.Product;
+import org.ptr.orders.app.model.ProductPrice;
+import org.ptr.orders.app.model.ProductTitle;
+import org.ptr.orders.app.model.VersionStamp;
+import org.ptr.orders.app.rest.dto.ChangeResponse;
 import org.ptr.orders.app.rest.dto.CustomerResponse;
 import org.ptr.orders.app.rest.dto.CustomerRequest;
+import org.ptr.orders.app.rest.dto.ProductEvent;
 import org.ptr.orders.app.rest.dto.ProductRequest;
 import org.ptr.orders.app.rest.dto.ProductResponse;
+import org.ptr.orders.app.rest.dto.ProductStatsResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.CachePut;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -31,12 +81,34 @@ import org.springframework.transaction.annotation.Transactional;
 @Service("customerService")
 public class CustomerProductsService {
 
+    public static final String CUSTOMERS_CACHE = "customers";
+    public static final String PRODUCTS_CACHE = "products";
+
     private static final String CUSTOMER_BY_ID_NOT_FOUND = "customer by id : %d not found ";
     private static final String CUSTOMER_INPUT_INVALID = "customer is empty : %s, customerId is empty : %d ";
     private static final String PRODUCT_BY_ID_NOT_FOUND = "product by id : %d not found ";
     private static final String PRODUCTS_BY_CUSTOMER_ID_NOT_FOUND = "products by customer id : %d not found ";
     private static final String PRODUCTS_INPUT_INVALID = "product is empty : %s, product id is empty : %d ";
 
+    private static final String VERSION_CONFLICT = "%s by id : %d is not at any of versions : %s ";
+    private static final String ENTITY_BY_ID_NOT_FOUND = "%s by id : %d not found ";
+
+    private static final String ID = "id";
+    private static final String VERSION = "version";
+    private static final String MODIFIED_AT = "modifiedAt";
+    private static final String CHANGED_AT = "changedAt";
+    private static final String IS_DELETED = "isDeleted";
+    private static final String PRICE = "price";
+
+    private static final Long KEYSET_START = 0L;
+    private static final Sort KEYSET_ORDER = Sort.by(Sort.Direction.ASC, "id");
+
+    private static final ChangePosition FEED_START =
+        new ChangePosition(LocalDateTime.of(1970, 1, 1, 0, 0), ChangedEntity.CUSTOMER, 0L);
+    private static final Comparator<ChangeResponse> FEED_ORDER = Comparator.comparing(ChangeResponse::getChangedAt)
+        .thenComparing(ChangeResponse::getEntity)
+        .thenComparing(ChangeResponse::getId);
+
 
     private CustomerMapper customerMapper;
 
@@ -48,6 +120,31 @@ public class CustomerProductsService {
 
     private ProductsRepository productsRepository;
 
+    private EntityCountCache entityCountCache;
+
+    private ListingCommitClock listingCommitClock;
+
+    private ProductStatsCache productStatsCache;
+
+    private ProductSearchIndex productSearchIndex;
+
+    private ProductPriceIndex productPriceIndex;
+
+    private ProductEventPublisher productEventPublisher;
+
+    private SoftDeletePurgeJob softDeletePurgeJob;
+
+    private ObjectMapper objectMapper;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${app.products.batch-chunk-size:500}")
+    private int productsBatchChunkSize;
+
+    @Value("${app.changes.settle-ms:1000}")
+    private long changesSettleMillis;
+
     @Autowired
     public void setCustomerMapper(CustomerMapper customerMapper) {
         this.customerMapper = customerMapper;
@@ -73,6 +170,46 @@ public class CustomerProductsService {
         this.productsRepository = productsRepository;
     }
 
+    @Autowired
+    public void setEntityCountCache(EntityCountCache entityCountCache) {
+        this.entityCountCache = entityCountCache;
+    }
+
+    @Autowired
+    public void setListingCommitClock(ListingCommitClock listingCommitClock) {
+        this.listingCommitClock = listingCommitClock;
+    }
+
+    @Autowired
+    public void setProductStatsCache(ProductStatsCache productStatsCache) {
+        this.productStatsCache = productStatsCache;
+    }
+
+    @Autowired
+    public void setProductSearchIndex(ProductSearchIndex productSearchIndex) {
+        this.productSearchIndex = productSearchIndex;
+    }
+
+    @Autowired
+    public void setProductPriceIndex(ProductPriceIndex productPriceIndex) {
+        this.productPriceIndex = productPriceIndex;
+    }
+
+    @Autowired
+    public void setProductEventPublisher(ProductEventPublisher productEventPublisher) {
+        this.productEventPublisher = productEventPublisher;
+    }
+
+    @Autowired
+    public void setSoftDeletePurgeJob(SoftDeletePurgeJob softDeletePurgeJob) {
+        this.softDeletePurgeJob = softDeletePurgeJob;
+    }
+
+    @Autowired
+    public void setObjectMapper(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
 
 
     /**
@@ -82,9 +219,9 @@ public class CustomerProductsService {
      * */
     public Page<CustomerResponse> getCustomers(Pageable pageable) {
 
-        Page<Customer> customerPage = customersRepository.findAll(pageable);
+        Page<Customer> customerPage = customersRepository.findByIsDeletedFalse(pageable);
         if(customerPage != null){
-            Page<CustomerResponse> customerDtoPage = customerPage.map(item -> customerMapper.map(item, CustomerResponse.class));
+            Page<CustomerResponse> customerDtoPage = customerPage.map(item -> customerMapper.map(item));
             return customerDtoPage;
         } else {
             return Page.empty();
@@ -92,18 +229,66 @@ public class CustomerProductsService {
     }
 
 
+    /**
+     * Count-free variant of {@link #getCustomers(Pageable)}, use {@link #getCustomersCount()} for total
+     * @param pageable
+     * @return customers page content with hasNext flag only
+     *
+     * */
+    public Slice<CustomerResponse> getCustomersSlice(Pageable pageable) {
+
+        Slice<Customer> customerSlice = customersRepository.findAllBy(pageable);
+        return customerSlice.map(item -> customerMapper.map(item));
+    }
+
+    /**
+     * @return approximate total of customers, served from {@link EntityCountCache}
+     *
+     * */
+    public long getCustomersCount() {
+        return entityCountCache.getCustomersCount();
+    }
+
+    /**
+     * Keyset (seek) variant of {@link #getCustomers(Pageable)}, latency does not depend on how deep client scrolls
+     * @param afterId id of the last customer already seen by client, null to start from the beginning
+     * @param size max number of customers in slice
+     * @return customers ordered by id, with hasNext flag and no total count
+     *
+     * */
+    public Slice<CustomerResponse> getCustomersAfter(Long afterId, int size) {
+
+        Slice<Customer> customerSlice = customersRepository.findByIdGreaterThanAndIsDeletedFalse(
+            afterId != null ? afterId : KEYSET_START, PageRequest.of(0, size, KEYSET_ORDER));
+        return customerSlice.map(item -> customerMapper.map(item));
+    }
+
+
+    /**
+     * @return latest change of any customer and number of all customers, from the index end and the count cache,
+     * with last commit of a customer update taken first
+     *
+     * */
+    public VersionStamp getCustomersVersion() {
+        LocalDateTime committedAt = listingCommitClock.getCustomersCommittedAt();
+        return new VersionStamp(customersRepository.findLastChangedAt(), entityCountCache.getCustomersCount(),
+            committedAt);
+    }
+
+
     /***
      *
      * @return one customer mapped into CustomerDto
      * @param customerId
      *
      * */
+    @Cacheable(cacheNames = CUSTOMERS_CACHE, key = "#customerId")
     public CustomerResponse getCustomerById(Long customerId) {
 
         CustomerResponse customerResponse = new CustomerResponse();
-            Optional<Customer> customer = customersRepository.findById(customerId);
+            Optional<Customer> customer = customersRepository.findByIdAndIsDeletedFalse(customerId);
             if(customer.isPresent()){
-                customerMapper.map(customer.get(), customerResponse);
+                customerResponse = customerMapper.map(customer.get());
                 log.trace("customerDto found by title : {}", customerResponse);
             } else {
                 throwNoEntityFoundException(String.format(CUSTOMER_BY_ID_NOT_FOUND, customerId));
@@ -121,11 +306,8 @@ public class CustomerProductsService {
     @Transactional(readOnly = true)
     public Page<ProductResponse> getProductsByCustomerId(Long customerId, Pageable pageable) {
 
-        Page<ProductResponse> productDtoPage;
-
-        Page<Product> productPage= productsRepository.findProductsByCustomer_Id(customerId, pageable);
-        if(productPage != null){
-            productDtoPage = productPage.map(product -> productMapper.map(product, ProductResponse.class));
+        Page<ProductResponse> productDtoPage = productsRepository.findProductResponsesByCustomerId(customerId, pageable);
+        if(productDtoPage != null){
             log.trace("productDtoList found by customerId : {}", productDtoPage.getContent());
             return productDtoPage;
         } else {
@@ -134,6 +316,256 @@ public class CustomerProductsService {
         }
     }
 
+    /**
+     * Count-free variant of {@link #getProductsByCustomerId(Long, Pageable)},
+     * use {@link #getProductsCount(Long)} for total
+     * @param customerId
+     * @param pageable
+     * @return products page content with hasNext flag only
+     *
+     * */
+    @Transactional(readOnly = true)
+    public Slice<ProductResponse> getProductsSliceByCustomerId(Long customerId, Pageable pageable) {
+
+        return productsRepository.findProductResponseSliceByCustomerId(customerId, pageable);
+    }
+
+    /**
+     * @return approximate total of customer products, served from {@link EntityCountCache}
+     * @param customerId
+     *
+     * */
+    public long getProductsCount(Long customerId) {
+        return entityCountCache.getProductsCount(customerId);
+    }
+
+    /**
+     * Keyset (seek) variant of {@link #getProductsByCustomerId(Long, Pageable)}, seeks on (customer_id, id)
+     * @param customerId
+     * @param afterId id of the last product already seen by client, null to start from the beginning
+     * @param size max number of products in slice
+     * @return products of customer ordered by id, with hasNext flag and no total count
+     *
+     * */
+    @Transactional(readOnly = true)
+    public Slice<ProductResponse> getProductsByCustomerIdAfter(Long customerId, Long afterId, int size) {
+
+        Slice<ProductResponse> productDtoSlice = productsRepository.findProductResponsesByCustomerIdAfter(
+            customerId, afterId != null ? afterId : KEYSET_START, PageRequest.of(0, size, KEYSET_ORDER));
+        log.trace("productDtoList found by customerId : {} after : {}", customerId, afterId);
+        return productDtoSlice;
+    }
+
+    /**
+     * Writes all products of customer as newline delimited json, one product per line, straight into
+     * given output stream. Rows come from a single forward-only query as dtos, so memory stays bounded
+     * regardless of how many products customer has
+     * @param customerId
+     * @param outputStream target stream, left open
+     * @return number of products written
+     *
+     * */
+    @Transactional(readOnly = true)
+    public long exportProductsByCustomerId(Long customerId, OutputStream outputStream) throws IOException {
+
+        long exported = 0;
+        ObjectWriter productWriter = objectMapper.writerFor(ProductResponse.class)
+            .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        try (Stream<ProductResponse> products = productsRepository.streamProductResponsesByCustomerId(customerId);
+            JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+            Iterator<ProductResponse> productIterator = products.iterator();
+            while (productIterator.hasNext()) {
+                productWriter.writeValue(generator, productIterator.next());
+                generator.writeRaw('\n');
+                exported++;
+            }
+        }
+        log.trace("{} products exported for customer : {}", exported, customerId);
+        return exported;
+    }
+
+    /**
+     * @return count and total / min / max / average price of customer products,
+     * served from {@link ProductStatsCache}
+     * @param customerId
+     *
+     * */
+    public ProductStatsResponse getProductStats(Long customerId) {
+        return productStatsCache.getStats(customerId);
+    }
+
+    /**
+     * @return customers with highest total price of products first, served from {@link ProductStatsCache}
+     * @param limit max number of customers
+     *
+     * */
+    public List<ProductStatsResponse> getTopCustomersByTotalPrice(int limit) {
+        return productStatsCache.getTopByTotalPrice(limit);
+    }
+
+    /**
+     * @return false until the first build of {@link ProductSearchIndex} completes, its hits are incomplete before
+     * */
+    public boolean isSearchReady() {
+        return productSearchIndex.isReady();
+    }
+
+    /**
+     * Ranked search over product titles, served by {@link ProductSearchIndex} :
+     * hits of the page are then read by primary key
+     * @param query tokens matched as prefixes of title tokens, all must match
+     * @param customerId owner to restrict search to, null for all products
+     * @param pageable
+     * @return page of products in rank order, with total number of hits
+     *
+     * */
+    @Transactional(readOnly = true)
+    public Page<ProductResponse> searchProducts(String query, Long customerId, Pageable pageable) {
+
+        ProductSearchIndex.Hits hits = productSearchIndex.search(query, customerId, (int) pageable.getOffset(),
+            pageable.getPageSize());
+        log.trace("{} products found by query : {}", hits.getTotal(), query);
+        return getProductsPageOf(hits, pageable);
+    }
+
+    /**
+     * Products of customer with price within given bounds in price order, ties by id. Served by
+     * {@link ProductPriceIndex}, products of the page are then read by primary key. Customers with too many
+     * products for the index are read over the (customer_id, price, id) index, where products without price
+     * are ordered as the database orders nulls
+     * @param customerId
+     * @param minPrice lowest price included, null for no lower bound
+     * @param maxPrice highest price included, null for no upper bound
+     * @param descending most expensive first
+     * @param pageable page number and size, its sort is ignored
+     * @return page of products in price order, with total number of products in range
+     *
+     * */
+    @Transactional(readOnly = true)
+    public Page<ProductResponse> getProductsByCustomerIdAndPrice(Long customerId, BigDecimal minPrice,
+        BigDecimal maxPrice, boolean descending, Pageable pageable) {
+
+        Optional<ProductSearchIndex.Hits> hits = productPriceIndex.find(customerId, minPrice, maxPrice, descending,
+            (int) pageable.getOffset(), pageable.getPageSize());
+        if (hits.isPresent()) {
+            return getProductsPageOf(hits.get(), pageable);
+        }
+        Sort.Direction direction = descending ? Sort.Direction.DESC : Sort.Direction.ASC;
+        Pageable priceOrdered = PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(),
+            Sort.by(direction, PRICE, ID));
+        if (minPrice == null && maxPrice == null) {
+            return productsRepository.findProductResponsesByCustomerId(customerId, priceOrdered);
+        }
+        return productsRepository.findProductResponsesByCustomerIdAndPriceBetween(customerId,
+            minPrice != null ? minPrice : ProductPriceIndex.MIN_PRICE,
+            maxPrice != null ? maxPrice : ProductPriceIndex.MAX_PRICE, priceOrdered);
+    }
+
+    /**
+     * @return products of given hits read by primary key, in order of hits
+     * */
+    private Page<ProductResponse> getProductsPageOf(ProductSearchIndex.Hits hits, Pageable pageable) {
+
+        if (hits.getProductIds().isEmpty()) {
+            return new PageImpl<>(Collections.emptyList(), pageable, hits.getTotal());
+        }
+        Map<Long, ProductResponse> found = productsRepository.findProductResponsesByIds(hits.getProductIds())
+            .stream()
+            .collect(Collectors.toMap(ProductResponse::getId, Function.identity()));
+        List<ProductResponse> content = hits.getProductIds().stream()
+            .map(found::get)
+            .filter(Objects::nonNull)
+            .collect(Collectors.toList());
+        return new PageImpl<>(content, pageable, hits.getTotal());
+    }
+
+    /**
+     * deletes before the horizon may have been purged : a change feed position older than it has possibly
+     * missed deletes and must be rebuilt from the listings
+     * @return horizon of {@link SoftDeletePurgeJob}, null while nothing can have been purged
+     * */
+    public LocalDateTime getChangesHorizon() {
+        return softDeletePurgeJob.getPurgeHorizon();
+    }
+
+    /**
+     * Change feed : customers and products created, updated or soft deleted after given position, in
+     * (changedAt, entity, id) order. Each entity is read with one range scan over its (changed_at, id) index.
+     * Rows stamped at or after the first stamp of a transaction still open on this node are held back, so
+     * a transaction committing after another one with a later stamp is not skipped by a consumer that already
+     * moved past it. Rows stamped within the last {@code app.changes.settle-ms} are held back as well, for
+     * transactions of other nodes
+     * @param after position of the last change seen, null to start from the beginning
+     * @param limit max number of changes
+     * @return changes with hasNext flag when more changes are ready
+     *
+     * */
+    @Transactional(readOnly = true)
+    public Slice<ChangeResponse> getChanges(ChangePosition after, int limit) {
+
+        ChangePosition from = after != null ? after : FEED_START;
+        LocalDateTime settled = ChangeClock.settled();
+        LocalDateTime until = LocalDateTime.now(ZoneOffset.UTC).minus(changesSettleMillis, ChronoUnit.MILLIS);
+        if (settled.isBefore(until)) {
+            until = settled;
+        }
+        Pageable firstRows = PageRequest.of(0, limit + 1);
+        List<ChangeResponse> changes = new ArrayList<>(2 * limit + 2);
+        customersRepository.findChangedAfter(from.getChangedAt(), afterIdOf(from, ChangedEntity.CUSTOMER), until,
+            firstRows).forEach(customer -> changes.add(ChangeResponse.builder()
+                .entity(ChangedEntity.CUSTOMER)
+                .id(customer.getId())
+                .operation(operationOf(customer.getIsDeleted(), customer.getVersion()))
+                .changedAt(customer.getChangedAt())
+                .version(customer.getVersion())
+                .customer(customerMapper.map(customer))
+                .build()));
+        productsRepository.findChangedAfter(from.getChangedAt(), afterIdOf(from, ChangedEntity.PRODUCT), until,
+            firstRows).forEach(product -> changes.add(ChangeResponse.builder()
+                .entity(ChangedEntity.PRODUCT)
+                .id(product.getId())
+                .operation(operationOf(product.getIsDeleted(), product.getVersion()))
+                .changedAt(product.getChangedAt())
+                .version(product.getVersion())
+                .product(productMapper.map(product))
+                .build()));
+        changes.sort(FEED_ORDER);
+        boolean hasNext = changes.size() > limit;
+        log.trace("{} changes found after : {}", Math.min(changes.size(), limit), after);
+        return new SliceImpl<>(hasNext ? new ArrayList<>(changes.subList(0, limit)) : changes,
+            PageRequest.of(0, limit), hasNext);
+    }
+
+    /**
+     * @return id to seek after among rows of given entity stamped exactly at the position changedAt
+     * */
+    private static Long afterIdOf(ChangePosition position, ChangedEntity entity) {
+        int byEntity = entity.compareTo(position.getEntity());
+        return byEntity == 0 ? position.getId() : byEntity > 0 ? Long.MIN_VALUE : Long.MAX_VALUE;
+    }
+
+    private static ChangeResponse.Operation operationOf(Boolean isDeleted, Long version) {
+        if (Boolean.TRUE.equals(isDeleted)) {
+            return ChangeResponse.Operation.DELETED;
+        }
+        return version == null || version == 0L ? ChangeResponse.Operation.CREATED : ChangeResponse.Operation.UPDATED;
+    }
+
+    /**
+     * @return latest change of any product of customer and number of products of customer,
+     * from the index end and the count cache, with last commit of a product update taken first
+     * @param customerId
+     *
+     * */
+    public VersionStamp getProductsVersion(Long customerId) {
+        LocalDateTime committedAt = listingCommitClock.getProductsCommittedAt(customerId);
+        return new VersionStamp(productsRepository.findLastChangedAtByCustomerId(customerId),
+            entityCountCache.getProductsCount(customerId), committedAt);
+    }
+
     /**
      * Find product one by
      * @param productId
@@ -141,13 +573,14 @@ public class CustomerProductsService {
      *
      * */
     @Transactional(readOnly = true)
+    @Cacheable(cacheNames = PRODUCTS_CACHE, key = "#productId")
     public ProductResponse getProductById(Long productId) {
 
         ProductResponse productResponse = new ProductResponse();
-        Optional<Product> product = this.productsRepository.findById(productId);
+        Optional<Product> product = this.productsRepository.findByIdAndIsDeletedFalse(productId);
         if(product.isPresent()){
             Product realProduct = product.get();
-            productMapper.map(realProduct, productResponse);
+            productResponse = productMapper.map(realProduct);
             log.trace("productDto found by id : {}", productResponse);
         } else {
             throwNoEntityFoundException(String.format(PRODUCT_BY_ID_NOT_FOUND, productId));
@@ -165,16 +598,21 @@ public class CustomerProductsService {
 
         Customer customer = getCustomerFromRequest(customerRequest);
         customer = customersRepository.save(customer);
+        entityCountCache.customerCreated();
         log.trace("customer created : {} ", customer);
-        return customerMapper.map(customer, CustomerResponse.class);
+        return customerMapper.map(customer);
 
     }
 
     /**
      * Updates customer by
      * @param customerId
+     * customer stays managed from read to update, so saving it is no merge of a detached copy : no second read
+     * of the row joined with all products of the customer through the cascading collection
      *
      * */
+    @Transactional
+    @CacheEvict(cacheNames = CUSTOMERS_CACHE, key = "#customerId")
     public Long updateCustomer(Long customerId, CustomerRequest customerRequest) {
 
         Long failedUpdateValue = -1L;
@@ -182,12 +620,13 @@ public class CustomerProductsService {
             throwInvalidInputException(String.format(CUSTOMER_INPUT_INVALID, customerRequest, customerId));
             return failedUpdateValue;
         } else {
-            Optional<Customer> existingCustomer = customersRepository.findById(customerId);
+            Optional<Customer> existingCustomer = customersRepository.findByIdAndIsDeletedFalse(customerId);
             Customer customerToUpdate;
             if(existingCustomer.isPresent() ){
                 customerToUpdate = customersRepository.save(
                     getCustomerFromCustomerRequest(customerRequest, existingCustomer.get())
                 );
+                listingCommitClock.customersUpdated();
                 return customerToUpdate.getId();
             } else {
                 throwNoEntityFoundException(String.format(CUSTOMER_BY_ID_NOT_FOUND, customerId));
@@ -197,13 +636,52 @@ public class CustomerProductsService {
     }
 
     /**
-     * removes customer by
+     * Partial update of customer with one UPDATE statement : only non null fields of request are set,
+     * modifiedAt defaults to now and version is incremented. Nothing is read before the update
      * @param customerId
+     * @param customerRequest fields to change
+     * @param expectedVersions versions the client accepts, one of them must be current, null for unconditional update
+     * @throws OptimisticLockingFailureException when customer exists at none of expected versions
      *
+     * */
+    @Transactional
+    @CacheEvict(cacheNames = CUSTOMERS_CACHE, key = "#customerId")
+    public void patchCustomer(Long customerId, CustomerRequest customerRequest, Collection<Long> expectedVersions) {
+
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaUpdate<Customer> update = builder.createCriteriaUpdate(Customer.class);
+        Root<Customer> customer = update.from(Customer.class);
+        setIfPresent(update, customer, "title", customerRequest.getTitle());
+        setIfPresent(update, customer, "createdAt", customerRequest.getCreatedAt());
+        executeVersionedUpdate(update, customer, customerId, expectedVersions, customerRequest.getModifiedAt());
+        listingCommitClock.customersUpdated();
+    }
+
+    /**
+     * soft deletes customer by
+     * @param customerId
+     * and all its products, two bulk UPDATE statements and no entity is loaded,
+     * rows are hard deleted later by {@link SoftDeletePurgeJob}
      *
      * */
+    @Transactional
+    @Caching(evict = {
+        @CacheEvict(cacheNames = CUSTOMERS_CACHE, key = "#customerId"),
+        @CacheEvict(cacheNames = PRODUCTS_CACHE, allEntries = true)
+    })
     public void deleteCustomer(Long customerId) {
-         customersRepository.deleteById(customerId);
+
+        LocalDateTime deletedAt = ChangeClock.next();
+        if (customersRepository.softDeleteById(customerId, deletedAt) == 0) {
+            throwNoEntityFoundException(String.format(CUSTOMER_BY_ID_NOT_FOUND, customerId));
+        }
+        int productsDeleted = productsRepository.softDeleteByCustomerId(customerId, deletedAt);
+        entityCountCache.customerDeleted(customerId);
+        productStatsCache.customerDeleted(customerId);
+        productSearchIndex.removeCustomer(customerId);
+        productPriceIndex.customerDeleted(customerId);
+        productEventPublisher.publish(ProductEvent.deleted(customerId, null));
+        log.trace("customer : {} deleted with {} products", customerId, productsDeleted);
     }
 
     /**
@@ -212,16 +690,24 @@ public class CustomerProductsService {
      * @return productResponse created, including id
      *
      * */
+    @CachePut(cacheNames = PRODUCTS_CACHE, key = "#result.id", unless = "#result.id == null")
     public ProductResponse createProduct(Long customerId, ProductRequest productRequest) {
 
-        Optional<Customer> customer = customersRepository.findById(customerId);
+        Optional<Customer> customer = customersRepository.findByIdAndIsDeletedFalse(customerId);
 
         if(customer.isPresent()){
             Product product = getProductFrom(productRequest);
                 product.setCustomer(customer.get());
                 product = productsRepository.save(product);
+                entityCountCache.productsCreated(customerId, 1L);
+                productStatsCache.productsCreated(customerId, Collections.singletonList(product.getPrice()));
+                productSearchIndex.index(product.getId(), customerId, product.getTitle());
+                productPriceIndex.productsCreated(customerId, Collections.singletonList(
+                    new ProductPrice(product.getId(), customerId, product.getPrice())));
                 log.trace("product created : {} for customer : {} ", product, customer.get().getId());
-                return productMapper.map(product, ProductResponse.class);
+                ProductResponse productResponse = productMapper.map(product);
+                productEventPublisher.publish(ProductEvent.created(productResponse));
+                return productResponse;
         } else {
             log.warn("product cannot be created as customer is not found by id {} ", customerId);
             return new ProductResponse();
@@ -229,27 +715,88 @@ public class CustomerProductsService {
     }
 
 
+    /**
+     * New products created for one customer, customer resolved once and rows are written with JDBC batching,
+     * persistence context flushed and cleared every {@code app.products.batch-chunk-size} products
+     * @param customerId
+     * @param productRequests input dto objects to map from
+     * @return ids of created products, in order of requests, empty when customer is not found
+     *
+     * */
+    @Transactional
+    public List<Long> createProducts(Long customerId, List<ProductRequest> productRequests) {
+
+        Optional<Customer> customer = customersRepository.findByIdAndIsDeletedFalse(customerId);
+        if(!customer.isPresent()){
+            log.warn("products cannot be created as customer is not found by id {} ", customerId);
+            return Collections.emptyList();
+        }
+        List<Long> createdIds = new ArrayList<>(productRequests.size());
+        List<ProductPrice> createdPrices = new ArrayList<>(productRequests.size());
+        List<ProductTitle> createdTitles = new ArrayList<>(productRequests.size());
+        List<ProductEvent> createdEvents = new ArrayList<>();
+        boolean publishEvents = productEventPublisher.hasSubscribers();
+        int chunkCount = 0;
+        for (ProductRequest productRequest : productRequests) {
+            Product product = getProductFrom(productRequest);
+            product.setCustomer(customer.get());
+            entityManager.persist(product);
+            createdIds.add(product.getId());
+            createdPrices.add(new ProductPrice(product.getId(), customerId, product.getPrice()));
+            createdTitles.add(new ProductTitle(product.getId(), customerId, product.getTitle()));
+            if (publishEvents) {
+                createdEvents.add(ProductEvent.created(productMapper.map(product)));
+            }
+            if (++chunkCount == productsBatchChunkSize) {
+                entityManager.flush();
+                entityManager.clear();
+                chunkCount = 0;
+            }
+        }
+        entityManager.flush();
+        entityManager.clear();
+        entityCountCache.productsCreated(customerId, createdIds.size());
+        productStatsCache.productsCreated(customerId,
+            createdPrices.stream().map(ProductPrice::getPrice).collect(Collectors.toList()));
+        productSearchIndex.index(createdTitles);
+        productPriceIndex.productsCreated(customerId, createdPrices);
+        productEventPublisher.publish(createdEvents);
+        log.trace("{} products created for customer : {} ", createdIds.size(), customerId);
+        return createdIds;
+    }
+
+
     /**
      * updates product by
      * @param productId
      * @param productRequest
      * @return updated productId
+     * product stays managed from read to update, so saving it does not read the row again
      *
      * */
 
+    @Transactional
+    @CacheEvict(cacheNames = PRODUCTS_CACHE, key = "#productId")
     public Long updateProduct(Long productId, ProductRequest productRequest) {
         Long failedUpdateValue = -1L;
         if(productId == null || productRequest == null){
             throwInvalidInputException(String.format(PRODUCTS_INPUT_INVALID, productRequest, productId));
             return failedUpdateValue;
         } else {
-            Optional<Product> existingProduct = productsRepository.findById(productId);
+            Optional<Product> existingProduct = productsRepository.findByIdAndIsDeletedFalse(productId);
             Product productToUpdate;
             if(existingProduct.isPresent() ){
+                BigDecimal oldPrice = existingProduct.get().getPrice();
                 productToUpdate = getProductFromRequest(productRequest, existingProduct.get());
                 productToUpdate = productsRepository.save(
                     productToUpdate
                 );
+                Long customerId = productMapper.customerId(productToUpdate.getCustomer());
+                listingCommitClock.productsUpdated(customerId);
+                productStatsCache.priceChanged(customerId, oldPrice, productToUpdate.getPrice());
+                productSearchIndex.index(productId, customerId, productToUpdate.getTitle());
+                productPriceIndex.priceChanged(customerId, productId, productToUpdate.getPrice());
+                productEventPublisher.publish(ProductEvent.updated(productMapper.map(productToUpdate)));
                 return productToUpdate.getId();
             } else {
                 throwNoEntityFoundException(String.format(PRODUCT_BY_ID_NOT_FOUND, productId));
@@ -259,16 +806,140 @@ public class CustomerProductsService {
     }
 
     /**
-     * removes product by
+     * Full updates of several products in one transaction, with the same rules as {@link #updateProduct}.
+     * Products are read with one query and their UPDATE statements are sent in JDBC batches
+     * of {@code hibernate.jdbc.batch_size} at commit, ids of missing or deleted products are skipped.
+     * Cache entries of updated products are not evicted here, callers evict them once committed
+     * @param productRequests request to apply by product id
+     * @return ids of updated products
+     *
+     * */
+    @Transactional
+    public List<Long> updateProducts(Map<Long, ProductRequest> productRequests) {
+
+        List<Long> updatedIds = new ArrayList<>(productRequests.size());
+        List<ProductEvent> updatedEvents = new ArrayList<>();
+        Set<Long> updatedCustomerIds = new HashSet<>();
+        boolean publishEvents = productEventPublisher.hasSubscribers();
+        for (Product product : productsRepository.findAllById(productRequests.keySet())) {
+            if (Boolean.TRUE.equals(product.getIsDeleted())) {
+                continue;
+            }
+            BigDecimal oldPrice = product.getPrice();
+            getProductFromRequest(productRequests.get(product.getId()), product);
+            Long customerId = productMapper.customerId(product.getCustomer());
+            updatedCustomerIds.add(customerId);
+            productStatsCache.priceChanged(customerId, oldPrice, product.getPrice());
+            productSearchIndex.index(product.getId(), customerId, product.getTitle());
+            productPriceIndex.priceChanged(customerId, product.getId(), product.getPrice());
+            if (publishEvents) {
+                updatedEvents.add(ProductEvent.updated(productMapper.map(product)));
+            }
+            updatedIds.add(product.getId());
+        }
+        updatedCustomerIds.forEach(listingCommitClock::productsUpdated);
+        productEventPublisher.publish(updatedEvents);
+        log.trace("{} of {} products updated ", updatedIds.size(), productRequests.size());
+        return updatedIds;
+    }
+
+    /**
+     * Partial update of product with one UPDATE statement : only non null fields of request are set,
+     * modifiedAt defaults to now and version is incremented. Nothing is read before the update,
+     * owner of the product is read after it, to mark its products listing updated and, when price changes,
+     * to refresh its stats and price index
      * @param productId
+     * @param productRequest fields to change, customerId is ignored
+     * @param expectedVersions versions the client accepts, one of them must be current, null for unconditional update
+     * @throws OptimisticLockingFailureException when product exists at none of expected versions
      *
      * */
+    @Transactional
+    @CacheEvict(cacheNames = PRODUCTS_CACHE, key = "#productId")
+    public void patchProduct(Long productId, ProductRequest productRequest, Collection<Long> expectedVersions) {
+
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaUpdate<Product> update = builder.createCriteriaUpdate(Product.class);
+        Root<Product> product = update.from(Product.class);
+        setIfPresent(update, product, "title", productRequest.getTitle());
+        setIfPresent(update, product, "price", productRequest.getPrice());
+        setIfPresent(update, product, "createdAt", productRequest.getCreatedAt());
+        executeVersionedUpdate(update, product, productId, expectedVersions, productRequest.getModifiedAt());
+        productsRepository.findProductPriceById(productId).ifPresent(productPrice -> {
+            listingCommitClock.productsUpdated(productPrice.getCustomerId());
+            if (productRequest.getPrice() != null) {
+                productStatsCache.productsChanged(productPrice.getCustomerId());
+                productPriceIndex.priceChanged(productPrice.getCustomerId(), productId, productPrice.getPrice());
+            }
+        });
+        if (productRequest.getTitle() != null) {
+            productSearchIndex.updateTitle(productId, productRequest.getTitle());
+        }
+        if (productEventPublisher.hasSubscribers()) {
+            productEventPublisher.publish(productsRepository.findProductResponsesByIds(
+                Collections.singletonList(productId)).stream().map(ProductEvent::updated).collect(Collectors.toList()));
+        }
+    }
+
+    /**
+     * soft deletes product by
+     * @param productId
+     * with one UPDATE statement, only customer id and price are read to keep counts and stats in line
+     *
+     * */
+    @Transactional
+    @CacheEvict(cacheNames = PRODUCTS_CACHE, key = "#productId")
     public void deleteProduct(Long productId) {
-        productsRepository.deleteById(productId);
+
+        Optional<ProductPrice> productPrice = productsRepository.findProductPriceById(productId);
+        if(productPrice.isPresent() && productsRepository.softDeleteById(productId, ChangeClock.next()) > 0){
+            entityCountCache.productDeleted(productPrice.get().getCustomerId());
+            productStatsCache.productDeleted(productPrice.get().getCustomerId(), productPrice.get().getPrice());
+            productSearchIndex.remove(productId);
+            productPriceIndex.productDeleted(productPrice.get().getCustomerId(), productId);
+            productEventPublisher.publish(ProductEvent.deleted(productPrice.get().getCustomerId(), productId));
+        } else {
+            throwNoEntityFoundException(String.format(PRODUCT_BY_ID_NOT_FOUND, productId));
+        }
     }
 
 
 
+    private static <T, V> void setIfPresent(CriteriaUpdate<T> update, Root<T> root, String attribute, V value) {
+        if (value != null) {
+            update.set(root.<V>get(attribute), value);
+        }
+    }
+
+    /**
+     * stamps modifiedAt, changedAt and version, restricts update to live row by id (and expected versions),
+     * 0 rows updated is told apart into missing (or deleted) row and version conflict by a count on that
+     * failure path only
+     * */
+    private <T> void executeVersionedUpdate(CriteriaUpdate<T> update, Root<T> root, Long id,
+        Collection<Long> expectedVersions, LocalDateTime modifiedAt) {
+
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        update.set(root.<LocalDateTime>get(MODIFIED_AT), modifiedAt != null ? modifiedAt : LocalDateTime.now());
+        update.set(root.<LocalDateTime>get(CHANGED_AT), ChangeClock.next());
+        update.set(root.<Long>get(VERSION), builder.sum(root.<Long>get(VERSION), 1L));
+        Predicate byId = builder.and(builder.equal(root.get(ID), id), builder.isFalse(root.get(IS_DELETED)));
+        update.where(expectedVersions == null ? byId : builder.and(byId, root.get(VERSION).in(expectedVersions)));
+
+        boolean noVersionAccepted = expectedVersions != null && expectedVersions.isEmpty();
+        if (noVersionAccepted || entityManager.createQuery(update).executeUpdate() == 0) {
+            Class<T> entityType = root.getModel().getJavaType();
+            CriteriaQuery<Long> live = builder.createQuery(Long.class);
+            Root<T> row = live.from(entityType);
+            live.select(builder.count(row)).where(builder.equal(row.get(ID), id), builder.isFalse(row.get(IS_DELETED)));
+            if (expectedVersions != null && entityManager.createQuery(live).getSingleResult() > 0) {
+                throw new OptimisticLockingFailureException(String.format(VERSION_CONFLICT,
+                    entityType.getSimpleName(), id, expectedVersions));
+            }
+            throwNoEntityFoundException(String.format(ENTITY_BY_ID_NOT_FOUND, entityType.getSimpleName(), id));
+        }
+    }
+
     protected void throwNoEntityFoundException(final String infoMessage) {
         log.trace(infoMessage);
         throw new NoSuchElementException(infoMessage);
@@ -280,11 +951,14 @@ public class CustomerProductsService {
     }
 
     private Customer getCustomerFromRequest(CustomerRequest customerRequest) {
-        return customerMapper.map(customerRequest, Customer.class);
+        return customerMapper.map(customerRequest);
     }
 
     private Customer getCustomerFromCustomerRequest(CustomerRequest customerRequest, Customer customer)  {
         customerRequestMapper.map(customerRequest, customer);
+        if (customerRequest.getModifiedAt() == null) {
+            customer.setModifiedAt(LocalDateTime.now());
+        }
         return customer;
     }
 
@@ -302,6 +976,8 @@ public class CustomerProductsService {
             }
             if(productRequest.getModifiedAt() != null){
                 product.setModifiedAt(productRequest.getModifiedAt());
+            } else {
+                product.setModifiedAt(LocalDateTime.now());
             }
         }
         return product;
@@ -309,6 +985,6 @@ public class CustomerProductsService {
 
 
     private Product getProductFrom(ProductRequest productRequest) {
-        return productMapper.map(productRequest, Product.class);
+        return productMapper.map(productRequest);
     }
 }
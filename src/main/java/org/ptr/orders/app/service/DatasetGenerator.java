@@ -0,0 +1,457 @@
+package org.ptr.orders.app.service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.ptr.orders.app.model.Customer;
+import org.ptr.orders.app.model.Product;
+import org.ptr.orders.app.model.ProductPrice;
+import org.ptr.orders.app.model.ProductTitle;
+import org.ptr.orders.app.rest.dto.DatasetResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ *
+ * Synthetic dataset for load and scale tests : {@code app.dataset.customers} customers, each with a number of
+ * products drawn from a fixed, uniform or zipf (heavy skew, a few customers own most products) distribution
+ * and prices drawn from a uniform or log-normal distribution. Generated on startup when customers is above zero.
+ * Rows are written by {@code app.dataset.threads} threads, each chunk of {@code app.dataset.chunk-size} rows
+ * in its own transaction, sent in JDBC batches of {@code app.dataset.batch-size} inserts (multi-row inserts
+ * with rewriteBatchedStatements on MySQL). Counts, titles and prices of the generated products reach the
+ * in-memory caches and indexes as with an import, product events are not published.
+ * The same seed gives the same customers, product counts, titles and prices, not the same ids
+ *
+ * */
+@Slf4j
+@Service
+public class DatasetGenerator {
+
+    public enum Distribution { FIXED, UNIFORM, ZIPF }
+
+    public enum PriceDistribution { UNIFORM, LOG_NORMAL }
+
+    private static final String[] TITLE_WORDS = {
+        "alpha", "amber", "basic", "bold", "classic", "compact", "copper", "crystal", "deluxe", "eco", "express",
+        "fresh", "giant", "golden", "green", "lite", "max", "mini", "modern", "nano", "nova", "plus", "premium",
+        "pro", "rapid", "silver", "smart", "solid", "swift", "ultra"
+    };
+
+    private static final int PROGRESS_LOG_CHUNKS = 100;
+
+    @Value("${app.dataset.customers:0}")
+    private int customers;
+
+    @Value("${app.dataset.products-per-customer:100}")
+    private int productsPerCustomer;
+
+    @Value("${app.dataset.products-distribution:FIXED}")
+    private Distribution productsDistribution;
+
+    @Value("${app.dataset.skew:1.1}")
+    private double skew;
+
+    @Value("${app.dataset.price-distribution:LOG_NORMAL}")
+    private PriceDistribution priceDistribution;
+
+    @Value("${app.dataset.min-price:0.01}")
+    private BigDecimal minPrice;
+
+    @Value("${app.dataset.max-price:10000}")
+    private BigDecimal maxPrice;
+
+    @Value("${app.dataset.median-price:25}")
+    private BigDecimal medianPrice;
+
+    @Value("${app.dataset.price-sigma:1.0}")
+    private double priceSigma;
+
+    @Value("${app.dataset.missing-price-ratio:0.0}")
+    private double missingPriceRatio;
+
+    @Value("${app.dataset.threads:4}")
+    private int threads;
+
+    @Value("${app.dataset.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${app.dataset.chunk-size:10000}")
+    private int chunkSize;
+
+    @Value("${app.dataset.seed:42}")
+    private long seed;
+
+    private EntityCountCache entityCountCache;
+
+    private ProductStatsCache productStatsCache;
+
+    private ProductSearchIndex productSearchIndex;
+
+    private ProductPriceIndex productPriceIndex;
+
+    private TransactionTemplate transactionTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    public void setEntityCountCache(EntityCountCache entityCountCache) {
+        this.entityCountCache = entityCountCache;
+    }
+
+    @Autowired
+    public void setProductStatsCache(ProductStatsCache productStatsCache) {
+        this.productStatsCache = productStatsCache;
+    }
+
+    @Autowired
+    public void setProductSearchIndex(ProductSearchIndex productSearchIndex) {
+        this.productSearchIndex = productSearchIndex;
+    }
+
+    @Autowired
+    public void setProductPriceIndex(ProductPriceIndex productPriceIndex) {
+        this.productPriceIndex = productPriceIndex;
+    }
+
+    @Autowired
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void generateOnStartup() {
+
+        if (customers > 0) {
+            generate(configuredSpec());
+        }
+    }
+
+    /**
+     * @return dataset described by {@code app.dataset.*} properties
+     * */
+    public Spec configuredSpec() {
+        return Spec.builder()
+            .customers(customers)
+            .productsPerCustomer(productsPerCustomer)
+            .productsDistribution(productsDistribution)
+            .skew(skew)
+            .priceDistribution(priceDistribution)
+            .minPrice(minPrice)
+            .maxPrice(maxPrice)
+            .medianPrice(medianPrice)
+            .priceSigma(priceSigma)
+            .missingPriceRatio(missingPriceRatio)
+            .threads(threads)
+            .batchSize(batchSize)
+            .chunkSize(chunkSize)
+            .seed(seed)
+            .build();
+    }
+
+    /**
+     * Generates customers first, then their products, blocks until all rows are committed
+     * @param spec
+     * @return totals of the generated dataset
+     *
+     * */
+    public DatasetResponse generate(Spec spec) {
+
+        long started = System.nanoTime();
+        int[] productCounts = productCounts(spec);
+        long[] customerIds = new long[spec.getCustomers()];
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, spec.getThreads()),
+            new CustomizableThreadFactory("dataset-"));
+        try {
+            runChunks(executor, spec, spec.getCustomers(), (from, to) -> writeCustomers(spec, customerIds, from, to));
+            log.info("dataset : {} customers generated in {} ms", spec.getCustomers(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+            runProducts(executor, spec, customerIds, productCounts);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long products = 0;
+        int maxProducts = 0;
+        for (int count : productCounts) {
+            products += count;
+            maxProducts = Math.max(maxProducts, count);
+        }
+        long elapsedMillis = Math.max(1L, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        long rowsPerSecond = (spec.getCustomers() + products) * 1000 / elapsedMillis;
+        log.info("dataset generated in {} ms : {} customers, {} products, at most {} per customer, {} rows/s",
+            elapsedMillis, spec.getCustomers(), products, maxProducts, rowsPerSecond);
+        return DatasetResponse.builder()
+            .customers((long) spec.getCustomers())
+            .products(products)
+            .maxProductsPerCustomer(maxProducts)
+            .elapsedMillis(elapsedMillis)
+            .rowsPerSecond(rowsPerSecond)
+            .build();
+    }
+
+    /**
+     * @return number of products of each customer : fixed mean, uniform within [0, 2 * mean], or zipf where
+     * the customer of rank k gets a share proportional to 1 / k^skew, ranks being shuffled among customers
+     * */
+    public static int[] productCounts(Spec spec) {
+
+        int customerCount = spec.getCustomers();
+        int mean = spec.getProductsPerCustomer();
+        int[] counts = new int[customerCount];
+        Random random = new Random(spec.getSeed());
+        if (spec.getProductsDistribution() == Distribution.UNIFORM) {
+            for (int i = 0; i < customerCount; i++) {
+                counts[i] = random.nextInt(2 * mean + 1);
+            }
+        } else if (spec.getProductsDistribution() == Distribution.ZIPF) {
+            double harmonic = 0;
+            for (int rank = 1; rank <= customerCount; rank++) {
+                harmonic += Math.pow(rank, -spec.getSkew());
+            }
+            double total = (double) mean * customerCount;
+            for (int i = 0; i < customerCount; i++) {
+                counts[i] = (int) Math.round(total * Math.pow(i + 1, -spec.getSkew()) / harmonic);
+            }
+            for (int i = customerCount - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int count = counts[i];
+                counts[i] = counts[j];
+                counts[j] = count;
+            }
+        } else {
+            Arrays.fill(counts, mean);
+        }
+        return counts;
+    }
+
+    private void runProducts(ExecutorService executor, Spec spec, long[] customerIds, int[] productCounts) {
+
+        AtomicInteger nextCustomer = new AtomicInteger();
+        AtomicLong chunks = new AtomicLong();
+        List<Callable<Void>> workers = new ArrayList<>();
+        for (int t = 0; t < Math.max(1, spec.getThreads()); t++) {
+            workers.add(() -> {
+                List<ProductRow> chunk = new ArrayList<>(spec.getChunkSize());
+                for (int i = nextCustomer.getAndIncrement(); i < customerIds.length;
+                    i = nextCustomer.getAndIncrement()) {
+                    Random random = new Random(spec.getSeed() + i);
+                    for (int p = 0; p < productCounts[i]; p++) {
+                        chunk.add(productRow(spec, random, customerIds[i], i, p));
+                        if (chunk.size() == spec.getChunkSize()) {
+                            writeProducts(spec, chunk, chunks);
+                            chunk.clear();
+                        }
+                    }
+                }
+                if (!chunk.isEmpty()) {
+                    writeProducts(spec, chunk, chunks);
+                }
+                return null;
+            });
+        }
+        await(executor, workers);
+    }
+
+    private void runChunks(ExecutorService executor, Spec spec, int rows, ChunkWriter chunkWriter) {
+
+        AtomicInteger nextRow = new AtomicInteger();
+        List<Callable<Void>> workers = new ArrayList<>();
+        for (int t = 0; t < Math.max(1, spec.getThreads()); t++) {
+            workers.add(() -> {
+                for (int from = nextRow.getAndAdd(spec.getChunkSize()); from < rows;
+                    from = nextRow.getAndAdd(spec.getChunkSize())) {
+                    chunkWriter.write(from, Math.min(rows, from + spec.getChunkSize()));
+                }
+                return null;
+            });
+        }
+        await(executor, workers);
+    }
+
+    private static void await(ExecutorService executor, List<Callable<Void>> workers) {
+
+        try {
+            for (Future<Void> worker : executor.invokeAll(workers)) {
+                worker.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("dataset generation interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("dataset generation failed : " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private void writeCustomers(Spec spec, long[] customerIds, int from, int to) {
+
+        transactionTemplate.execute(status -> {
+            useBatchSize(spec);
+            LocalDateTime now = LocalDateTime.now();
+            List<Customer> written = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                Customer customer = Customer.builder()
+                    .title("Dataset customer " + i)
+                    .isDeleted(Boolean.FALSE)
+                    .createdAt(now)
+                    .build();
+                entityManager.persist(customer);
+                written.add(customer);
+            }
+            entityManager.flush();
+            entityManager.clear();
+            for (int i = from; i < to; i++) {
+                customerIds[i] = written.get(i - from).getId();
+            }
+            entityCountCache.customersCreated(to - from);
+            return null;
+        });
+    }
+
+    /**
+     * caches and indexes are told about the chunk inside its transaction, they apply it once it commits
+     * */
+    private void writeProducts(Spec spec, List<ProductRow> chunk, AtomicLong chunks) {
+
+        transactionTemplate.execute(status -> {
+            useBatchSize(spec);
+            LocalDateTime now = LocalDateTime.now();
+            for (ProductRow row : chunk) {
+                Product product = Product.builder()
+                    .customer(entityManager.getReference(Customer.class, row.customerId))
+                    .title(row.title)
+                    .price(row.price)
+                    .isDeleted(Boolean.FALSE)
+                    .createdAt(now)
+                    .build();
+                entityManager.persist(product);
+                row.id = product.getId();
+            }
+            entityManager.flush();
+            entityManager.clear();
+            created(chunk);
+            return null;
+        });
+        if (chunks.incrementAndGet() % PROGRESS_LOG_CHUNKS == 0) {
+            log.info("dataset : {} product chunks written", chunks.get());
+        }
+    }
+
+    private void created(List<ProductRow> chunk) {
+
+        Map<Long, List<BigDecimal>> createdByCustomer = new HashMap<>();
+        List<ProductTitle> createdTitles = new ArrayList<>(chunk.size());
+        Map<Long, List<ProductPrice>> createdPrices = new HashMap<>();
+        for (ProductRow row : chunk) {
+            createdByCustomer.computeIfAbsent(row.customerId, id -> new ArrayList<>()).add(row.price);
+            createdTitles.add(new ProductTitle(row.id, row.customerId, row.title));
+            createdPrices.computeIfAbsent(row.customerId, id -> new ArrayList<>())
+                .add(new ProductPrice(row.id, row.customerId, row.price));
+        }
+        createdByCustomer.forEach((customerId, prices) -> {
+            entityCountCache.productsCreated(customerId, prices.size());
+            productStatsCache.productsCreated(customerId, prices);
+        });
+        productSearchIndex.index(createdTitles);
+        createdPrices.forEach(productPriceIndex::productsCreated);
+    }
+
+    /**
+     * inserts of the transaction are sent in JDBC batches of the dataset batch size rather than the default one
+     * */
+    private void useBatchSize(Spec spec) {
+        entityManager.unwrap(Session.class).setJdbcBatchSize(spec.getBatchSize());
+    }
+
+    private static ProductRow productRow(Spec spec, Random random, long customerId, int customer, int index) {
+
+        String title = TITLE_WORDS[random.nextInt(TITLE_WORDS.length)] + " "
+            + TITLE_WORDS[random.nextInt(TITLE_WORDS.length)] + " " + customer + "-" + index;
+        BigDecimal price = random.nextDouble() < spec.getMissingPriceRatio() ? null : price(spec, random);
+        return new ProductRow(customerId, title, price);
+    }
+
+    /**
+     * @return uniform price within [min, max], or log-normal one around the median, cut to [min, max]
+     * */
+    private static BigDecimal price(Spec spec, Random random) {
+
+        double min = spec.getMinPrice().doubleValue();
+        double max = spec.getMaxPrice().doubleValue();
+        double price = spec.getPriceDistribution() == PriceDistribution.UNIFORM
+            ? min + random.nextDouble() * (max - min)
+            : spec.getMedianPrice().doubleValue() * Math.exp(spec.getPriceSigma() * random.nextGaussian());
+        return BigDecimal.valueOf(Math.min(max, Math.max(min, price))).setScale(ProductPriceIndex.PRICE_SCALE,
+            RoundingMode.HALF_UP);
+    }
+
+    /**
+     * product generated ahead of its chunk transaction, id is set once persisted
+     * */
+    private static final class ProductRow {
+
+        private final Long customerId;
+        private final String title;
+        private final BigDecimal price;
+        private Long id;
+
+        private ProductRow(Long customerId, String title, BigDecimal price) {
+            this.customerId = customerId;
+            this.title = title;
+            this.price = price;
+        }
+    }
+
+    @FunctionalInterface
+    private interface ChunkWriter {
+        void write(int from, int to);
+    }
+
+    /**
+     * dataset to generate, see {@code app.dataset.*} properties for the meaning and defaults of each field
+     * */
+    @Getter
+    @Builder(toBuilder = true)
+    public static final class Spec {
+        private final int customers;
+        private final int productsPerCustomer;
+        private final Distribution productsDistribution;
+        private final double skew;
+        private final PriceDistribution priceDistribution;
+        private final BigDecimal minPrice;
+        private final BigDecimal maxPrice;
+        private final BigDecimal medianPrice;
+        private final double priceSigma;
+        private final double missingPriceRatio;
+        private final int threads;
+        private final int batchSize;
+        private final int chunkSize;
+        private final long seed;
+    }
+}
@@ -0,0 +1,128 @@
+package org.ptr.orders.app.service;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+import org.ptr.orders.app.dao.CustomersRepository;
+import org.ptr.orders.app.dao.ProductsRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ *
+ * Approximate totals for listing endpoints : global customers count and products count per customer.
+ * Each count is loaded once with a count query and then maintained incrementally by
+ * create / delete operations once they commit, so listing does not issue SELECT COUNT(*). A count loaded
+ * while a create / delete of the same key was in flight is dropped and counted again on next read.
+ *
+ * */
+@Slf4j
+@Component
+public class EntityCountCache {
+
+    private static final long UNKNOWN = -1L;
+
+    private static final String CUSTOMERS_KEY = "customers";
+
+    private final AtomicLong customersCount = new AtomicLong(UNKNOWN);
+
+    private final ConcurrentMap<Long, AtomicLong> productsCountByCustomer = new ConcurrentHashMap<>();
+
+    private final WriteTracker writes = new WriteTracker();
+
+    @Value("${app.count-cache.max-customers:100000}")
+    private int maxCustomers;
+
+    private CustomersRepository customersRepository;
+
+    private ProductsRepository productsRepository;
+
+    @Autowired
+    public void setCustomersRepository(CustomersRepository customersRepository) {
+        this.customersRepository = customersRepository;
+    }
+
+    @Autowired
+    public void setProductsRepository(ProductsRepository productsRepository) {
+        this.productsRepository = productsRepository;
+    }
+
+    /**
+     * @return total number of customers, counted in database on first call only
+     * */
+    public long getCustomersCount() {
+
+        long count = customersCount.get();
+        if (count == UNKNOWN) {
+            long stamp = writes.stamp(CUSTOMERS_KEY);
+            long loaded = customersRepository.countByIsDeletedFalse();
+            customersCount.compareAndSet(UNKNOWN, loaded);
+            if (!writes.isCurrent(CUSTOMERS_KEY, stamp)) {
+                customersCount.set(UNKNOWN);
+                return loaded;
+            }
+            count = customersCount.get();
+        }
+        return count;
+    }
+
+    /**
+     * @return number of products of given customer, counted in database on first call for this customer only
+     * */
+    public long getProductsCount(Long customerId) {
+
+        AtomicLong count = productsCountByCustomer.get(customerId);
+        if (count != null) {
+            return count.get();
+        }
+        long stamp = writes.stamp(customerId);
+        long loaded = productsRepository.countByCustomerId(customerId);
+        if (productsCountByCustomer.size() < maxCustomers) {
+            count = productsCountByCustomer.putIfAbsent(customerId, new AtomicLong(loaded));
+            if (!writes.isCurrent(customerId, stamp)) {
+                productsCountByCustomer.remove(customerId);
+                return loaded;
+            }
+            return count != null ? count.get() : loaded;
+        }
+        log.debug("products count cache is full, {} customers cached", productsCountByCustomer.size());
+        return loaded;
+    }
+
+    public void customerCreated() {
+        addCustomers(1L);
+    }
+
+    public void customersCreated(long created) {
+        addCustomers(created);
+    }
+
+    public void customerDeleted(Long customerId) {
+        addCustomers(-1L);
+        writes.write(customerId, () -> productsCountByCustomer.remove(customerId));
+    }
+
+    public void productsCreated(Long customerId, long created) {
+        addProducts(customerId, created);
+    }
+
+    public void productDeleted(Long customerId) {
+        addProducts(customerId, -1L);
+    }
+
+    private void addCustomers(long delta) {
+        writes.write(CUSTOMERS_KEY, () -> customersCount.updateAndGet(
+            count -> count == UNKNOWN ? UNKNOWN : Math.max(0L, count + delta)));
+    }
+
+    private void addProducts(Long customerId, long delta) {
+        writes.write(customerId, () -> {
+            AtomicLong count = productsCountByCustomer.get(customerId);
+            if (count != null) {
+                count.updateAndGet(value -> Math.max(0L, value + delta));
+            }
+        });
+    }
+}
@@ -0,0 +1,67 @@
+package org.ptr.orders.app.service;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.ptr.orders.app.model.ChangeClock;
+import org.springframework.stereotype.Component;
+
+/**
+ *
+ * Commit-ordered part of listing validators. changedAt is stamped while a transaction writes, so an update
+ * committing after one with a later stamp leaves latest changedAt and number of rows of the listing as they
+ * were. Updates are therefore also stamped once they commit on this node, taken before the listing is read,
+ * so a listing read before such commit never validates after it. Creates and deletes already move the count.
+ * Products of customers sharing a stripe only cost a 200 instead of a 304
+ *
+ * */
+@Component
+public class ListingCommitClock {
+
+    private static final int STRIPES = 1024;
+
+    private final AtomicReference<LocalDateTime> customersCommittedAt = new AtomicReference<>();
+
+    private final AtomicReferenceArray<LocalDateTime> productsCommittedAt = new AtomicReferenceArray<>(STRIPES);
+
+    /**
+     * customers listing changes once the current transaction commits
+     * */
+    public void customersUpdated() {
+        TransactionCallbacks.afterCommit(() -> customersCommittedAt.accumulateAndGet(ChangeClock.next(),
+            ListingCommitClock::later));
+    }
+
+    /**
+     * products listing of customer changes once the current transaction commits
+     * */
+    public void productsUpdated(Long customerId) {
+        int stripe = stripeOf(customerId);
+        TransactionCallbacks.afterCommit(() -> productsCommittedAt.accumulateAndGet(stripe, ChangeClock.next(),
+            ListingCommitClock::later));
+    }
+
+    /**
+     * @return last commit of a customer update on this node, null when there was none
+     * */
+    public LocalDateTime getCustomersCommittedAt() {
+        return customersCommittedAt.get();
+    }
+
+    /**
+     * @return last commit of a product update of customer (or of a customer sharing its stripe) on this node,
+     * null when there was none
+     * */
+    public LocalDateTime getProductsCommittedAt(Long customerId) {
+        return productsCommittedAt.get(stripeOf(customerId));
+    }
+
+    private static LocalDateTime later(LocalDateTime last, LocalDateTime next) {
+        return last == null || next.isAfter(last) ? next : last;
+    }
+
+    private static int stripeOf(Object key) {
+        int hash = key != null ? key.hashCode() : 0;
+        return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+    }
+}
@@ -0,0 +1,269 @@
+package org.ptr.orders.app.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.ptr.orders.app.rest.dto.ChangeResponse;
+import org.ptr.orders.app.rest.dto.ProductEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ *
+ * Pushes product events of the service to Server-Sent Events subscribers of a customer. Events are handed over
+ * after commit of the writing transaction and never block the writer : each subscriber has its own buffer of
+ * at most {@code app.events.buffer-size} products, drained by {@code app.events.dispatch-threads} threads.
+ * Pending events of the same product are coalesced into the latest state (a product created and deleted before
+ * it was sent is not sent at all). When a slow subscriber has more distinct products pending than its buffer
+ * holds, the oldest are dropped and a {@value #RESYNC_EVENT} event tells it to read the listing again.
+ * At most {@code app.events.max-subscribers} subscribers are served, idle streams get a heartbeat comment
+ * every {@code app.events.heartbeat-ms}, which also finds disconnected clients.
+ *
+ * */
+@Slf4j
+@Component
+public class ProductEventPublisher {
+
+    public static final String PRODUCT_EVENT = "product";
+    public static final String RESYNC_EVENT = "resync";
+
+    private static final String HEARTBEAT_COMMENT = "heartbeat";
+
+    private final Map<Long, Set<Subscriber>> subscribersByCustomer = new ConcurrentHashMap<>();
+
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+
+    @Value("${app.events.max-subscribers:1000}")
+    private int maxSubscribers;
+
+    @Value("${app.events.buffer-size:256}")
+    private int bufferSize;
+
+    @Value("${app.events.dispatch-threads:4}")
+    private int dispatchThreads;
+
+    @Value("${app.events.heartbeat-ms:15000}")
+    private long heartbeatMillis;
+
+    private ScheduledExecutorService dispatcher;
+
+    @PostConstruct
+    public void start() {
+        dispatcher = Executors.newScheduledThreadPool(dispatchThreads, new CustomizableThreadFactory("events-"));
+        dispatcher.scheduleWithFixedDelay(this::heartbeat, heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        dispatcher.shutdownNow();
+        subscribersByCustomer.values().forEach(subscribers -> subscribers.forEach(
+            subscriber -> subscriber.emitter.complete()));
+        subscribersByCustomer.clear();
+    }
+
+    /**
+     * registers emitter for events of customer products, it is removed once completed, timed out or broken
+     * @return false when there are already {@code app.events.max-subscribers} subscribers
+     * */
+    public boolean subscribe(Long customerId, SseEmitter emitter) {
+
+        if (subscriberCount.incrementAndGet() > maxSubscribers) {
+            subscriberCount.decrementAndGet();
+            log.debug("product events subscription of customer : {} rejected, {} subscribers", customerId,
+                maxSubscribers);
+            return false;
+        }
+        Subscriber subscriber = new Subscriber(customerId, emitter);
+        subscribersByCustomer.compute(customerId, (id, subscribers) -> {
+            Set<Subscriber> customerSubscribers = subscribers != null ? subscribers : ConcurrentHashMap.newKeySet();
+            customerSubscribers.add(subscriber);
+            return customerSubscribers;
+        });
+        emitter.onCompletion(() -> unsubscribe(subscriber));
+        emitter.onTimeout(() -> unsubscribe(subscriber));
+        emitter.onError(error -> unsubscribe(subscriber));
+        return true;
+    }
+
+    /**
+     * @return true when anyone listens, lets writers skip building events nobody receives
+     * */
+    public boolean hasSubscribers() {
+        return subscriberCount.get() > 0;
+    }
+
+    public void publish(ProductEvent event) {
+        publish(Collections.singletonList(event));
+    }
+
+    /**
+     * events of a transaction are dispatched after it commits and dropped when it rolls back
+     * */
+    public void publish(Collection<ProductEvent> events) {
+
+        if (!hasSubscribers() || events.isEmpty()) {
+            return;
+        }
+        TransactionCallbacks.afterCommit(() -> dispatch(events));
+    }
+
+    private void dispatch(Collection<ProductEvent> events) {
+
+        for (ProductEvent event : events) {
+            Set<Subscriber> subscribers = subscribersByCustomer.get(event.getCustomerId());
+            if (subscribers != null) {
+                subscribers.forEach(subscriber -> subscriber.offer(event));
+            }
+        }
+    }
+
+    /**
+     * set of a customer is added and removed under the map entry lock, so a concurrent subscribe never lands
+     * in a set that is being dropped
+     * */
+    private void unsubscribe(Subscriber subscriber) {
+
+        subscribersByCustomer.computeIfPresent(subscriber.customerId, (id, subscribers) -> {
+            if (subscribers.remove(subscriber)) {
+                subscriberCount.decrementAndGet();
+            }
+            return subscribers.isEmpty() ? null : subscribers;
+        });
+    }
+
+    private void heartbeat() {
+        subscribersByCustomer.values().forEach(subscribers -> subscribers.forEach(Subscriber::heartbeat));
+    }
+
+    /**
+     * buffer of one subscriber, guarded by its own monitor, drained by at most one dispatcher thread at a time
+     * */
+    private final class Subscriber {
+
+        private final Long customerId;
+        private final SseEmitter emitter;
+
+        /**
+         * pending events by product id, null key for deletion of all products of customer
+         * */
+        private final LinkedHashMap<Long, ProductEvent> pending = new LinkedHashMap<>();
+        private long dropped;
+        private boolean heartbeatDue;
+        private boolean draining;
+
+        Subscriber(Long customerId, SseEmitter emitter) {
+            this.customerId = customerId;
+            this.emitter = emitter;
+        }
+
+        synchronized void offer(ProductEvent event) {
+
+            Long productId = event.getProductId();
+            if (productId == null) {
+                pending.clear();
+            }
+            ProductEvent coalesced = coalesce(pending.remove(productId), event);
+            if (coalesced != null) {
+                if (pending.size() >= bufferSize) {
+                    Iterator<ProductEvent> eldest = pending.values().iterator();
+                    eldest.next();
+                    eldest.remove();
+                    dropped++;
+                }
+                pending.put(productId, coalesced);
+            }
+            scheduleDrain();
+        }
+
+        synchronized void heartbeat() {
+            heartbeatDue = true;
+            scheduleDrain();
+        }
+
+        /**
+         * sends what is pending at the time, reschedules itself rather than looping so that a busy
+         * subscriber does not keep a dispatcher thread from the others
+         * */
+        void drain() {
+
+            List<ProductEvent> events;
+            long droppedEvents;
+            boolean sendHeartbeat;
+            synchronized (this) {
+                events = new ArrayList<>(pending.values());
+                pending.clear();
+                droppedEvents = dropped;
+                dropped = 0;
+                sendHeartbeat = heartbeatDue && events.isEmpty() && droppedEvents == 0;
+                heartbeatDue = false;
+            }
+            try {
+                if (droppedEvents > 0) {
+                    emitter.send(SseEmitter.event().name(RESYNC_EVENT).data(droppedEvents));
+                }
+                for (ProductEvent event : events) {
+                    emitter.send(SseEmitter.event().name(PRODUCT_EVENT).data(event, MediaType.APPLICATION_JSON));
+                }
+                if (sendHeartbeat) {
+                    emitter.send(SseEmitter.event().comment(HEARTBEAT_COMMENT));
+                }
+            } catch (IOException | IllegalStateException e) {
+                log.debug("product events subscriber of customer : {} dropped : {}", customerId, e.getMessage());
+                unsubscribe(this);
+                emitter.completeWithError(e);
+                return;
+            }
+            synchronized (this) {
+                draining = false;
+                if (!pending.isEmpty() || dropped > 0) {
+                    scheduleDrain();
+                }
+            }
+        }
+
+        private void scheduleDrain() {
+            if (!draining && !dispatcher.isShutdown()) {
+                draining = true;
+                try {
+                    dispatcher.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    log.debug("product events dispatcher is shut down");
+                }
+            }
+        }
+
+        private ProductEvent coalesce(ProductEvent previous, ProductEvent next) {
+
+            if (previous == null || previous.getOperation() != ChangeResponse.Operation.CREATED) {
+                return next;
+            }
+            if (next.getOperation() == ChangeResponse.Operation.DELETED) {
+                return null;
+            }
+            return ProductEvent.builder()
+                .operation(ChangeResponse.Operation.CREATED)
+                .customerId(next.getCustomerId())
+                .productId(next.getProductId())
+                .product(next.getProduct())
+                .build();
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package org.ptr.orders.app.service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.IntStream;
+import lombok.extern.slf4j.Slf4j;
+import org.ptr.orders.app.dao.ProductsRepository;
+import org.ptr.orders.app.model.ProductPrice;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ *
+ * Live products of each customer in price order, kept in memory as two parallel primitive arrays : prices
+ * scaled to {@value #PRICE_SCALE} decimals as {@code long} and product ids, ties ordered by id. A price range
+ * is two binary searches over the {@code long} array, so range and sorted queries neither allocate nor compare
+ * BigDecimal and know their total without a count query. Arrays of a customer are loaded with one query on
+ * first read and then replaced copy on write by create / update / delete once they commit, readers never lock.
+ * Writers find a product by binary search over its price, kept by product id next to the arrays, and move it
+ * with one copy of each array. Prices loaded while a change of the customer was in flight are served but not
+ * kept, neither are the empty prices of a customer without products, which may not exist.
+ * Products without price sort last and fall out of any range. Customers with more than
+ * {@code app.price-index.max-products-per-customer} products are not indexed and are left to the
+ * (customer_id, price, id) database index.
+ *
+ * */
+@Slf4j
+@Component
+public class ProductPriceIndex {
+
+    public static final int PRICE_SCALE = 2;
+
+    /**
+     * stored for products without price, greater than any scaled price
+     * */
+    private static final long NO_PRICE = Long.MAX_VALUE;
+    private static final long MAX_SCALED_PRICE = NO_PRICE - 1;
+    private static final long MIN_SCALED_PRICE = Long.MIN_VALUE;
+
+    /**
+     * bounds of prices the index can tell apart, also used as open bounds of database range queries
+     * */
+    public static final BigDecimal MAX_PRICE = BigDecimal.valueOf(MAX_SCALED_PRICE, PRICE_SCALE);
+    public static final BigDecimal MIN_PRICE = BigDecimal.valueOf(MIN_SCALED_PRICE, PRICE_SCALE);
+
+    private final ConcurrentMap<Long, Prices> pricesByCustomer = new ConcurrentHashMap<>();
+
+    private final WriteTracker writes = new WriteTracker();
+
+    @Value("${app.price-index.max-customers:10000}")
+    private int maxCustomers;
+
+    @Value("${app.price-index.max-products-per-customer:100000}")
+    private int maxProductsPerCustomer;
+
+    private ProductsRepository productsRepository;
+
+    private EntityCountCache entityCountCache;
+
+    @Autowired
+    public void setProductsRepository(ProductsRepository productsRepository) {
+        this.productsRepository = productsRepository;
+    }
+
+    @Autowired
+    public void setEntityCountCache(EntityCountCache entityCountCache) {
+        this.entityCountCache = entityCountCache;
+    }
+
+    /**
+     * @param minPrice lowest price included, null for no lower bound
+     * @param maxPrice highest price included, null for no upper bound
+     * @param descending most expensive first, products without price still come last
+     * @return ids of one page of products of customer in price order with total number of products in range,
+     * empty when customer has too many products to be indexed
+     * */
+    public Optional<ProductSearchIndex.Hits> find(Long customerId, BigDecimal minPrice, BigDecimal maxPrice,
+        boolean descending, int offset, int limit) {
+
+        Prices prices = pricesByCustomer.get(customerId);
+        if (prices == null) {
+            prices = load(customerId);
+        }
+        if (prices == null) {
+            return Optional.empty();
+        }
+        boolean bounded = minPrice != null || maxPrice != null;
+        long low = minPrice != null ? toScaled(minPrice, RoundingMode.CEILING) : MIN_SCALED_PRICE;
+        long high = maxPrice != null ? toScaled(maxPrice, RoundingMode.FLOOR) : MAX_SCALED_PRICE;
+        return Optional.of(prices.find(low, high, bounded, descending, offset, limit));
+    }
+
+    public void productsCreated(Long customerId, Collection<ProductPrice> productPrices) {
+        writes.write(customerId, () ->
+            pricesByCustomer.computeIfPresent(customerId, (id, prices) -> prices.withAll(productPrices)));
+    }
+
+    public void priceChanged(Long customerId, Long productId, BigDecimal price) {
+        writes.write(customerId, () -> pricesByCustomer.computeIfPresent(customerId,
+            (id, prices) -> prices.withPrice(productId, toScaled(price))));
+    }
+
+    public void productDeleted(Long customerId, Long productId) {
+        writes.write(customerId, () ->
+            pricesByCustomer.computeIfPresent(customerId, (id, prices) -> prices.without(productId)));
+    }
+
+    public void customerDeleted(Long customerId) {
+        writes.write(customerId, () -> pricesByCustomer.remove(customerId));
+    }
+
+    /**
+     * prices are stored under compute of the customer entry only when no change of the customer was in flight
+     * or started since before the query : a change starting after that is applied onto them once it commits
+     * @return prices of customer, null when customer has too many products
+     * */
+    private Prices load(Long customerId) {
+
+        if (entityCountCache.getProductsCount(customerId) > maxProductsPerCustomer) {
+            return null;
+        }
+        long stamp = writes.stamp(customerId);
+        List<ProductPrice> productPrices = productsRepository.findProductPricesByCustomerId(customerId);
+        Prices loaded = Prices.of(productPrices);
+        if (productPrices.isEmpty()) {
+            return loaded;
+        }
+        if (pricesByCustomer.size() >= maxCustomers) {
+            log.debug("product price index is full, {} customers indexed", pricesByCustomer.size());
+            return loaded;
+        }
+        Prices current = pricesByCustomer.compute(customerId,
+            (id, prices) -> prices != null ? prices : writes.isCurrent(id, stamp) ? loaded : null);
+        return current != null ? current : loaded;
+    }
+
+    private static long toScaled(BigDecimal price) {
+        return price != null ? toScaled(price, RoundingMode.HALF_UP) : NO_PRICE;
+    }
+
+    /**
+     * @return price as number of 1 / 10^{@value #PRICE_SCALE} units, clamped to what the index tells apart
+     * */
+    private static long toScaled(BigDecimal price, RoundingMode roundingMode) {
+        if (price.compareTo(MAX_PRICE) >= 0) {
+            return MAX_SCALED_PRICE;
+        }
+        if (price.compareTo(MIN_PRICE) <= 0) {
+            return MIN_SCALED_PRICE;
+        }
+        return price.setScale(PRICE_SCALE, roundingMode).unscaledValue().longValue();
+    }
+
+    /**
+     * immutable prices of one customer : ascending scaled prices, products without price last,
+     * with product ids at the same positions
+     * */
+    private static final class Prices {
+
+        private final long[] scaledPrices;
+        private final long[] productIds;
+        private final int pricedCount;
+
+        /**
+         * scaled price by product id, shared by successive prices of a customer and only changed by writers
+         * under compute of the customer entry, readers never use it
+         * */
+        private final Map<Long, Long> scaledPriceById;
+
+        private Prices(long[] scaledPrices, long[] productIds, int pricedCount, Map<Long, Long> scaledPriceById) {
+            this.scaledPrices = scaledPrices;
+            this.productIds = productIds;
+            this.pricedCount = pricedCount;
+            this.scaledPriceById = scaledPriceById;
+        }
+
+        static Prices of(Collection<ProductPrice> productPrices) {
+            return new Prices(new long[0], new long[0], 0, new HashMap<>()).withAll(productPrices);
+        }
+
+        /**
+         * positions [from, to) hold the range : priced products in [from, pricedEnd),
+         * products without price in [pricedEnd, to) when the range is not bounded
+         * */
+        ProductSearchIndex.Hits find(long low, long high, boolean bounded, boolean descending, int offset,
+            int limit) {
+
+            int from = bounded ? lowerBound(low) : 0;
+            int pricedEnd = Math.max(from, lowerBound(high == MAX_SCALED_PRICE ? NO_PRICE : high + 1));
+            int to = bounded ? pricedEnd : productIds.length;
+            int total = to - from;
+            int start = Math.min(offset, total);
+            int end = (int) Math.min(total, (long) offset + limit);
+            List<Long> page = new ArrayList<>(end - start);
+            int priced = pricedEnd - from;
+            for (int i = start; i < end; i++) {
+                int position = !descending ? from + i : i < priced ? pricedEnd - 1 - i : from + i;
+                page.add(productIds[position]);
+            }
+            return new ProductSearchIndex.Hits(page, total);
+        }
+
+        Prices with(long productId, long scaledPrice) {
+
+            int position = insertionPoint(scaledPrice, productId);
+            long[] prices = new long[scaledPrices.length + 1];
+            long[] ids = new long[productIds.length + 1];
+            System.arraycopy(scaledPrices, 0, prices, 0, position);
+            System.arraycopy(productIds, 0, ids, 0, position);
+            prices[position] = scaledPrice;
+            ids[position] = productId;
+            System.arraycopy(scaledPrices, position, prices, position + 1, scaledPrices.length - position);
+            System.arraycopy(productIds, position, ids, position + 1, productIds.length - position);
+            scaledPriceById.put(productId, scaledPrice);
+            return new Prices(prices, ids, scaledPrice != NO_PRICE ? pricedCount + 1 : pricedCount, scaledPriceById);
+        }
+
+        /**
+         * moves product to the position of its new price, shifting the products in between by one
+         * */
+        Prices withPrice(long productId, long scaledPrice) {
+
+            int from = indexOf(productId);
+            if (from < 0) {
+                return with(productId, scaledPrice);
+            }
+            int to = insertionPoint(scaledPrice, productId);
+            long[] prices = scaledPrices.clone();
+            long[] ids = productIds.clone();
+            if (to > from) {
+                to--;
+                System.arraycopy(prices, from + 1, prices, from, to - from);
+                System.arraycopy(ids, from + 1, ids, from, to - from);
+            } else {
+                System.arraycopy(prices, to, prices, to + 1, from - to);
+                System.arraycopy(ids, to, ids, to + 1, from - to);
+            }
+            prices[to] = scaledPrice;
+            ids[to] = productId;
+            int priced = pricedCount - (scaledPrices[from] != NO_PRICE ? 1 : 0) + (scaledPrice != NO_PRICE ? 1 : 0);
+            scaledPriceById.put(productId, scaledPrice);
+            return new Prices(prices, ids, priced, scaledPriceById);
+        }
+
+        /**
+         * sorts the new prices and merges them in with one pass, instead of one copy per product
+         * */
+        Prices withAll(Collection<ProductPrice> productPrices) {
+
+            if (productPrices.isEmpty()) {
+                return this;
+            }
+            long[] newPrices = new long[productPrices.size()];
+            long[] newIds = new long[productPrices.size()];
+            int added = 0;
+            for (ProductPrice productPrice : productPrices) {
+                newPrices[added] = toScaled(productPrice.getPrice());
+                newIds[added] = productPrice.getProductId();
+                scaledPriceById.put(newIds[added], newPrices[added++]);
+            }
+            int[] order = IntStream.range(0, added).boxed()
+                .sorted(Comparator.<Integer>comparingLong(i -> newPrices[i]).thenComparingLong(i -> newIds[i]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+
+            long[] prices = new long[scaledPrices.length + added];
+            long[] ids = new long[productIds.length + added];
+            int newPriced = 0;
+            int current = 0;
+            int next = 0;
+            for (int position = 0; position < prices.length; position++) {
+                boolean takeNew = next < added && (current == scaledPrices.length
+                    || compare(newPrices[order[next]], newIds[order[next]], current) < 0);
+                if (takeNew) {
+                    prices[position] = newPrices[order[next]];
+                    ids[position] = newIds[order[next++]];
+                    newPriced += prices[position] != NO_PRICE ? 1 : 0;
+                } else {
+                    prices[position] = scaledPrices[current];
+                    ids[position] = productIds[current++];
+                }
+            }
+            return new Prices(prices, ids, pricedCount + newPriced, scaledPriceById);
+        }
+
+        Prices without(long productId) {
+
+            int position = indexOf(productId);
+            if (position < 0) {
+                return this;
+            }
+            long[] prices = new long[scaledPrices.length - 1];
+            long[] ids = new long[productIds.length - 1];
+            System.arraycopy(scaledPrices, 0, prices, 0, position);
+            System.arraycopy(productIds, 0, ids, 0, position);
+            System.arraycopy(scaledPrices, position + 1, prices, position, prices.length - position);
+            System.arraycopy(productIds, position + 1, ids, position, ids.length - position);
+            scaledPriceById.remove(productId);
+            return new Prices(prices, ids, scaledPrices[position] != NO_PRICE ? pricedCount - 1 : pricedCount,
+                scaledPriceById);
+        }
+
+        /**
+         * @return first position among priced products with price not lower than given one
+         * */
+        private int lowerBound(long scaledPrice) {
+
+            int low = 0;
+            int high = pricedCount;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (scaledPrices[middle] < scaledPrice) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * @return first position holding a greater (price, id) pair than given one
+         * */
+        private int insertionPoint(long scaledPrice, long productId) {
+
+            int low = 0;
+            int high = scaledPrices.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (compare(scaledPrice, productId, middle) >= 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        private int compare(long scaledPrice, long productId, int position) {
+            int byPrice = Long.compare(scaledPrice, scaledPrices[position]);
+            return byPrice != 0 ? byPrice : Long.compare(productId, productIds[position]);
+        }
+
+        /**
+         * @return position of product, found by binary search over its price, -1 when not indexed
+         * */
+        private int indexOf(long productId) {
+
+            Long scaledPrice = scaledPriceById.get(productId);
+            if (scaledPrice == null) {
+                return -1;
+            }
+            int position = insertionPoint(scaledPrice, productId) - 1;
+            return position >= 0 && productIds[position] == productId ? position : -1;
+        }
+    }
+}
@@ -0,0 +1,544 @@
+package org.ptr.orders.app.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.ptr.orders.app.dao.ProductsRepository;
+import org.ptr.orders.app.model.ProductTitle;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ *
+ * In-process inverted index over product titles. Titles are split into lower case letter / digit tokens,
+ * tokens are kept sorted so every query token matches as a prefix, all query tokens must match (AND).
+ * Hits are ranked by exact over prefix token matches, then by shorter titles, then by id.
+ * The index is built once the application is ready, by {@code app.search.build-threads} threads each reading
+ * its own id range in keyset batches, and is then kept up to date by product writes once they commit.
+ * Changes made while it is built are replayed onto the built index before it replaces the current one.
+ * A failed startup build is retried every {@code app.search.build-retry-ms} until one completes.
+ *
+ * */
+@Slf4j
+@Component
+public class ProductSearchIndex {
+
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final String[] NO_TOKENS = new String[0];
+    private static final char PREFIX_END = Character.MAX_VALUE;
+
+    private static final int EXACT_MATCH_SCORE = 3;
+    private static final int PREFIX_MATCH_SCORE = 1;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * ids changed incrementally while a build runs, guarded by write lock
+     * */
+    private final Set<Long> touchedDuringBuild = ConcurrentHashMap.newKeySet();
+
+    private final Set<Long> customersRemovedDuringBuild = ConcurrentHashMap.newKeySet();
+
+    /**
+     * titles of products not indexed yet when their title was updated during a build, guarded by write lock
+     * */
+    private final Map<Long, String> titlesUpdatedDuringBuild = new HashMap<>();
+
+    private Index index = new Index();
+
+    private volatile boolean building;
+
+    private volatile boolean ready;
+
+    @Value("${app.search.build-on-startup:true}")
+    private boolean buildOnStartup;
+
+    @Value("${app.search.build-threads:4}")
+    private int buildThreads;
+
+    @Value("${app.search.build-batch-size:5000}")
+    private int buildBatchSize;
+
+    @Value("${app.search.build-retry-ms:30000}")
+    private long buildRetryMillis;
+
+    private ProductsRepository productsRepository;
+
+    @Autowired
+    public void setProductsRepository(ProductsRepository productsRepository) {
+        this.productsRepository = productsRepository;
+    }
+
+    /**
+     * index is built in background, searches are not answered meanwhile
+     * */
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+
+        if (buildOnStartup) {
+            Thread builder = new Thread(this::buildUntilReady, "search-index-build");
+            builder.setDaemon(true);
+            builder.start();
+        }
+    }
+
+    private void buildUntilReady() {
+
+        while (!ready) {
+            try {
+                rebuild();
+            } catch (RuntimeException e) {
+                log.warn("search index build retried in {} ms", buildRetryMillis);
+                try {
+                    Thread.sleep(buildRetryMillis);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * builds a new index from all live products and replaces the current one
+     * @return number of products indexed
+     * */
+    public synchronized int rebuild() {
+
+        long started = System.nanoTime();
+        withWriteLock(current -> {
+            touchedDuringBuild.clear();
+            customersRemovedDuringBuild.clear();
+            titlesUpdatedDuringBuild.clear();
+            building = true;
+        });
+        Index built = new Index();
+        try {
+            for (List<Document> documents : readDocuments()) {
+                documents.forEach(built::add);
+            }
+        } catch (RuntimeException e) {
+            building = false;
+            log.error("search index build failed", e);
+            throw e;
+        }
+        withWriteLock(current -> {
+            customersRemovedDuringBuild.forEach(built::removeCustomer);
+            for (Long productId : touchedDuringBuild) {
+                Document read = built.documents.get(productId);
+                built.remove(productId);
+                Document document = current.documents.get(productId);
+                String title = titlesUpdatedDuringBuild.get(productId);
+                if (document != null) {
+                    built.add(document);
+                } else if (title != null && read != null) {
+                    built.add(new Document(new ProductTitle(productId, read.customerId, title)));
+                }
+            }
+            touchedDuringBuild.clear();
+            customersRemovedDuringBuild.clear();
+            titlesUpdatedDuringBuild.clear();
+            index = built;
+            building = false;
+        });
+        ready = true;
+        int indexed = built.documents.size();
+        log.info("search index built in {} ms : {} products, {} tokens",
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), indexed, built.postings.size());
+        return indexed;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * adds product or replaces its title and owner
+     * */
+    public void index(Long productId, Long customerId, String title) {
+        index(Collections.singletonList(new ProductTitle(productId, customerId, title)));
+    }
+
+    public void index(Collection<ProductTitle> productTitles) {
+
+        List<Document> documents = new ArrayList<>(productTitles.size());
+        productTitles.forEach(productTitle -> documents.add(new Document(productTitle)));
+        TransactionCallbacks.afterCommit(() -> withWriteLock(current -> documents.forEach(document -> {
+            current.remove(document.productId);
+            current.add(document);
+            touched(document.productId, null);
+        })));
+    }
+
+    /**
+     * replaces title of an indexed product, owner is kept. During a build the product may not be indexed yet,
+     * its title is then applied to the built document when changes are replayed
+     * */
+    public void updateTitle(Long productId, String title) {
+
+        TransactionCallbacks.afterCommit(() -> withWriteLock(current -> {
+            Document document = current.documents.get(productId);
+            if (document != null) {
+                current.remove(productId);
+                current.add(new Document(new ProductTitle(productId, document.customerId, title)));
+                touched(productId, null);
+            } else {
+                touched(productId, title);
+            }
+        }));
+    }
+
+    public void remove(Long productId) {
+
+        TransactionCallbacks.afterCommit(() -> withWriteLock(current -> {
+            current.remove(productId);
+            touched(productId, null);
+        }));
+    }
+
+    public void removeCustomer(Long customerId) {
+
+        TransactionCallbacks.afterCommit(() -> withWriteLock(current -> {
+            current.removeCustomer(customerId);
+            if (building) {
+                customersRemovedDuringBuild.add(customerId);
+            }
+        }));
+    }
+
+    /**
+     * @param query tokens to match, each as a prefix of a title token
+     * @param customerId owner to restrict hits to, null for all products
+     * @param offset number of best hits skipped
+     * @param limit max number of hits returned
+     * @return ids of hits in rank order and total number of hits
+     * */
+    public Hits search(String query, Long customerId, int offset, int limit) {
+
+        String[] terms = tokenize(query);
+        if (terms.length == 0) {
+            return Hits.NONE;
+        }
+        lock.readLock().lock();
+        try {
+            return index.search(terms, customerId, offset, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    static String[] tokenize(String text) {
+
+        if (text == null) {
+            return NO_TOKENS;
+        }
+        return Arrays.stream(TOKEN_SEPARATOR.split(text.toLowerCase(Locale.ROOT)))
+            .filter(token -> !token.isEmpty())
+            .distinct()
+            .toArray(String[]::new);
+    }
+
+    private void withWriteLock(Consumer<Index> change) {
+
+        lock.writeLock().lock();
+        try {
+            change.accept(index);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param title updated title of a product not indexed yet, null when the current index holds the change
+     * */
+    private void touched(Long productId, String title) {
+        if (building) {
+            touchedDuringBuild.add(productId);
+            if (title != null) {
+                titlesUpdatedDuringBuild.put(productId, title);
+            } else {
+                titlesUpdatedDuringBuild.remove(productId);
+            }
+        }
+    }
+
+    /**
+     * splits [1, max id] into one range per thread, each range is read in keyset batches and tokenized
+     * on its own thread
+     * */
+    private List<List<Document>> readDocuments() {
+
+        Long maxId = productsRepository.findMaxId();
+        if (maxId == null) {
+            return Collections.emptyList();
+        }
+        int partitions = (int) Math.max(1L, Math.min(buildThreads, maxId / buildBatchSize + 1));
+        long rangeSize = maxId / partitions + 1;
+        ExecutorService executor = Executors.newFixedThreadPool(partitions,
+            new CustomizableThreadFactory("search-index-build-"));
+        try {
+            List<Future<List<Document>>> ranges = new ArrayList<>(partitions);
+            for (int i = 0; i < partitions; i++) {
+                long fromId = i * rangeSize;
+                long toId = Math.min(maxId, fromId + rangeSize);
+                ranges.add(executor.submit(() -> readRange(fromId, toId)));
+            }
+            List<List<Document>> documents = new ArrayList<>(partitions);
+            for (Future<List<Document>> range : ranges) {
+                documents.add(range.get());
+            }
+            return documents;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("search index build interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("search index build failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private List<Document> readRange(long afterId, long toId) {
+
+        List<Document> documents = new ArrayList<>();
+        PageRequest batch = PageRequest.of(0, buildBatchSize);
+        List<ProductTitle> productTitles;
+        long lastId = afterId;
+        do {
+            productTitles = productsRepository.findProductTitles(lastId, toId, batch);
+            productTitles.forEach(productTitle -> documents.add(new Document(productTitle)));
+            if (!productTitles.isEmpty()) {
+                lastId = productTitles.get(productTitles.size() - 1).getId();
+            }
+        } while (productTitles.size() == buildBatchSize);
+        return documents;
+    }
+
+    /**
+     * ids of one page of hits in rank order, with total number of hits
+     * */
+    @Getter
+    public static final class Hits {
+
+        static final Hits NONE = new Hits(Collections.emptyList(), 0L);
+
+        private final List<Long> productIds;
+        private final long total;
+
+        Hits(List<Long> productIds, long total) {
+            this.productIds = productIds;
+            this.total = total;
+        }
+    }
+
+    private static final class Document {
+
+        private final Long productId;
+        private final Long customerId;
+        private final String[] tokens;
+
+        Document(ProductTitle productTitle) {
+            productId = productTitle.getId();
+            customerId = productTitle.getCustomerId();
+            tokens = tokenize(productTitle.getTitle());
+        }
+
+        /**
+         * @return sum of best match of every term, 0 when some term matches no token
+         * */
+        int score(String[] terms) {
+
+            int score = 0;
+            for (String term : terms) {
+                int best = 0;
+                for (String token : tokens) {
+                    if (token.equals(term)) {
+                        best = EXACT_MATCH_SCORE;
+                        break;
+                    } else if (token.startsWith(term)) {
+                        best = PREFIX_MATCH_SCORE;
+                    }
+                }
+                if (best == 0) {
+                    return 0;
+                }
+                score += best;
+            }
+            return score;
+        }
+    }
+
+    private static final class ScoredHit {
+
+        private final Document document;
+        private final int score;
+
+        ScoredHit(Document document, int score) {
+            this.document = document;
+            this.score = score;
+        }
+
+        /**
+         * @return negative when given hit ranks before this one : higher score, fewer tokens, lower id
+         * */
+        int compareTo(Document otherDocument, int otherScore) {
+
+            if (score != otherScore) {
+                return Integer.compare(score, otherScore);
+            }
+            if (document.tokens.length != otherDocument.tokens.length) {
+                return Integer.compare(otherDocument.tokens.length, document.tokens.length);
+            }
+            return Long.compare(otherDocument.productId, document.productId);
+        }
+    }
+
+    /**
+     * plain collections, guarded by the lock of the enclosing index. Postings hold documents themselves,
+     * so candidates are scored without looking them up by id
+     * */
+    private static final class Index {
+
+        private final NavigableMap<String, Set<Document>> postings = new TreeMap<>();
+        private final Map<Long, Document> documents = new HashMap<>();
+        private final Map<Long, Set<Document>> productsByCustomer = new HashMap<>();
+
+        void add(Document document) {
+
+            for (int i = 0; i < document.tokens.length; i++) {
+                String token = document.tokens[i];
+                String known = postings.ceilingKey(token);
+                if (token.equals(known)) {
+                    document.tokens[i] = known;
+                    postings.get(known).add(document);
+                } else {
+                    Set<Document> tokenDocuments = new HashSet<>();
+                    tokenDocuments.add(document);
+                    postings.put(token, tokenDocuments);
+                }
+            }
+            documents.put(document.productId, document);
+            if (document.customerId != null) {
+                productsByCustomer.computeIfAbsent(document.customerId, id -> new HashSet<>()).add(document);
+            }
+        }
+
+        void removeCustomer(Long customerId) {
+
+            Set<Document> customerDocuments = productsByCustomer.get(customerId);
+            if (customerDocuments != null) {
+                new ArrayList<>(customerDocuments).forEach(document -> remove(document.productId));
+            }
+        }
+
+        void remove(Long productId) {
+
+            Document document = documents.remove(productId);
+            if (document == null) {
+                return;
+            }
+            for (String token : document.tokens) {
+                Set<Document> tokenDocuments = postings.get(token);
+                if (tokenDocuments != null && tokenDocuments.remove(document) && tokenDocuments.isEmpty()) {
+                    postings.remove(token);
+                }
+            }
+            Set<Document> customerDocuments = productsByCustomer.get(document.customerId);
+            if (customerDocuments != null && customerDocuments.remove(document) && customerDocuments.isEmpty()) {
+                productsByCustomer.remove(document.customerId);
+            }
+        }
+
+        /**
+         * candidates come from the most selective source : products of the customer, or the term whose
+         * prefix matches fewest postings. Candidates are then checked against every term and ranked,
+         * keeping only offset + limit best hits in a heap whose head is the worst of them
+         * */
+        Hits search(String[] terms, Long customerId, int offset, int limit) {
+
+            Collection<Set<Document>> candidateSources = null;
+            long fewest = Long.MAX_VALUE;
+            if (customerId != null) {
+                Set<Document> customerDocuments = productsByCustomer.get(customerId);
+                if (customerDocuments == null) {
+                    return Hits.NONE;
+                }
+                candidateSources = Collections.singletonList(customerDocuments);
+                fewest = customerDocuments.size();
+            }
+            for (String term : terms) {
+                Collection<Set<Document>> matching = postings.subMap(term, true, term + PREFIX_END, false).values();
+                long matches = 0;
+                for (Set<Document> tokenDocuments : matching) {
+                    matches += tokenDocuments.size();
+                }
+                if (matches == 0) {
+                    return Hits.NONE;
+                }
+                if (matches < fewest) {
+                    fewest = matches;
+                    candidateSources = matching;
+                }
+            }
+
+            int keep = offset + limit;
+            PriorityQueue<ScoredHit> best = new PriorityQueue<>(Math.max(1, keep),
+                (first, second) -> first.compareTo(second.document, second.score));
+            Set<Document> seen = candidateSources.size() > 1 ? new HashSet<>() : null;
+            long total = 0;
+            for (Set<Document> source : candidateSources) {
+                for (Document document : source) {
+                    if ((seen != null && !seen.add(document))
+                        || (customerId != null && !customerId.equals(document.customerId))) {
+                        continue;
+                    }
+                    int score = document.score(terms);
+                    if (score == 0) {
+                        continue;
+                    }
+                    total++;
+                    if (best.size() < keep) {
+                        best.add(new ScoredHit(document, score));
+                    } else if (keep > 0 && best.peek().compareTo(document, score) < 0) {
+                        best.poll();
+                        best.add(new ScoredHit(document, score));
+                    }
+                }
+            }
+
+            List<Long> productIds = new ArrayList<>(Math.max(0, best.size() - offset));
+            while (best.size() > offset) {
+                productIds.add(best.poll().document.productId);
+            }
+            Collections.reverse(productIds);
+            return new Hits(productIds, total);
+        }
+    }
+}
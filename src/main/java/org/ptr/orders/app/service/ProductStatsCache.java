@@ -0,0 +1,283 @@
+package org.ptr.orders.app.service;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.ptr.orders.app.dao.ProductsRepository;
+import org.ptr.orders.app.model.PriceSummary;
+import org.ptr.orders.app.rest.dto.ProductStatsResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+/**
+ *
+ * Product count and total / min / max / average price per customer, kept in memory next to {@link EntityCountCache}.
+ * A customer aggregate is loaded once with one grouped query and then maintained incrementally by
+ * create / update / delete operations, so stats are answered without reading products. Removing the current
+ * min or max price (or a partial update whose old price is not known) only marks the aggregate stale,
+ * it is loaded again on next read. Top customers by total price are ranked in memory once aggregates of all
+ * customers are loaded, or by a grouped query when there are more than {@code app.stats.max-customers}.
+ * Changes are applied once their transaction commits, an aggregate loaded while a change of its customer
+ * was in flight is kept stale so it is not trusted.
+ *
+ * */
+@Slf4j
+@Component
+public class ProductStatsCache {
+
+    private static final MathContext AVERAGE_PRECISION = MathContext.DECIMAL64;
+
+    private static final Comparator<ProductStatsResponse> BY_TOTAL_PRICE_DESC =
+        Comparator.comparing(ProductStatsResponse::getTotalPrice).reversed()
+            .thenComparing(ProductStatsResponse::getCustomerId);
+
+    private final ConcurrentMap<Long, CustomerStats> statsByCustomer = new ConcurrentHashMap<>();
+
+    private final WriteTracker writes = new WriteTracker();
+
+    /**
+     * true once aggregates of all customers are loaded : a customer missing from the map has no products
+     * */
+    private volatile boolean allLoaded;
+
+    @Value("${app.stats.max-customers:100000}")
+    private int maxCustomers;
+
+    private ProductsRepository productsRepository;
+
+    private EntityCountCache entityCountCache;
+
+    @Autowired
+    public void setProductsRepository(ProductsRepository productsRepository) {
+        this.productsRepository = productsRepository;
+    }
+
+    @Autowired
+    public void setEntityCountCache(EntityCountCache entityCountCache) {
+        this.entityCountCache = entityCountCache;
+    }
+
+    /**
+     * @return stats of live products of given customer, zero count when customer has none
+     * */
+    public ProductStatsResponse getStats(Long customerId) {
+
+        CustomerStats stats = statsByCustomer.get(customerId);
+        if (stats == null || stats.isStale()) {
+            stats = load(customerId);
+        }
+        return stats.toResponse();
+    }
+
+    /**
+     * @param limit max number of customers returned
+     * @return customers with products, highest total price first
+     * */
+    public List<ProductStatsResponse> getTopByTotalPrice(int limit) {
+
+        if (!allLoaded && !loadAll()) {
+            return productsRepository.findTopPriceSummaries(PageRequest.of(0, limit)).stream()
+                .map(summary -> new CustomerStats(summary).toResponse())
+                .collect(Collectors.toList());
+        }
+        statsByCustomer.values().stream()
+            .filter(CustomerStats::isStale)
+            .map(CustomerStats::getCustomerId)
+            .collect(Collectors.toList())
+            .forEach(this::load);
+        return statsByCustomer.values().stream()
+            .map(CustomerStats::toResponse)
+            .filter(stats -> stats.getProductCount() > 0)
+            .sorted(BY_TOTAL_PRICE_DESC)
+            .limit(limit)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * @param prices prices of products created for customer, null for products without price
+     * */
+    public void productsCreated(Long customerId, Collection<BigDecimal> prices) {
+
+        writes.write(customerId, () -> {
+            CustomerStats stats = allLoaded
+                ? statsByCustomer.computeIfAbsent(customerId, CustomerStats::new) : statsByCustomer.get(customerId);
+            if (stats != null) {
+                prices.forEach(stats::add);
+            }
+        });
+    }
+
+    public void priceChanged(Long customerId, BigDecimal oldPrice, BigDecimal newPrice) {
+        update(customerId, stats -> stats.replace(oldPrice, newPrice));
+    }
+
+    public void productDeleted(Long customerId, BigDecimal price) {
+        update(customerId, stats -> stats.remove(price));
+    }
+
+    /**
+     * products of customer changed in a way not known here, its aggregate is loaded again on next read
+     * */
+    public void productsChanged(Long customerId) {
+        update(customerId, CustomerStats::markStale);
+    }
+
+    public void customerDeleted(Long customerId) {
+        writes.write(customerId, () -> statsByCustomer.remove(customerId));
+    }
+
+    private void update(Long customerId, Consumer<CustomerStats> change) {
+
+        writes.write(customerId, () -> {
+            CustomerStats stats = statsByCustomer.get(customerId);
+            if (stats != null) {
+                change.accept(stats);
+            }
+        });
+    }
+
+    /**
+     * aggregate is stored before it is checked against changes of its customer, so a change starting after
+     * the check is applied onto it and one that raced with the query leaves it stale
+     * */
+    private CustomerStats load(Long customerId) {
+
+        long stamp = writes.stamp(customerId);
+        CustomerStats stats = productsRepository.findPriceSummaryByCustomerId(customerId)
+            .map(CustomerStats::new)
+            .orElseGet(() -> new CustomerStats(customerId));
+        if (statsByCustomer.containsKey(customerId) || statsByCustomer.size() < maxCustomers) {
+            statsByCustomer.put(customerId, stats);
+        } else {
+            log.debug("product stats cache is full, {} customers cached", statsByCustomer.size());
+        }
+        if (!writes.isCurrent(customerId, stamp)) {
+            stats.markStale();
+        }
+        return stats;
+    }
+
+    /**
+     * @return false when there are too many customers to keep all aggregates
+     * */
+    private synchronized boolean loadAll() {
+
+        if (allLoaded) {
+            return true;
+        }
+        if (entityCountCache.getCustomersCount() > maxCustomers) {
+            return false;
+        }
+        long stamp = writes.stampAll();
+        Map<Long, CustomerStats> loaded = productsRepository.findPriceSummaries().stream()
+            .collect(Collectors.toMap(PriceSummary::getCustomerId, CustomerStats::new));
+        statsByCustomer.clear();
+        statsByCustomer.putAll(loaded);
+        if (!writes.isCurrentAll(stamp)) {
+            log.debug("products changed while product stats of all customers were loaded");
+            statsByCustomer.clear();
+            return false;
+        }
+        allLoaded = true;
+        log.debug("product stats loaded for {} customers", loaded.size());
+        return true;
+    }
+
+    /**
+     * mutable aggregate of one customer, guarded by its own monitor
+     * */
+    private static final class CustomerStats {
+
+        private final Long customerId;
+        private long productCount;
+        private long pricedCount;
+        private BigDecimal totalPrice = BigDecimal.ZERO;
+        private BigDecimal minPrice;
+        private BigDecimal maxPrice;
+        private boolean stale;
+
+        CustomerStats(Long customerId) {
+            this.customerId = customerId;
+        }
+
+        CustomerStats(PriceSummary summary) {
+            this(summary.getCustomerId());
+            productCount = summary.getProductCount();
+            pricedCount = summary.getPricedCount();
+            totalPrice = summary.getTotalPrice() != null ? summary.getTotalPrice() : BigDecimal.ZERO;
+            minPrice = summary.getMinPrice();
+            maxPrice = summary.getMaxPrice();
+        }
+
+        Long getCustomerId() {
+            return customerId;
+        }
+
+        synchronized boolean isStale() {
+            return stale;
+        }
+
+        synchronized void markStale() {
+            stale = true;
+        }
+
+        synchronized void add(BigDecimal price) {
+            productCount++;
+            addPrice(price);
+        }
+
+        synchronized void remove(BigDecimal price) {
+            productCount = Math.max(0L, productCount - 1);
+            removePrice(price);
+        }
+
+        synchronized void replace(BigDecimal oldPrice, BigDecimal newPrice) {
+            removePrice(oldPrice);
+            addPrice(newPrice);
+        }
+
+        synchronized ProductStatsResponse toResponse() {
+            return ProductStatsResponse.builder()
+                .customerId(customerId)
+                .productCount(productCount)
+                .totalPrice(totalPrice)
+                .minPrice(minPrice)
+                .maxPrice(maxPrice)
+                .averagePrice(pricedCount > 0
+                    ? totalPrice.divide(BigDecimal.valueOf(pricedCount), AVERAGE_PRECISION) : null)
+                .build();
+        }
+
+        private void addPrice(BigDecimal price) {
+            if (price == null) {
+                return;
+            }
+            pricedCount++;
+            totalPrice = totalPrice.add(price);
+            minPrice = minPrice == null || price.compareTo(minPrice) < 0 ? price : minPrice;
+            maxPrice = maxPrice == null || price.compareTo(maxPrice) > 0 ? price : maxPrice;
+        }
+
+        private void removePrice(BigDecimal price) {
+            if (price == null) {
+                return;
+            }
+            pricedCount = Math.max(0L, pricedCount - 1);
+            totalPrice = totalPrice.subtract(price);
+            if ((minPrice != null && price.compareTo(minPrice) <= 0)
+                || (maxPrice != null && price.compareTo(maxPrice) >= 0)) {
+                stale = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,360 @@
+package org.ptr.orders.app.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.ptr.orders.app.rest.dto.ProductRequest;
+import org.ptr.orders.app.rest.dto.WriteBehindStatsResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ *
+ * Optional write-behind of full product updates, enabled by {@code app.write-behind.enabled=true}.
+ * Updates are acknowledged once buffered : pending updates of the same product are merged into its latest state
+ * and every {@code app.write-behind.window-ms} the buffer is written with
+ * {@link CustomerProductsService#updateProducts}, one transaction per {@code app.write-behind.batch-size}
+ * products. When {@code app.write-behind.max-pending} products are pending, or after shutdown began, updates
+ * of other products are written through by the caller instead.
+ * Durability : an acknowledged update lives only in memory of this node until its flush commits, it is lost
+ * when the process dies within the window, on graceful shutdown the buffer is flushed before the database
+ * is closed. When a batch fails its products are written again one by one, so one bad update does not hold back
+ * the others. A product whose write fails is put back under newer updates and retried with the next window,
+ * after {@code app.write-behind.max-attempts} failed writes its update is dropped, logged and counted as
+ * dead-lettered. A product is written by one thread at a time : {@link #flush(Long)} waits for a scheduled
+ * flush writing the same product, so its update is never applied after the write that follows it.
+ * Updates of products missing or deleted at flush time are dropped and only counted. Until flushed, reads
+ * still return the previous state of the product. Counters and flush times are also published as
+ * {@value #UPDATES_METER}, {@value #PRODUCTS_METER}, {@value #PENDING_METER} and {@value #FLUSH_TIMER} meters.
+ *
+ * */
+@Slf4j
+@Component
+public class ProductWriteBehind {
+
+    public static final String UPDATES_METER = "app.write-behind.updates";
+    public static final String PRODUCTS_METER = "app.write-behind.products";
+    public static final String PENDING_METER = "app.write-behind.pending";
+    public static final String FLUSH_TIMER = "app.write-behind.flush";
+
+    private final Map<Long, ProductRequest> pending = new ConcurrentHashMap<>();
+
+    /**
+     * products taken by a flush until their write completes, guarded by its own monitor for waiting
+     * */
+    private final Set<Long> writing = ConcurrentHashMap.newKeySet();
+
+    /**
+     * failed writes of products still pending
+     * */
+    private final Map<Long, Integer> failedAttempts = new ConcurrentHashMap<>();
+
+    private final LongAdder receivedUpdates = new LongAdder();
+    private final LongAdder coalescedUpdates = new LongAdder();
+    private final LongAdder writtenThroughUpdates = new LongAdder();
+    private final LongAdder flushedProducts = new LongAdder();
+    private final LongAdder missingProducts = new LongAdder();
+    private final LongAdder failedProducts = new LongAdder();
+    private final LongAdder deadLetteredProducts = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder flushNanos = new LongAdder();
+    private final AtomicLong maxFlushNanos = new AtomicLong();
+
+    @Value("${app.write-behind.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.write-behind.window-ms:100}")
+    private long windowMillis;
+
+    @Value("${app.write-behind.batch-size:500}")
+    private int batchSize;
+
+    @Value("${app.write-behind.max-pending:10000}")
+    private int maxPending;
+
+    @Value("${app.write-behind.max-attempts:3}")
+    private int maxAttempts;
+
+    private volatile boolean closed;
+
+    private ScheduledExecutorService flusher;
+
+    private Timer flushTimer;
+
+    private MeterRegistry meterRegistry;
+
+    private CustomerProductsService customerProductsService;
+
+    private CacheManager cacheManager;
+
+    @Autowired
+    public void setCustomerProductsService(CustomerProductsService customerProductsService) {
+        this.customerProductsService = customerProductsService;
+    }
+
+    @Autowired
+    public void setCacheManager(CacheManager cacheManager) {
+        this.cacheManager = cacheManager;
+    }
+
+    @Autowired
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void start() {
+        registerMeters();
+        if (enabled) {
+            flusher = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("write-behind-"));
+            flusher.scheduleWithFixedDelay(this::flush, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * stops taking updates and flushes what is pending, runs before the service and the data source
+     * it depends on are destroyed
+     * */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        closed = true;
+        if (flusher != null) {
+            flusher.shutdown();
+            flusher.awaitTermination(windowMillis + 30_000, TimeUnit.MILLISECONDS);
+        }
+        flush();
+        if (!pending.isEmpty()) {
+            log.error("write-behind updates of {} products are lost on shutdown", pending.size());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * buffers update of product, merged with the one already pending for it
+     * @return false when update is not buffered and has to be written through by the caller
+     * */
+    public boolean submit(Long productId, ProductRequest productRequest) {
+
+        if (!enabled) {
+            return false;
+        }
+        if (closed || pending.size() >= maxPending && !pending.containsKey(productId)) {
+            writtenThroughUpdates.increment();
+            return false;
+        }
+        ProductRequest update = productRequest.getModifiedAt() != null ? productRequest
+            : productRequest.toBuilder().modifiedAt(LocalDateTime.now()).build();
+        pending.merge(productId, update, (previous, next) -> {
+            coalescedUpdates.increment();
+            return merge(previous, next);
+        });
+        receivedUpdates.increment();
+        return true;
+    }
+
+    /**
+     * writes pending update of one product now, so that a following write of another kind is not overwritten
+     * by it. Waits while a scheduled flush is writing the product
+     * */
+    public void flush(Long productId) {
+
+        take(productId);
+        try {
+            ProductRequest update = pending.remove(productId);
+            if (update != null) {
+                write(Collections.singletonMap(productId, update));
+            }
+        } finally {
+            release(Collections.singleton(productId));
+        }
+    }
+
+    /**
+     * writes all pending updates, updates arriving or put back meanwhile wait for the next flush
+     * */
+    public void flush() {
+
+        if (pending.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        Map<Long, ProductRequest> batch = new HashMap<>();
+        for (Long productId : new ArrayList<>(pending.keySet())) {
+            if (!writing.add(productId)) {
+                continue;
+            }
+            ProductRequest update = pending.remove(productId);
+            if (update != null) {
+                batch.put(productId, update);
+            } else {
+                release(Collections.singleton(productId));
+            }
+            if (batch.size() == batchSize) {
+                writeAndRelease(batch);
+                batch = new HashMap<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            writeAndRelease(batch);
+        }
+        long elapsed = System.nanoTime() - start;
+        flushes.increment();
+        flushNanos.add(elapsed);
+        maxFlushNanos.accumulateAndGet(elapsed, Math::max);
+        flushTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        log.debug("write-behind flush took {} ms", TimeUnit.NANOSECONDS.toMillis(elapsed));
+    }
+
+    public WriteBehindStatsResponse getStats() {
+
+        long received = receivedUpdates.sum();
+        long coalesced = coalescedUpdates.sum();
+        long flushCount = flushes.sum();
+        return WriteBehindStatsResponse.builder()
+            .enabled(enabled)
+            .pendingProducts((long) pending.size())
+            .receivedUpdates(received)
+            .coalescedUpdates(coalesced)
+            .writtenThroughUpdates(writtenThroughUpdates.sum())
+            .flushedProducts(flushedProducts.sum())
+            .missingProducts(missingProducts.sum())
+            .failedProducts(failedProducts.sum())
+            .deadLetteredProducts(deadLetteredProducts.sum())
+            .coalescingRatio(received > 0 ? (double) received / (received - coalesced) : 1.0)
+            .flushes(flushCount)
+            .averageFlushMillis(flushCount > 0 ? flushNanos.sum() / 1e6 / flushCount : 0.0)
+            .maxFlushMillis(maxFlushNanos.get() / 1e6)
+            .build();
+    }
+
+    private void registerMeters() {
+
+        counter(UPDATES_METER, "received", receivedUpdates);
+        counter(UPDATES_METER, "coalesced", coalescedUpdates);
+        counter(UPDATES_METER, "written-through", writtenThroughUpdates);
+        counter(PRODUCTS_METER, "flushed", flushedProducts);
+        counter(PRODUCTS_METER, "missing", missingProducts);
+        counter(PRODUCTS_METER, "failed", failedProducts);
+        counter(PRODUCTS_METER, "dead-lettered", deadLetteredProducts);
+        Gauge.builder(PENDING_METER, pending, Map::size).register(meterRegistry);
+        flushTimer = Timer.builder(FLUSH_TIMER).register(meterRegistry);
+    }
+
+    private void counter(String name, String result, LongAdder count) {
+        FunctionCounter.builder(name, count, LongAdder::sum).tag("result", result).register(meterRegistry);
+    }
+
+    /**
+     * waits until no other flush is writing product, then takes it
+     * */
+    private void take(Long productId) {
+
+        synchronized (writing) {
+            while (!writing.add(productId)) {
+                try {
+                    writing.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("interrupted while product " + productId + " is written", e);
+                }
+            }
+        }
+    }
+
+    private void release(Collection<Long> productIds) {
+
+        synchronized (writing) {
+            writing.removeAll(productIds);
+            writing.notifyAll();
+        }
+    }
+
+    private void writeAndRelease(Map<Long, ProductRequest> batch) {
+        try {
+            write(batch);
+        } finally {
+            release(batch.keySet());
+        }
+    }
+
+    /**
+     * a failed batch is written again one product per transaction, a failed product is put back for the next
+     * flush until it has failed {@code app.write-behind.max-attempts} times
+     * */
+    private void write(Map<Long, ProductRequest> batch) {
+
+        List<Long> updatedIds;
+        try {
+            updatedIds = customerProductsService.updateProducts(batch);
+        } catch (RuntimeException e) {
+            if (batch.size() > 1) {
+                log.warn("write-behind flush of {} products failed, written one by one : {}", batch.size(),
+                    e.getMessage());
+                batch.forEach((productId, update) -> write(Collections.singletonMap(productId, update)));
+                return;
+            }
+            batch.forEach((productId, update) -> failed(productId, update, e));
+            return;
+        }
+        batch.keySet().forEach(failedAttempts::remove);
+        flushedProducts.add(updatedIds.size());
+        missingProducts.add(batch.size() - updatedIds.size());
+        Cache productsCache = cacheManager.getCache(CustomerProductsService.PRODUCTS_CACHE);
+        if (productsCache != null) {
+            updatedIds.forEach(productsCache::evict);
+        }
+    }
+
+    private void failed(Long productId, ProductRequest update, RuntimeException e) {
+
+        failedProducts.increment();
+        int attempts = failedAttempts.merge(productId, 1, Integer::sum);
+        if (attempts >= maxAttempts) {
+            failedAttempts.remove(productId);
+            deadLetteredProducts.increment();
+            log.error("write-behind update of product {} dropped after {} failed writes : {}", productId, attempts,
+                update, e);
+            return;
+        }
+        log.warn("write-behind update of product {} failed, retried with next flush : {}", productId, e.getMessage());
+        pending.merge(productId, update, (newer, failedUpdate) -> merge(failedUpdate, newer));
+    }
+
+    /**
+     * @return state of applying both updates in order, as done by {@link CustomerProductsService#updateProduct}
+     * */
+    private static ProductRequest merge(ProductRequest previous, ProductRequest next) {
+        return previous.toBuilder()
+            .title(StringUtils.isNotBlank(next.getTitle()) ? next.getTitle() : previous.getTitle())
+            .price(next.getPrice() != null ? next.getPrice() : previous.getPrice())
+            .createdAt(next.getCreatedAt() != null ? next.getCreatedAt() : previous.getCreatedAt())
+            .modifiedAt(next.getModifiedAt())
+            .build();
+    }
+}
@@ -0,0 +1,122 @@
+package org.ptr.orders.app.service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import lombok.extern.slf4j.Slf4j;
+import org.ptr.orders.app.dao.CustomersRepository;
+import org.ptr.orders.app.dao.ProductsRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ *
+ * Hard deletes rows soft deleted more than {@code app.purge.retention-minutes} ago, in batches of
+ * {@code app.purge.batch-size} ids, each batch in its own short transaction so locks are held briefly.
+ * Products go first, customers are purged only once none of their product rows is left.
+ * Runs every {@code app.purge.interval-ms} when scheduling is enabled by {@code app.purge.enabled=true}.
+ * Purged tombstones are gone from the change feed, so the feed refuses cursors older than {@link #getPurgeHorizon()}
+ *
+ * */
+@Slf4j
+@Component
+public class SoftDeletePurgeJob {
+
+    @Value("${app.purge.batch-size:500}")
+    private int purgeBatchSize;
+
+    @Value("${app.purge.retention-minutes:60}")
+    private long retentionMinutes;
+
+    @Value("${app.purge.enabled:false}")
+    private boolean scheduled;
+
+    /**
+     * latest deletedBefore of {@link #purge}, since the application started
+     * */
+    private final AtomicReference<LocalDateTime> purgedBefore = new AtomicReference<>();
+
+    private CustomersRepository customersRepository;
+
+    private ProductsRepository productsRepository;
+
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    public void setCustomersRepository(CustomersRepository customersRepository) {
+        this.customersRepository = customersRepository;
+    }
+
+    @Autowired
+    public void setProductsRepository(ProductsRepository productsRepository) {
+        this.productsRepository = productsRepository;
+    }
+
+    @Autowired
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Scheduled(fixedDelayString = "${app.purge.interval-ms:600000}",
+        initialDelayString = "${app.purge.interval-ms:600000}")
+    public void purgeDeleted() {
+        purge(LocalDateTime.now(ZoneOffset.UTC).minusMinutes(retentionMinutes));
+    }
+
+    /**
+     * @param deletedBefore rows soft deleted at or after this time are kept
+     * @return number of product and customer rows removed
+     * */
+    public long purge(LocalDateTime deletedBefore) {
+
+        purgedBefore.accumulateAndGet(deletedBefore, SoftDeletePurgeJob::later);
+        long products = purgeInBatches(pageable -> productsRepository.findPurgeableIds(deletedBefore, pageable),
+            productsRepository::deleteByIds);
+        long customers = purgeInBatches(pageable -> customersRepository.findPurgeableIds(deletedBefore, pageable),
+            customersRepository::deleteByIds);
+        if (products + customers > 0) {
+            log.info("purged {} products and {} customers deleted before {}", products, customers, deletedBefore);
+        }
+        return products + customers;
+    }
+
+    /**
+     * rows deleted before the horizon may be purged, after it they are all kept. While scheduled it moves
+     * with the retention window, also for rows purged before a restart
+     * @return time before which deletes may be missing from the change feed, null while none can be
+     * */
+    public LocalDateTime getPurgeHorizon() {
+        return later(purgedBefore.get(),
+                scheduled ? LocalDateTime.now(ZoneOffset.UTC).minusMinutes(retentionMinutes) : null);
+    }
+
+    private static LocalDateTime later(LocalDateTime first, LocalDateTime second) {
+        return first == null || (second != null && second.isAfter(first)) ? second : first;
+    }
+
+    /**
+     * always reads first batch : purged rows are gone, so the next batch of ids starts from the beginning again
+     * */
+    private long purgeInBatches(Function<PageRequest, List<Long>> purgeableIds, ToIntFunction<List<Long>> delete) {
+
+        PageRequest firstBatch = PageRequest.of(0, purgeBatchSize);
+        long purged = 0;
+        int batchPurged;
+        do {
+            batchPurged = transactionTemplate.execute(status -> {
+                List<Long> ids = purgeableIds.apply(firstBatch);
+                return ids.isEmpty() ? 0 : delete.applyAsInt(ids);
+            });
+            purged += batchPurged;
+        } while (batchPurged == purgeBatchSize);
+        return purged;
+    }
+}
@@ -0,0 +1,47 @@
+package org.ptr.orders.app.service;
+
+import java.util.function.Consumer;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ *
+ * Runs in-memory work that follows a database write once the writing transaction completes : caches, indexes
+ * and events then never see rows of a transaction rolled back at commit (a version conflict, a constraint),
+ * nor rows other transactions cannot read yet. Outside of a transaction the work runs at once.
+ * Must be called while the transaction is running, not from a completion callback of it
+ *
+ * */
+public final class TransactionCallbacks {
+
+    private TransactionCallbacks() {
+    }
+
+    /**
+     * runs action after the current transaction commits, drops it when the transaction rolls back
+     * */
+    public static void afterCommit(Runnable action) {
+        afterCompletion(committed -> {
+            if (committed) {
+                action.run();
+            }
+        });
+    }
+
+    /**
+     * runs action after the current transaction completes either way, with true when it committed
+     * */
+    public static void afterCompletion(Consumer<Boolean> action) {
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.accept(Boolean.TRUE);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+                action.accept(status == STATUS_COMMITTED);
+            }
+        });
+    }
+}
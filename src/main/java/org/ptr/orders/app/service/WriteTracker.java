@@ -0,0 +1,84 @@
+package org.ptr.orders.app.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ *
+ * Generation counters of in-memory updates that mirror database writes, striped by key (customer id).
+ * An update starts while its transaction writes and ends once it is applied after commit, or dropped on
+ * rollback. A value loaded from the database is trusted only when no update of its stripe was in flight
+ * or started while it was read and stored : a write committed but not yet applied is otherwise either
+ * counted twice or lost. Keys sharing a stripe only cost an extra load
+ *
+ * */
+final class WriteTracker {
+
+    static final long UNSETTLED = -1L;
+
+    private static final int STRIPES = 1024;
+
+    private final AtomicLongArray started = new AtomicLongArray(STRIPES);
+
+    private final AtomicLongArray ended = new AtomicLongArray(STRIPES);
+
+    private final AtomicLong allStarted = new AtomicLong();
+
+    private final AtomicLong allEnded = new AtomicLong();
+
+    /**
+     * applies update once the current transaction commits, counted as in flight for its key until then
+     * */
+    void write(Object key, Runnable update) {
+
+        int stripe = stripeOf(key);
+        started.incrementAndGet(stripe);
+        allStarted.incrementAndGet();
+        TransactionCallbacks.afterCompletion(committed -> {
+            try {
+                if (committed) {
+                    update.run();
+                }
+            } finally {
+                ended.incrementAndGet(stripe);
+                allEnded.incrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * taken before a value of key is read from the database
+     * @return generation of key, {@link #UNSETTLED} while an update of key is in flight
+     * */
+    long stamp(Object key) {
+        int stripe = stripeOf(key);
+        long settled = ended.get(stripe);
+        return started.get(stripe) == settled ? settled : UNSETTLED;
+    }
+
+    /**
+     * checked once the loaded value is stored, so an update starting later is applied onto it
+     * @return true when no update of key was in flight or started since the stamp was taken
+     * */
+    boolean isCurrent(Object key, long stamp) {
+        int stripe = stripeOf(key);
+        return stamp != UNSETTLED && started.get(stripe) == stamp && ended.get(stripe) == stamp;
+    }
+
+    /**
+     * @see #stamp(Object) for values loaded for all keys at once
+     * */
+    long stampAll() {
+        long settled = allEnded.get();
+        return allStarted.get() == settled ? settled : UNSETTLED;
+    }
+
+    boolean isCurrentAll(long stamp) {
+        return stamp != UNSETTLED && allStarted.get() == stamp && allEnded.get() == stamp;
+    }
+
+    private static int stripeOf(Object key) {
+        int hash = key != null ? key.hashCode() : 0;
+        return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+    }
+}
@@ -0,0 +1,183 @@
+package org.ptr.orders.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.ptr.orders.app.config.AsyncConfig;
+import org.ptr.orders.app.dao.CustomersRepository;
+import org.ptr.orders.app.dao.ProductsRepository;
+import org.ptr.orders.app.rest.AsyncCustomersProductsController;
+import org.ptr.orders.app.rest.CustomersProductsController;
+import org.ptr.orders.app.rest.dto.CustomerRequest;
+import org.ptr.orders.app.rest.dto.CustomerResponse;
+import org.ptr.orders.app.rest.dto.ProductResponse;
+import org.ptr.orders.app.service.CustomerProductsService;
+import org.ptr.orders.app.service.ProductWriteBehind;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+/**
+ *
+ * Slow database scenario of the async mode : every products listing takes {@link #SLOW_QUERY_MILLIS}.
+ * A burst of listings larger than read pool plus read queue is partly rejected with 503 right away,
+ * accepted listings complete, and writes are served by their own executor meanwhile
+ *
+ * */
+@Slf4j
+@RunWith(SpringRunner.class)
+@WebMvcTest(controllers = {CustomersProductsController.class, AsyncCustomersProductsController.class})
+@AutoConfigureMockMvc
+@Import(AsyncConfig.class)
+@TestPropertySource(properties = {
+    "app.async.enabled=true",
+    "app.async.timeout-ms=10000",
+    "app.async.read.pool-size=" + AsyncControllerLoadTest.READ_POOL_SIZE,
+    "app.async.read.queue-capacity=" + AsyncControllerLoadTest.READ_QUEUE_CAPACITY,
+    "app.async.write.pool-size=2",
+    "app.async.write.queue-capacity=10"
+})
+public class AsyncControllerLoadTest {
+
+    static final int READ_POOL_SIZE = 4;
+    static final int READ_QUEUE_CAPACITY = 8;
+
+    private static final long SLOW_QUERY_MILLIS = 300L;
+    private static final int BURST_REQUESTS = 40;
+
+    @Autowired
+    private MockMvc mvc;
+
+    @MockBean
+    private CustomerProductsService customerProductsService;
+
+    @MockBean
+    private CustomersRepository customersRepository;
+
+    @MockBean
+    private ProductsRepository productsRepository;
+
+    @MockBean
+    private ProductWriteBehind productWriteBehind;
+
+    @Before
+    public void setUp() {
+
+        when(customerProductsService.getProductsByCustomerId(eq(1L), any(Pageable.class))).thenAnswer(invocation -> {
+            Thread.sleep(SLOW_QUERY_MILLIS);
+            return new PageImpl<>(Collections.singletonList(ProductResponse.builder().id(2L).customerId(1L).build()));
+        });
+        when(customerProductsService.createCustomer(any(CustomerRequest.class)))
+            .thenReturn(CustomerResponse.builder().id(6L).title("Async customer").build());
+    }
+
+    @Test
+    public void slowReadsAreBoundedAndDoNotBlockWrites() throws Exception {
+
+        long started = System.nanoTime();
+        List<MvcResult> reads = new ArrayList<>(BURST_REQUESTS);
+        for (int i = 0; i < BURST_REQUESTS; i++) {
+            reads.add(mvc.perform(get("/async/customers/1/products"))
+                .andExpect(request().asyncStarted())
+                .andReturn());
+        }
+
+        long writeStarted = System.nanoTime();
+        MvcResult write = mvc.perform(post("/async/customers")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"title\":\"Async customer\"}"))
+            .andReturn();
+        write.getAsyncResult(SLOW_QUERY_MILLIS);
+        long writeMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - writeStarted);
+        assertEquals(HttpStatus.OK.value(), mvc.perform(asyncDispatch(write)).andReturn().getResponse().getStatus());
+
+        int completed = 0;
+        int rejected = 0;
+        for (MvcResult read : reads) {
+            read.getAsyncResult(BURST_REQUESTS * SLOW_QUERY_MILLIS);
+            int status = mvc.perform(asyncDispatch(read)).andReturn().getResponse().getStatus();
+            if (status == HttpStatus.OK.value()) {
+                completed++;
+            } else if (status == HttpStatus.SERVICE_UNAVAILABLE.value()) {
+                rejected++;
+            }
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        log.info("{} listings in {} ms : {} completed ({} per second), {} rejected, write served in {} ms",
+            BURST_REQUESTS, elapsedMillis, completed, completed * 1000L / Math.max(1L, elapsedMillis), rejected,
+            writeMillis);
+
+        assertEquals(BURST_REQUESTS, completed + rejected);
+        assertTrue(completed >= READ_POOL_SIZE + READ_QUEUE_CAPACITY);
+        assertTrue(rejected > 0);
+        assertTrue(writeMillis < SLOW_QUERY_MILLIS);
+    }
+
+    @Test
+    public void timedOutWriteIsNotInterruptedNorRetried() throws Exception {
+
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean interrupted = new AtomicBoolean();
+        CountDownLatch finished = new CountDownLatch(1);
+        when(customerProductsService.updateCustomer(eq(7L), any(CustomerRequest.class))).thenAnswer(invocation -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+            }
+            finished.countDown();
+            return 7L;
+        });
+
+        MvcResult write = mvc.perform(put("/async/customers/7")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"title\":\"Slow update\"}"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+        MockAsyncContext asyncContext = (MockAsyncContext) write.getRequest().getAsyncContext();
+        for (AsyncListener listener : asyncContext.getListeners()) {
+            listener.onTimeout(new AsyncEvent(asyncContext));
+        }
+        MvcResult timedOut = mvc.perform(asyncDispatch(write)).andReturn();
+        assertEquals(HttpStatus.GATEWAY_TIMEOUT.value(), timedOut.getResponse().getStatus());
+        assertNull(timedOut.getResponse().getHeader(HttpHeaders.RETRY_AFTER));
+
+        release.countDown();
+        assertTrue(finished.await(SLOW_QUERY_MILLIS, TimeUnit.MILLISECONDS));
+        assertFalse(interrupted.get());
+    }
+}
@@ -0,0 +1,115 @@
+package org.ptr.orders.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.ptr.orders.app.rest.dto.ImportChunkFailure;
+import org.ptr.orders.app.rest.dto.ImportResponse;
+import org.ptr.orders.app.service.CatalogImportService;
+import org.ptr.orders.app.service.CatalogImportService.Format;
+import org.ptr.orders.app.service.CustomerProductsService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class CatalogImportServiceTest {
+
+    private static final String CHUNK_SIZE_FIELD = "importChunkSize";
+
+    @Autowired
+    private CatalogImportService catalogImportService;
+    @Autowired
+    private CustomerProductsService customerProductsService;
+
+    private Object defaultChunkSize;
+
+    @Before
+    public void setUp() {
+        defaultChunkSize = ReflectionTestUtils.getField(catalogImportService, CHUNK_SIZE_FIELD);
+        ReflectionTestUtils.setField(catalogImportService, CHUNK_SIZE_FIELD, 2);
+    }
+
+    @After
+    public void tearDown() {
+        ReflectionTestUtils.setField(catalogImportService, CHUNK_SIZE_FIELD, defaultChunkSize);
+    }
+
+    @Test
+    public void importProductsFromNdjsonTest() throws Exception {
+
+        final Long customerId = 5L;
+        long productsCount = customerProductsService.getProductsCount(customerId);
+
+        ImportResponse importResponse = catalogImportService.importProducts(payload(
+            "{\"customerId\":5,\"title\":\"Imported product 1\",\"price\":10.5,\"isDeleted\":false}\n"
+                + "{\"customerId\":5,\"title\":\"Imported product 2\",\"price\":\"not a price\"}\n"
+                + "{\"customerId\":5,\"title\":\"Imported product 3\",\"price\":11,"
+                + "\"createdAt\":\"2020-05-01T10:15:30\"}\n"
+                + "{\"customerId\":999,\"title\":\"Imported product 4\",\"price\":12}\n"
+                + "{\"customerId\":5,\"title\":\"Imported product 5\",\"price\":13}\n"), Format.NDJSON);
+
+        assertEquals(Long.valueOf(5L), importResponse.getRowsRead());
+        assertEquals(Long.valueOf(3L), importResponse.getRowsImported());
+        assertEquals(Long.valueOf(2L), importResponse.getRowsRejected());
+        assertEquals(Integer.valueOf(3), importResponse.getChunksCommitted());
+        assertEquals(2, importResponse.getFailures().size());
+        assertTrue(importResponse.getCompleted());
+
+        ImportChunkFailure firstFailure = importResponse.getFailures().get(0);
+        assertEquals(Integer.valueOf(1), firstFailure.getChunk());
+        assertEquals(Integer.valueOf(1), firstFailure.getRejectedRows());
+        assertTrue(firstFailure.getMessages().get(0).startsWith("row 2 rejected"));
+        assertEquals(Integer.valueOf(2), importResponse.getFailures().get(1).getChunk());
+
+        assertEquals(productsCount + 3, customerProductsService.getProductsCount(customerId));
+        assertEquals(productsCount + 3, customerProductsService.getProductsByCustomerId(customerId,
+            PageRequest.of(0, 100)).getTotalElements());
+    }
+
+    @Test
+    public void importCustomersFromCsvTest() throws Exception {
+
+        long customersCount = customerProductsService.getCustomersCount();
+
+        ImportResponse importResponse = catalogImportService.importCustomers(payload(
+            "title,isDeleted,createdAt\n"
+                + "Imported customer 1,false,2020-05-01T10:15:30\n"
+                + "Imported customer 2,false,\n"
+                + "Imported customer 3,true,2020-05-03T08:00:00\n"), Format.CSV);
+
+        assertEquals(Long.valueOf(3L), importResponse.getRowsImported());
+        assertEquals(Integer.valueOf(2), importResponse.getChunksCommitted());
+        assertTrue(importResponse.getFailures().isEmpty());
+        assertEquals(customersCount + 3, customerProductsService.getCustomersCount());
+    }
+
+    @Test
+    public void importStopsOnMalformedPayloadTest() throws Exception {
+
+        ImportResponse importResponse = catalogImportService.importCustomers(payload(
+            "{\"title\":\"Imported customer before malformed row\"}\n"
+                + "{\"title\" \"Malformed\"}\n"
+                + "{\"title\":\"Never read\"}\n"), Format.NDJSON);
+
+        assertFalse(importResponse.getCompleted());
+        assertEquals(Long.valueOf(1L), importResponse.getRowsImported());
+        assertEquals(1, importResponse.getFailures().size());
+        assertTrue(importResponse.getFailures().get(0).getMessages().get(0).contains("import stopped"));
+    }
+
+    private static InputStream payload(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -4,28 +4,76 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.ptr.orders.app.config.MetricsAspect;
+import org.ptr.orders.app.dao.CustomersRepository;
+import org.ptr.orders.app.dao.ProductsRepository;
+import org.ptr.orders.app.model.ChangePosition;
+import org.ptr.orders.app.model.ChangedEntity;
+import org.ptr.orders.app.model.ProductTitle;
+import org.ptr.orders.app.model.VersionStamp;
+import org.ptr.orders.app.rest.dto.ChangeResponse;
 import org.ptr.orders.app.rest.dto.CustomerRequest;
 import org.ptr.orders.app.rest.dto.CustomerResponse;
+import org.ptr.orders.app.rest.dto.ProductEvent;
 import org.ptr.orders.app.rest.dto.ProductRequest;
 import org.ptr.orders.app.rest.dto.ProductResponse;
+import org.ptr.orders.app.rest.dto.ProductStatsResponse;
+import org.ptr.orders.app.rest.dto.WriteBehindStatsResponse;
 import org.ptr.orders.app.service.CustomerProductsService;
+import org.ptr.orders.app.service.ProductEventPublisher;
+import org.ptr.orders.app.service.ProductPriceIndex;
+import org.ptr.orders.app.service.ProductSearchIndex;
+import org.ptr.orders.app.service.ProductWriteBehind;
+import org.ptr.orders.app.service.SoftDeletePurgeJob;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.interceptor.BeanFactoryCacheOperationSourceAdvisor;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.interceptor.BeanFactoryTransactionAttributeSourceAdvisor;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest
@@ -35,6 +83,32 @@ public class CustomerProductsServiceTest {
     public static final List<Long> CUSTOMER_ID_LIST = Arrays.asList(1L, 2L, 3L, 4L);
     @Autowired
     private CustomerProductsService customerProductsService;
+    @Autowired
+    private CacheManager cacheManager;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private SoftDeletePurgeJob softDeletePurgeJob;
+    @Autowired
+    private ProductSearchIndex productSearchIndex;
+    @Autowired
+    private ProductPriceIndex productPriceIndex;
+    @Autowired
+    private ProductEventPublisher productEventPublisher;
+    @Autowired
+    private ProductWriteBehind productWriteBehind;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    private CustomersRepository customersRepository;
+    @Autowired
+    private ProductsRepository productsRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private BeanFactoryCacheOperationSourceAdvisor cacheAdvisor;
+    @Autowired
+    private BeanFactoryTransactionAttributeSourceAdvisor transactionAdvisor;
     @Test
     public void getAllCustomersTest() throws Exception {
 
@@ -46,6 +120,620 @@ public class CustomerProductsServiceTest {
         assertTrue(customerDtoPage.getTotalElements() > 0 );
     }
 
+    @Test
+    public void getCustomersAfterTest() throws Exception {
+
+        int size = 2;
+        List<Long> seenIds = new ArrayList<>();
+        Slice<CustomerResponse> customerSlice = customerProductsService.getCustomersAfter(null, size);
+        customerSlice.getContent().forEach(c -> seenIds.add(c.getId()));
+        while (customerSlice.hasNext()) {
+            List<CustomerResponse> content = customerSlice.getContent();
+            customerSlice = customerProductsService.getCustomersAfter(content.get(content.size() - 1).getId(), size);
+            assertTrue(customerSlice.getContent().size() <= size);
+            customerSlice.getContent().forEach(c -> {
+                assertTrue(c.getId() > seenIds.get(seenIds.size() - 1));
+                seenIds.add(c.getId());
+            });
+        }
+        assertTrue(seenIds.containsAll(CUSTOMER_ID_LIST));
+    }
+
+    @Test
+    public void getProductsByCustomerIdAfterTest() throws Exception {
+
+        final Long customerId = 2L;
+        Slice<ProductResponse> firstSlice = customerProductsService.getProductsByCustomerIdAfter(customerId, null, 1);
+        assertEquals(1, firstSlice.getContent().size());
+        assertTrue(firstSlice.hasNext());
+        Long firstId = firstSlice.getContent().get(0).getId();
+
+        Slice<ProductResponse> nextSlice = customerProductsService.getProductsByCustomerIdAfter(customerId, firstId, 1);
+        assertEquals(1, nextSlice.getContent().size());
+        assertEquals(customerId, nextSlice.getContent().get(0).getCustomerId());
+        assertTrue(nextSlice.getContent().get(0).getId() > firstId);
+    }
+
+    @Test
+    public void getCustomersSliceTest() throws Exception {
+
+        Slice<CustomerResponse> customerSlice = customerProductsService.getCustomersSlice(PageRequest.of(0, 2));
+        assertEquals(2, customerSlice.getContent().size());
+        assertTrue(customerSlice.hasNext());
+        assertTrue(customerProductsService.getCustomersCount() >= 2);
+    }
+
+    @Test
+    public void cachedCountsFollowCreateAndDeleteTest() throws Exception {
+
+        final Long customerId = 4L;
+        long customersCount = customerProductsService.getCustomersCount();
+        long productsCount = customerProductsService.getProductsCount(customerId);
+        assertEquals(productsCount, customerProductsService.getProductsSliceByCustomerId(customerId,
+            PageRequest.of(0, 100)).getContent().size());
+
+        CustomerResponse customer = customerProductsService.createCustomer(CustomerRequest.builder()
+            .title("Counted customer").isDeleted(Boolean.FALSE).createdAt(LocalDateTime.now()).build());
+        assertEquals(customersCount + 1, customerProductsService.getCustomersCount());
+
+        ProductResponse product = customerProductsService.createProduct(customerId, ProductRequest.builder()
+            .title("Counted product").price(BigDecimal.TEN).isDeleted(Boolean.FALSE).build());
+        assertEquals(productsCount + 1, customerProductsService.getProductsCount(customerId));
+
+        customerProductsService.deleteProduct(product.getId());
+        assertEquals(productsCount, customerProductsService.getProductsCount(customerId));
+        customerProductsService.deleteCustomer(customer.getId());
+        assertEquals(customersCount, customerProductsService.getCustomersCount());
+    }
+
+    @Test
+    public void productStatsFollowWritesTest() throws Exception {
+
+        CustomerResponse customer = customerProductsService.createCustomer(CustomerRequest.builder()
+            .title("Stats customer").build());
+        final Long customerId = customer.getId();
+        assertEquals(Long.valueOf(0L), customerProductsService.getProductStats(customerId).getProductCount());
+
+        List<Long> productIds = customerProductsService.createProducts(customerId, Arrays.asList(
+            ProductRequest.builder().title("Stats product 1").price(new BigDecimal("1000000")).build(),
+            ProductRequest.builder().title("Stats product 2").price(new BigDecimal("2000000")).build(),
+            ProductRequest.builder().title("Stats product 3").build()));
+        ProductStatsResponse stats = customerProductsService.getProductStats(customerId);
+        assertEquals(Long.valueOf(3L), stats.getProductCount());
+        assertEquals(0, new BigDecimal("3000000").compareTo(stats.getTotalPrice()));
+        assertEquals(0, new BigDecimal("1500000").compareTo(stats.getAveragePrice()));
+        assertEquals(customerId, customerProductsService.getTopCustomersByTotalPrice(1).get(0).getCustomerId());
+
+        customerProductsService.updateProduct(productIds.get(1), ProductRequest.builder()
+            .price(new BigDecimal("500000")).build());
+        stats = customerProductsService.getProductStats(customerId);
+        assertEquals(0, new BigDecimal("1500000").compareTo(stats.getTotalPrice()));
+        assertEquals(0, new BigDecimal("500000").compareTo(stats.getMinPrice()));
+        assertEquals(0, new BigDecimal("1000000").compareTo(stats.getMaxPrice()));
+
+        customerProductsService.patchProduct(productIds.get(2), ProductRequest.builder()
+            .price(new BigDecimal("4000000")).build(), null);
+        customerProductsService.deleteProduct(productIds.get(0));
+        stats = customerProductsService.getProductStats(customerId);
+        assertEquals(Long.valueOf(2L), stats.getProductCount());
+        assertEquals(0, new BigDecimal("4500000").compareTo(stats.getTotalPrice()));
+        assertEquals(0, new BigDecimal("4000000").compareTo(stats.getMaxPrice()));
+        assertEquals(stats, customerProductsService.getTopCustomersByTotalPrice(1).get(0));
+
+        customerProductsService.deleteCustomer(customerId);
+        assertTrue(customerProductsService.getTopCustomersByTotalPrice(100).stream()
+            .noneMatch(top -> customerId.equals(top.getCustomerId())));
+    }
+
+    @Test
+    public void rolledBackWritesLeaveCachesAndIndexesTest() throws Exception {
+
+        final Long customerId = customerProductsService.createCustomer(CustomerRequest.builder()
+            .title("Rollback customer").build()).getId();
+        List<Long> productIds = customerProductsService.createProducts(customerId, Arrays.asList(
+            ProductRequest.builder().title("Rollback alpha").price(new BigDecimal("10")).build(),
+            ProductRequest.builder().title("Rollback beta").price(new BigDecimal("20")).build()));
+        ProductStatsResponse stats = customerProductsService.getProductStats(customerId);
+        customerProductsService.getProductsByCustomerIdAndPrice(customerId, null, null, false, PageRequest.of(0, 10));
+
+        new TransactionTemplate(transactionManager).execute(status -> {
+            customerProductsService.updateProduct(productIds.get(0), ProductRequest.builder()
+                .title("Rollback gamma").price(new BigDecimal("30")).build());
+            customerProductsService.deleteProduct(productIds.get(1));
+            customerProductsService.createProducts(customerId, Collections.singletonList(
+                ProductRequest.builder().title("Rollback delta").price(new BigDecimal("40")).build()));
+            status.setRollbackOnly();
+            return null;
+        });
+
+        assertEquals(stats, customerProductsService.getProductStats(customerId));
+        assertEquals(2L, customerProductsService.getProductsCount(customerId));
+        assertEquals(0L, customerProductsService.searchProducts("rollback gamma", customerId,
+            PageRequest.of(0, 10)).getTotalElements());
+        assertEquals(2L, customerProductsService.searchProducts("rollback", customerId,
+            PageRequest.of(0, 10)).getTotalElements());
+        assertEquals(productIds, customerProductsService.getProductsByCustomerIdAndPrice(customerId, null, null,
+            false, PageRequest.of(0, 10)).getContent().stream().map(ProductResponse::getId)
+            .collect(Collectors.toList()));
+    }
+
+    @Test
+    public void searchProductsByTitleTest() throws Exception {
+
+        final Long customerId = customerProductsService.createCustomer(CustomerRequest.builder()
+            .title("Search customer").build()).getId();
+        List<Long> productIds = customerProductsService.createProducts(customerId, Arrays.asList(
+            ProductRequest.builder().title("Quantum widgetry kit").price(BigDecimal.ONE).build(),
+            ProductRequest.builder().title("Quantum widget").price(BigDecimal.ONE).build(),
+            ProductRequest.builder().title("Quantum gadget").price(BigDecimal.ONE).build()));
+
+        Page<ProductResponse> found = customerProductsService.searchProducts("QUANT wid", customerId,
+            PageRequest.of(0, 1));
+        assertEquals(2L, found.getTotalElements());
+        assertEquals(productIds.get(1), found.getContent().get(0).getId());
+        assertEquals(productIds.get(0), customerProductsService.searchProducts("quantum wid", customerId,
+            PageRequest.of(1, 1)).getContent().get(0).getId());
+        assertEquals(3L, customerProductsService.searchProducts("quantum", null, PageRequest.of(0, 10))
+            .getTotalElements());
+
+        customerProductsService.updateProduct(productIds.get(2), ProductRequest.builder()
+            .title("Quantum sprocket").build());
+        customerProductsService.deleteProduct(productIds.get(0));
+        assertTrue(productSearchIndex.rebuild() > 0);
+        assertEquals(0L, customerProductsService.searchProducts("gadget", customerId, PageRequest.of(0, 10))
+            .getTotalElements());
+        assertEquals(productIds.get(2), customerProductsService.searchProducts("sproc", null, PageRequest.of(0, 10))
+            .getContent().get(0).getId());
+        assertEquals(1L, customerProductsService.searchProducts("quantum wid", null, PageRequest.of(0, 10))
+            .getTotalElements());
+
+        customerProductsService.deleteCustomer(customerId);
+        assertEquals(0L, customerProductsService.searchProducts("quantum", null, PageRequest.of(0, 10))
+            .getTotalElements());
+    }
+
+    @Test
+    public void searchIndexBuildReplaysTitlesAndIsRetriedTest() throws Exception {
+
+        ProductsRepository buildRepository = Mockito.mock(ProductsRepository.class);
+        ProductSearchIndex buildIndex = new ProductSearchIndex();
+        buildIndex.setProductsRepository(buildRepository);
+        ReflectionTestUtils.setField(buildIndex, "buildOnStartup", true);
+        ReflectionTestUtils.setField(buildIndex, "buildThreads", 1);
+        ReflectionTestUtils.setField(buildIndex, "buildBatchSize", 10);
+        ReflectionTestUtils.setField(buildIndex, "buildRetryMillis", 10L);
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Mockito.when(buildRepository.findMaxId()).thenThrow(new IllegalStateException("database unavailable"))
+            .thenReturn(2L);
+        Mockito.when(buildRepository.findProductTitles(ArgumentMatchers.anyLong(), ArgumentMatchers.anyLong(),
+            ArgumentMatchers.any(Pageable.class))).thenAnswer(invocation -> {
+                reading.countDown();
+                release.await();
+                return Arrays.asList(new ProductTitle(1L, 1L, "Nebula lamp"), new ProductTitle(2L, 1L, "Comet lamp"));
+            });
+
+        buildIndex.buildOnStartup();
+        assertTrue(reading.await(5L, TimeUnit.SECONDS));
+        buildIndex.updateTitle(1L, "Nebula desk");
+        buildIndex.remove(2L);
+        release.countDown();
+        for (int i = 0; i < 500 && !buildIndex.isReady(); i++) {
+            Thread.sleep(10L);
+        }
+        assertTrue(buildIndex.isReady());
+        assertEquals(Collections.singletonList(1L), buildIndex.search("desk", null, 0, 10).getProductIds());
+        assertEquals(0L, buildIndex.search("lamp", null, 0, 10).getTotal());
+    }
+
+    @Test
+    public void productsByPriceRangeTest() throws Exception {
+
+        final Long customerId = customerProductsService.createCustomer(CustomerRequest.builder()
+            .title("Price range customer").build()).getId();
+        List<Long> productIds = customerProductsService.createProducts(customerId, Arrays.asList(
+            ProductRequest.builder().title("Price range 1").price(new BigDecimal("5.00")).build(),
+            ProductRequest.builder().title("Price range 2").price(new BigDecimal("1.50")).build(),
+            ProductRequest.builder().title("Price range 3").build(),
+            ProductRequest.builder().title("Price range 4").price(new BigDecimal("3.25")).build(),
+            ProductRequest.builder().title("Price range 5").price(new BigDecimal("3.25")).build()));
+
+        assertEquals(Arrays.asList(productIds.get(1), productIds.get(3), productIds.get(4), productIds.get(0),
+            productIds.get(2)), idsOf(customerProductsService.getProductsByCustomerIdAndPrice(customerId, null, null,
+            false, PageRequest.of(0, 10))));
+        Page<ProductResponse> range = customerProductsService.getProductsByCustomerIdAndPrice(customerId,
+            new BigDecimal("1.5"), new BigDecimal("3.251"), true, PageRequest.of(0, 2));
+        assertEquals(3L, range.getTotalElements());
+        assertEquals(Arrays.asList(productIds.get(4), productIds.get(3)), idsOf(range));
+
+        customerProductsService.patchProduct(productIds.get(0), ProductRequest.builder()
+            .price(new BigDecimal("0.99")).build(), null);
+        customerProductsService.deleteProduct(productIds.get(3));
+        customerProductsService.createProduct(customerId, ProductRequest.builder().title("Price range 6")
+            .price(new BigDecimal("2.00")).build());
+        Page<ProductResponse> cheapest = customerProductsService.getProductsByCustomerIdAndPrice(customerId, null,
+            new BigDecimal("2"), false, PageRequest.of(0, 10));
+        assertEquals(3L, cheapest.getTotalElements());
+        assertEquals(productIds.get(0), cheapest.getContent().get(0).getId());
+
+        ReflectionTestUtils.setField(productPriceIndex, "maxProductsPerCustomer", 0);
+        try {
+            ((Map<?, ?>) ReflectionTestUtils.getField(productPriceIndex, "pricesByCustomer")).clear();
+            assertEquals(idsOf(cheapest), idsOf(customerProductsService.getProductsByCustomerIdAndPrice(customerId,
+                null, new BigDecimal("2"), false, PageRequest.of(0, 10))));
+        } finally {
+            ReflectionTestUtils.setField(productPriceIndex, "maxProductsPerCustomer", 100000);
+        }
+        assertEquals(Collections.singletonList(productIds.get(4)), idsOf(customerProductsService
+            .getProductsByCustomerIdAndPrice(customerId, new BigDecimal("3"), null, false, PageRequest.of(0, 10))));
+        customerProductsService.patchProduct(productIds.get(1), ProductRequest.builder()
+            .price(new BigDecimal("4.00")).build(), null);
+        assertEquals(Arrays.asList(productIds.get(4), productIds.get(1)), idsOf(customerProductsService
+            .getProductsByCustomerIdAndPrice(customerId, new BigDecimal("3"), null, false, PageRequest.of(0, 10))));
+
+        final Long emptyCustomerId = customerProductsService.createCustomer(CustomerRequest.builder()
+            .title("Price range empty customer").build()).getId();
+        Map<?, ?> pricesByCustomer = (Map<?, ?>) ReflectionTestUtils.getField(productPriceIndex, "pricesByCustomer");
+        for (Long unindexedId : Arrays.asList(emptyCustomerId, Long.MAX_VALUE)) {
+            assertEquals(0L, customerProductsService.getProductsByCustomerIdAndPrice(unindexedId, null, null, false,
+                PageRequest.of(0, 10)).getTotalElements());
+            assertFalse(pricesByCustomer.containsKey(unindexedId));
+        }
+        customerProductsService.createProduct(emptyCustomerId, ProductRequest.builder().title("Price range 7")
+            .price(BigDecimal.ONE).build());
+        assertEquals(1L, customerProductsService.getProductsByCustomerIdAndPrice(emptyCustomerId, null, null, false,
+            PageRequest.of(0, 10)).getTotalElements());
+        assertTrue(pricesByCustomer.containsKey(emptyCustomerId));
+    }
+
+    @Test
+    public void writeBehindCoalescesProductUpdatesTest() throws Exception {
+
+        final Long customerId = customerProductsService.createCustomer(CustomerRequest.builder()
+            .title("Write-behind customer").build()).getId();
+        List<Long> productIds = customerProductsService.createProducts(customerId, Arrays.asList(
+            ProductRequest.builder().title("Write-behind 1").price(new BigDecimal("1.00")).build(),
+            ProductRequest.builder().title("Write-behind 2").price(new BigDecimal("2.00")).build()));
+        final Long hotId = productIds.get(0);
+        final Long deletedId = productIds.get(1);
+        assertEquals("Write-behind 1", customerProductsService.getProductById(hotId).getTitle());
+
+        assertFalse(productWriteBehind.submit(hotId, ProductRequest.builder().price(BigDecimal.TEN).build()));
+        ReflectionTestUtils.setField(productWriteBehind, "enabled", true);
+        try {
+            for (int tick = 1; tick <= 5; tick++) {
+                assertTrue(productWriteBehind.submit(hotId, ProductRequest.builder()
+                    .price(new BigDecimal(tick + ".50")).build()));
+            }
+            assertTrue(productWriteBehind.submit(hotId, ProductRequest.builder().title("Write-behind hot").build()));
+            assertTrue(productWriteBehind.submit(deletedId, ProductRequest.builder().title("Lost").build()));
+            assertEquals(new BigDecimal("1.00"), customerProductsService.getProductById(hotId).getPrice());
+            customerProductsService.deleteProduct(deletedId);
+
+            WriteBehindStatsResponse before = productWriteBehind.getStats();
+            productWriteBehind.flush();
+            WriteBehindStatsResponse stats = productWriteBehind.getStats();
+            assertEquals(0L, stats.getPendingProducts().longValue());
+            assertEquals(1L, stats.getFlushedProducts() - before.getFlushedProducts());
+            assertEquals(1L, stats.getMissingProducts() - before.getMissingProducts());
+            assertTrue(stats.getCoalescingRatio() > 1.0);
+
+            ProductResponse hot = customerProductsService.getProductById(hotId);
+            assertEquals("Write-behind hot", hot.getTitle());
+            assertEquals(0, new BigDecimal("5.50").compareTo(hot.getPrice()));
+            Page<ProductResponse> repriced = customerProductsService.getProductsByCustomerIdAndPrice(customerId,
+                new BigDecimal("5"), null, false, PageRequest.of(0, 10));
+            assertEquals(Collections.singletonList(hotId), idsOf(repriced));
+        } finally {
+            ReflectionTestUtils.setField(productWriteBehind, "enabled", false);
+        }
+    }
+
+    @Test
+    public void writeBehindDeadLettersFailingUpdatesTest() throws Exception {
+
+        final Long customerId = customerProductsService.createCustomer(CustomerRequest.builder()
+            .title("Write-behind failing customer").build()).getId();
+        List<Long> productIds = customerProductsService.createProducts(customerId, Arrays.asList(
+            ProductRequest.builder().title("Write-behind good").price(BigDecimal.ONE).build(),
+            ProductRequest.builder().title("Write-behind poison").price(BigDecimal.ONE).build()));
+        final Long goodId = productIds.get(0);
+        final Long poisonId = productIds.get(1);
+        String tooLongTitle = StringUtils.repeat('x', 300);
+
+        ReflectionTestUtils.setField(productWriteBehind, "enabled", true);
+        try {
+            assertTrue(productWriteBehind.submit(goodId, ProductRequest.builder().price(BigDecimal.TEN).build()));
+            assertTrue(productWriteBehind.submit(poisonId, ProductRequest.builder().title(tooLongTitle).build()));
+            WriteBehindStatsResponse before = productWriteBehind.getStats();
+
+            productWriteBehind.flush();
+            assertEquals(0, BigDecimal.TEN.compareTo(customerProductsService.getProductById(goodId).getPrice()));
+            WriteBehindStatsResponse stats = productWriteBehind.getStats();
+            assertEquals(1L, stats.getPendingProducts().longValue());
+            assertEquals(1L, stats.getFailedProducts() - before.getFailedProducts());
+
+            productWriteBehind.flush();
+            productWriteBehind.flush();
+            stats = productWriteBehind.getStats();
+            assertEquals(0L, stats.getPendingProducts().longValue());
+            assertEquals(3L, stats.getFailedProducts() - before.getFailedProducts());
+            assertEquals(1L, stats.getDeadLetteredProducts() - before.getDeadLetteredProducts());
+            assertEquals(1L, stats.getFlushedProducts() - before.getFlushedProducts());
+            assertEquals("Write-behind poison", customerProductsService.getProductById(poisonId).getTitle());
+        } finally {
+            ReflectionTestUtils.setField(productWriteBehind, "enabled", false);
+        }
+    }
+
+    @Test
+    public void serviceRepositoryAndMappingCallsAreTimedTest() throws Exception {
+
+        final Long customerId = customerProductsService.createCustomer(CustomerRequest.builder()
+            .title("Timed customer").build()).getId();
+        long serviceCalls = timerCount(MetricsAspect.SERVICE_TIMER, "createProduct");
+        long repositoryCalls = timerCount(MetricsAspect.REPOSITORY_TIMER, "findByIdAndIsDeletedFalse");
+        long mappingCalls = timerCount(MetricsAspect.MAPPING_TIMER, "map");
+
+        customerProductsService.createProduct(customerId, ProductRequest.builder().title("Timed product").build());
+
+        assertEquals(serviceCalls + 1, timerCount(MetricsAspect.SERVICE_TIMER, "createProduct"));
+        assertTrue(timerCount(MetricsAspect.REPOSITORY_TIMER, "findByIdAndIsDeletedFalse") > repositoryCalls);
+        assertTrue(timerCount(MetricsAspect.MAPPING_TIMER, "map") > mappingCalls);
+        assertNotNull(meterRegistry.find(MetricsAspect.REPOSITORY_TIMER).tag("class", "CustomersRepository").timer());
+
+        for (int call = 1; call <= 2; call++) {
+            try {
+                customerProductsService.getProductById(Long.MAX_VALUE);
+                fail("missing product must not be found");
+            } catch (NoSuchElementException e) {
+                assertEquals(call, meterRegistry.get(MetricsAspect.SERVICE_TIMER).tag("method", "getProductById")
+                    .tag("exception", NoSuchElementException.class.getSimpleName()).timer().count());
+            }
+        }
+        customersRepository.existsById(customerId);
+        productsRepository.existsById(customerId);
+        for (String repository : Arrays.asList("CustomersRepository", "ProductsRepository")) {
+            assertTrue(meterRegistry.get(MetricsAspect.REPOSITORY_TIMER).tag("class", repository)
+                .tag("method", "existsById").timer().count() > 0);
+        }
+        assertNotNull(meterRegistry.find("hibernate.statements").functionCounter());
+        assertNotNull(meterRegistry.find("hikaricp.connections.acquire").timer());
+    }
+
+    @Test
+    public void serviceCallsStayWithinQueryBudgetTest() throws Exception {
+
+        final Long customerId = customerProductsService.createCustomer(CustomerRequest.builder()
+            .title("Query budget customer").build()).getId();
+        List<ProductRequest> productRequests = IntStream.range(0, 120).mapToObj(i -> ProductRequest.builder()
+            .title("Query budget " + i).price(BigDecimal.valueOf(i)).build()).collect(Collectors.toList());
+
+        SqlStatementCounter.start();
+        List<Long> productIds = customerProductsService.createProducts(customerId, productRequests);
+        SqlStatementCounter.assertStatements(1, 1, 0, 0);
+
+        SqlStatementCounter.start();
+        Long productId = customerProductsService.createProduct(customerId, productRequests.get(0)).getId();
+        SqlStatementCounter.assertStatements(1, 1, 0, 0);
+
+        cacheManager.getCache(CustomerProductsService.CUSTOMERS_CACHE).evict(customerId);
+        cacheManager.getCache(CustomerProductsService.PRODUCTS_CACHE).evict(productIds.get(0));
+        SqlStatementCounter.start();
+        customerProductsService.getCustomerById(customerId);
+        customerProductsService.getProductById(productIds.get(0));
+        SqlStatementCounter.assertStatements(2, 0, 0, 0);
+
+        SqlStatementCounter.start();
+        assertEquals(121, customerProductsService.getProductsByCustomerId(customerId, PageRequest.of(0, 200))
+            .getNumberOfElements());
+        SqlStatementCounter.assertStatements(1, 0, 0, 0);
+
+        SqlStatementCounter.start();
+        customerProductsService.updateCustomer(customerId, CustomerRequest.builder().title("Query budget").build());
+        SqlStatementCounter.assertStatements(1, 0, 1, 0);
+
+        SqlStatementCounter.start();
+        customerProductsService.updateProduct(productId, ProductRequest.builder().price(BigDecimal.ONE).build());
+        SqlStatementCounter.assertStatements(1, 0, 1, 0);
+
+        SqlStatementCounter.start();
+        customerProductsService.patchProduct(productId, ProductRequest.builder().price(BigDecimal.TEN).build(), null);
+        SqlStatementCounter.assertStatements(1, 0, 1, 0);
+
+        SqlStatementCounter.start();
+        customerProductsService.deleteProduct(productId);
+        SqlStatementCounter.assertStatements(1, 0, 1, 0);
+
+        SqlStatementCounter.start();
+        customerProductsService.deleteCustomer(customerId);
+        SqlStatementCounter.assertStatements(0, 0, 2, 0);
+    }
+
+    private long timerCount(String name, String method) {
+        return meterRegistry.find(name).tag("method", method).timers().stream().mapToLong(Timer::count).sum();
+    }
+
+    private static List<Long> idsOf(Page<ProductResponse> products) {
+        return products.getContent().stream().map(ProductResponse::getId).collect(Collectors.toList());
+    }
+
+    @Test
+    public void changeFeedFollowsWritesTest() throws Exception {
+
+        Object service = AopTestUtils.getUltimateTargetObject(customerProductsService);
+        ReflectionTestUtils.setField(service, "changesSettleMillis", 0L);
+        try {
+            final Long customerId = customerProductsService.createCustomer(CustomerRequest.builder()
+                .title("Change feed customer").build()).getId();
+            List<Long> productIds = customerProductsService.createProducts(customerId, Arrays.asList(
+                ProductRequest.builder().title("Change feed product 1").price(BigDecimal.ONE).build(),
+                ProductRequest.builder().title("Change feed product 2").price(BigDecimal.TEN).build()));
+            customerProductsService.patchProduct(productIds.get(0), ProductRequest.builder()
+                .modifiedAt(LocalDateTime.of(2000, 1, 1, 0, 0)).price(BigDecimal.ZERO).build(), null);
+            customerProductsService.deleteProduct(productIds.get(1));
+            ChangePosition start = new ChangePosition(customersRepository.findById(customerId).get().getChangedAt()
+                .minus(1, ChronoUnit.MICROS), ChangedEntity.CUSTOMER, 0L);
+
+            Slice<ChangeResponse> changes = customerProductsService.getChanges(start, 2);
+            assertTrue(changes.hasNext());
+            assertEquals(customerId, changes.getContent().get(0).getId());
+            assertEquals(ChangeResponse.Operation.CREATED, changes.getContent().get(0).getOperation());
+            ChangeResponse patched = changes.getContent().get(1);
+            assertEquals(productIds.get(0), patched.getId());
+            assertEquals(ChangeResponse.Operation.UPDATED, patched.getOperation());
+            assertTrue(patched.getChangedAt().isAfter(changes.getContent().get(0).getChangedAt()));
+
+            changes = customerProductsService.getChanges(new ChangePosition(patched.getChangedAt(),
+                patched.getEntity(), patched.getId()), 2);
+            assertFalse(changes.hasNext());
+            assertEquals(1, changes.getNumberOfElements());
+            assertEquals(productIds.get(1), changes.getContent().get(0).getId());
+            assertEquals(ChangeResponse.Operation.DELETED, changes.getContent().get(0).getOperation());
+        } finally {
+            ReflectionTestUtils.setField(service, "changesSettleMillis", 1000L);
+        }
+    }
+
+    @Test
+    public void changeFeedHoldsBackChangesAfterOpenTransactionTest() throws Exception {
+
+        Object service = AopTestUtils.getUltimateTargetObject(customerProductsService);
+        ReflectionTestUtils.setField(service, "changesSettleMillis", 0L);
+        CountDownLatch stamped = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            final Long customerId = customerProductsService.createCustomer(CustomerRequest.builder()
+                .title("Open transaction customer").build()).getId();
+            List<Long> productIds = customerProductsService.createProducts(customerId, Arrays.asList(
+                ProductRequest.builder().title("Committed late").price(BigDecimal.ONE).build(),
+                ProductRequest.builder().title("Committed early").price(BigDecimal.ONE).build()));
+            ChangePosition start = new ChangePosition(customersRepository.findById(customerId).get().getChangedAt()
+                .minus(1, ChronoUnit.MICROS), ChangedEntity.CUSTOMER, 0L);
+
+            Thread late = new Thread(() -> new TransactionTemplate(transactionManager).execute(status -> {
+                customerProductsService.updateProduct(productIds.get(0), ProductRequest.builder()
+                    .price(BigDecimal.TEN).build());
+                productsRepository.flush();
+                stamped.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return null;
+            }));
+            late.start();
+            assertTrue(stamped.await(5L, TimeUnit.SECONDS));
+            customerProductsService.updateProduct(productIds.get(1), ProductRequest.builder()
+                .price(BigDecimal.TEN).build());
+
+            List<ChangeResponse> whileOpen = customerProductsService.getChanges(start, 10).getContent();
+            assertTrue(whileOpen.stream().noneMatch(change -> productIds.get(1).equals(change.getId())));
+            assertTrue(whileOpen.stream().anyMatch(change -> productIds.get(0).equals(change.getId())
+                && change.getOperation() == ChangeResponse.Operation.CREATED));
+
+            release.countDown();
+            late.join();
+            List<Long> afterCommit = customerProductsService.getChanges(start, 10).getContent().stream()
+                .filter(change -> change.getEntity() == ChangedEntity.PRODUCT
+                    && change.getOperation() == ChangeResponse.Operation.UPDATED)
+                .map(ChangeResponse::getId)
+                .collect(Collectors.toList());
+            assertEquals(productIds, afterCommit);
+        } finally {
+            release.countDown();
+            ReflectionTestUtils.setField(service, "changesSettleMillis", 1000L);
+        }
+    }
+
+    @Test
+    public void productEventsArePushedAndCoalescedTest() throws Exception {
+
+        final Long customerId = customerProductsService.createCustomer(CustomerRequest.builder()
+            .title("Events customer").build()).getId();
+        final Long otherCustomerId = customerProductsService.createCustomer(CustomerRequest.builder()
+            .title("Other events customer").build()).getId();
+        RecordingEmitter emitter = new RecordingEmitter();
+        ReflectionTestUtils.setField(productEventPublisher, "bufferSize", 2);
+        try {
+            assertTrue(productEventPublisher.subscribe(customerId, emitter));
+            Long firstId = customerProductsService.createProduct(customerId, ProductRequest.builder()
+                .title("Event product 1").price(BigDecimal.ONE).build()).getId();
+            assertTrue(emitter.sendStarted.await(5, TimeUnit.SECONDS));
+
+            customerProductsService.updateProduct(firstId, ProductRequest.builder().title("Event product 1b").build());
+            Long secondId = customerProductsService.createProduct(customerId, ProductRequest.builder()
+                .title("Event product 2").build()).getId();
+            customerProductsService.deleteProduct(secondId);
+            customerProductsService.createProduct(otherCustomerId, ProductRequest.builder()
+                .title("Other event product").build());
+            List<Long> createdIds = customerProductsService.createProducts(customerId, Arrays.asList(
+                ProductRequest.builder().title("Event product 3").build(),
+                ProductRequest.builder().title("Event product 4").build()));
+            emitter.released.countDown();
+
+            ProductEvent first = (ProductEvent) emitter.sent.poll(5, TimeUnit.SECONDS);
+            assertEquals(firstId, first.getProductId());
+            assertEquals(ChangeResponse.Operation.CREATED, first.getOperation());
+            assertEquals(1L, emitter.sent.poll(5, TimeUnit.SECONDS));
+            assertEquals(createdIds.get(0), ((ProductEvent) emitter.sent.poll(5, TimeUnit.SECONDS)).getProductId());
+            ProductEvent last = (ProductEvent) emitter.sent.poll(5, TimeUnit.SECONDS);
+            assertEquals(createdIds.get(1), last.getProductId());
+            assertEquals("Event product 4", last.getProduct().getTitle());
+
+            emitter.complete();
+            customerProductsService.deleteCustomer(customerId);
+            for (int attempt = 0; attempt < 50 && productEventPublisher.hasSubscribers(); attempt++) {
+                Thread.sleep(100);
+            }
+            assertFalse(productEventPublisher.hasSubscribers());
+        } finally {
+            emitter.released.countDown();
+            ReflectionTestUtils.setField(productEventPublisher, "bufferSize", 256);
+        }
+    }
+
+    @Test
+    public void softDeletedCustomerIsHiddenAndPurgedTest() throws Exception {
+
+        CustomerResponse customer = customerProductsService.createCustomer(CustomerRequest.builder()
+            .title("Soft deleted customer").isDeleted(Boolean.TRUE).build());
+        final Long customerId = customer.getId();
+        assertFalse(customer.getIsDeleted());
+        List<Long> productIds = customerProductsService.createProducts(customerId, Arrays.asList(
+            ProductRequest.builder().title("Soft deleted product 1").price(BigDecimal.ONE).build(),
+            ProductRequest.builder().title("Soft deleted product 2").price(BigDecimal.TEN).build()));
+        long customersCount = customerProductsService.getCustomersCount();
+
+        customerProductsService.deleteCustomer(customerId);
+        assertEquals(customersCount - 1, customerProductsService.getCustomersCount());
+        assertFalse(customersRepository.findByIdAndIsDeletedFalse(customerId).isPresent());
+        assertFalse(productsRepository.findByIdAndIsDeletedFalse(productIds.get(0)).isPresent());
+        assertEquals(0L, customerProductsService.getProductsByCustomerId(customerId, PageRequest.of(0, 10))
+            .getTotalElements());
+        assertTrue(customerProductsService.getCustomersAfter(customerId - 1, 1).getContent().stream()
+            .noneMatch(c -> customerId.equals(c.getId())));
+        try {
+            customerProductsService.getProductById(productIds.get(1));
+            fail("product of deleted customer must not be found");
+        } catch (NoSuchElementException e) {
+            assertTrue(productsRepository.existsById(productIds.get(1)));
+        }
+        try {
+            customerProductsService.deleteCustomer(customerId);
+            fail("customer must not be deleted twice");
+        } catch (NoSuchElementException e) {
+            log.trace(e.getMessage());
+        }
+
+        LocalDateTime deletedBefore = LocalDateTime.now().plusSeconds(1L);
+        assertTrue(softDeletePurgeJob.purge(deletedBefore) >= 3);
+        assertEquals(deletedBefore, customerProductsService.getChangesHorizon());
+        assertFalse(productsRepository.existsById(productIds.get(0)));
+        assertFalse(customersRepository.existsById(customerId));
+    }
+
     @Test
     public void getCustomerByIdTest() throws Exception {
 
@@ -60,6 +748,35 @@ public class CustomerProductsServiceTest {
         );
     }
 
+    @Test
+    public void getProductByIdCachedUntilUpdatedTest() throws Exception {
+
+        final Long productId = 8L;
+        CaffeineCache productsCache = (CaffeineCache) cacheManager.getCache(CustomerProductsService.PRODUCTS_CACHE);
+        productsCache.evict(productId);
+        CacheStats statsBefore = productsCache.getNativeCache().stats();
+
+        ProductResponse productResponse = customerProductsService.getProductById(productId);
+        assertEquals(productResponse, customerProductsService.getProductById(productId));
+        CacheStats stats = productsCache.getNativeCache().stats().minus(statsBefore);
+        assertEquals(1L, stats.missCount());
+        assertEquals(1L, stats.hitCount());
+
+        customerProductsService.updateProduct(productId, ProductRequest.builder().title("Cache evicted product").build());
+        assertEquals("Cache evicted product", customerProductsService.getProductById(productId).getTitle());
+        assertTrue("cache advice must evict outside of the transaction",
+            cacheAdvisor.getOrder() < transactionAdvisor.getOrder());
+
+        final Long racedId = -1L;
+        assertNull(productsCache.get(racedId));
+        productsCache.evict(racedId);
+        productsCache.put(racedId, productResponse);
+        assertNull("a put racing an eviction must be refused", productsCache.get(racedId));
+        productsCache.put(racedId, productResponse);
+        assertEquals(productResponse, productsCache.get(racedId).get());
+        productsCache.evict(racedId);
+    }
+
     @Test
     public void getProductsByCustomerIdTest() throws Exception {
 
@@ -78,6 +795,135 @@ public class CustomerProductsServiceTest {
             );
     }
 
+    @Test
+    public void lastModifiedFollowsUpdatesTest() throws Exception {
+
+        CustomerResponse customerResponse = customerProductsService.createCustomer(CustomerRequest.builder()
+            .title("Versioned customer").isDeleted(Boolean.FALSE).build());
+        final Long customerId = customerResponse.getId();
+        LocalDateTime createdAt = customerProductsService.getCustomerById(customerId).getCreatedAt();
+        assertNotNull(createdAt);
+
+        Thread.sleep(5L);
+        customerProductsService.updateCustomer(customerId, CustomerRequest.builder().title("Versioned again").build());
+        assertTrue(customerProductsService.getCustomerById(customerId).getModifiedAt().isAfter(createdAt));
+
+        VersionStamp emptyStamp = customerProductsService.getProductsVersion(customerId);
+        assertEquals(Long.valueOf(0L), emptyStamp.getDiscriminator());
+        ProductResponse productResponse = customerProductsService.createProduct(customerId, ProductRequest.builder()
+            .title("Versioned product").price(BigDecimal.ONE).isDeleted(Boolean.FALSE).build());
+        VersionStamp createdStamp = customerProductsService.getProductsVersion(customerId);
+        assertEquals(Long.valueOf(1L), createdStamp.getDiscriminator());
+        assertNotNull(createdStamp.getLastModified());
+
+        Thread.sleep(5L);
+        customerProductsService.updateProduct(productResponse.getId(),
+            ProductRequest.builder().price(BigDecimal.TEN).build());
+        VersionStamp updatedStamp = customerProductsService.getProductsVersion(customerId);
+        assertTrue(updatedStamp.getLastModified().isAfter(createdStamp.getLastModified()));
+        assertTrue(createdStamp.getCommittedAt() == null
+            || updatedStamp.getCommittedAt().isAfter(createdStamp.getCommittedAt()));
+
+        customerProductsService.deleteProduct(productResponse.getId());
+        VersionStamp deletedStamp = customerProductsService.getProductsVersion(customerId);
+        assertEquals(Long.valueOf(0L), deletedStamp.getDiscriminator());
+        assertTrue(deletedStamp.getLastModified().isAfter(updatedStamp.getLastModified()));
+    }
+
+    @Test
+    public void productsVersionMovesWithUpdateCommittedOutOfStampOrderTest() throws Exception {
+
+        final Long customerId = customerProductsService.createCustomer(CustomerRequest.builder()
+            .title("Out of order customer").isDeleted(Boolean.FALSE).build()).getId();
+        List<Long> productIds = customerProductsService.createProducts(customerId, Arrays.asList(
+            ProductRequest.builder().title("Committed late").price(BigDecimal.ONE).build(),
+            ProductRequest.builder().title("Committed early").price(BigDecimal.ONE).build()));
+
+        CountDownLatch stamped = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread late = new Thread(() -> new TransactionTemplate(transactionManager).execute(status -> {
+            customerProductsService.updateProduct(productIds.get(0), ProductRequest.builder().price(BigDecimal.TEN)
+                .build());
+            productsRepository.flush();
+            stamped.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }));
+        late.start();
+        assertTrue(stamped.await(5L, TimeUnit.SECONDS));
+        customerProductsService.updateProduct(productIds.get(1), ProductRequest.builder().price(BigDecimal.TEN)
+            .build());
+        VersionStamp beforeLateCommit = customerProductsService.getProductsVersion(customerId);
+
+        release.countDown();
+        late.join();
+        VersionStamp afterLateCommit = customerProductsService.getProductsVersion(customerId);
+        assertEquals(beforeLateCommit.getLastModified(), afterLateCommit.getLastModified());
+        assertEquals(beforeLateCommit.getDiscriminator(), afterLateCommit.getDiscriminator());
+        assertTrue(afterLateCommit.getCommittedAt().isAfter(beforeLateCommit.getCommittedAt()));
+    }
+
+    @Test
+    public void patchProductWithExpectedVersionTest() throws Exception {
+
+        ProductResponse productResponse = customerProductsService.createProduct(1L, ProductRequest.builder()
+            .title("Patched product").price(BigDecimal.ONE).isDeleted(Boolean.FALSE).build());
+        final Long productId = productResponse.getId();
+        ProductResponse created = customerProductsService.getProductById(productId);
+
+        customerProductsService.patchProduct(productId, ProductRequest.builder().price(BigDecimal.TEN).build(),
+            Collections.singletonList(created.getVersion()));
+        ProductResponse patched = customerProductsService.getProductById(productId);
+        assertEquals(Long.valueOf(created.getVersion() + 1), patched.getVersion());
+        assertTrue(patched.getModifiedAt().isAfter(created.getCreatedAt()));
+        assertEquals(0, BigDecimal.TEN.compareTo(patched.getPrice()));
+        assertEquals("Patched product", patched.getTitle());
+
+        try {
+            customerProductsService.patchProduct(productId, ProductRequest.builder().title("Lost update").build(),
+                Collections.singletonList(created.getVersion()));
+            fail("stale version must not be updated");
+        } catch (OptimisticLockingFailureException e) {
+            assertEquals("Patched product", customerProductsService.getProductById(productId).getTitle());
+        }
+
+        customerProductsService.patchProduct(productId, ProductRequest.builder().title("Listed version").build(),
+            Arrays.asList(created.getVersion(), patched.getVersion()));
+        assertEquals("Listed version", customerProductsService.getProductById(productId).getTitle());
+
+        customerProductsService.patchProduct(productId, ProductRequest.builder().title("Unconditional").build(), null);
+        assertEquals("Unconditional", customerProductsService.getProductById(productId).getTitle());
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void patchMissingCustomerTest() throws Exception {
+        customerProductsService.patchCustomer(-1L, CustomerRequest.builder().title("Missing").build(),
+            Collections.singletonList(0L));
+    }
+
+    @Test
+    public void exportProductsByCustomerIdTest() throws Exception {
+
+        final Long customerId = 3L;
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        long exported = customerProductsService.exportProductsByCustomerId(customerId, outputStream);
+
+        String[] lines = new String(outputStream.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        assertTrue(exported > 0);
+        assertEquals(exported, lines.length);
+        long previousId = 0L;
+        for (String line : lines) {
+            ProductResponse productResponse = objectMapper.readValue(line, ProductResponse.class);
+            assertEquals(customerId, productResponse.getCustomerId());
+            assertTrue(productResponse.getId() > previousId);
+            previousId = productResponse.getId();
+        }
+    }
+
     @Test
     public void createProductsForCustomerTest() throws Exception {
 
@@ -183,4 +1029,29 @@ public class CustomerProductsServiceTest {
         assertEquals(productResponse.getId(), updatedId);
         assertEquals(productResponse.getTitle(), titleUpdated);
     }
+
+    /**
+     * records data of every event sent, first send waits until released
+     * */
+    private static final class RecordingEmitter extends SseEmitter {
+
+        private final BlockingQueue<Object> sent = new LinkedBlockingQueue<>();
+        private final CountDownLatch sendStarted = new CountDownLatch(1);
+        private final CountDownLatch released = new CountDownLatch(1);
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            sendStarted.countDown();
+            try {
+                released.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            builder.build().stream()
+                .map(DataWithMediaType::getData)
+                .filter(data -> data instanceof ProductEvent || data instanceof Long)
+                .forEach(sent::add);
+            super.send(builder);
+        }
+    }
 }
\ No newline at end of file
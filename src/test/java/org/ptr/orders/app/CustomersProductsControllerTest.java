@@ -1,15 +1,30 @@
 package org.ptr.orders.app;
 
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import java.io.OutputStream;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
@@ -17,24 +32,39 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentMatchers;
+import org.mockito.InOrder;
 import org.ptr.orders.app.dao.CustomersRepository;
 import org.ptr.orders.app.dao.ProductsRepository;
+import org.ptr.orders.app.model.ChangePosition;
+import org.ptr.orders.app.model.ChangedEntity;
 import org.ptr.orders.app.model.Customer;
 import org.ptr.orders.app.model.Product;
+import org.ptr.orders.app.model.VersionStamp;
+import org.ptr.orders.app.rest.CursorCodec;
 import org.ptr.orders.app.rest.CustomersProductsController;
+import org.ptr.orders.app.rest.EntityValidator;
+import org.ptr.orders.app.rest.dto.ChangeResponse;
 import org.ptr.orders.app.rest.dto.CustomerResponse;
+import org.ptr.orders.app.rest.dto.ProductRequest;
 import org.ptr.orders.app.rest.dto.ProductResponse;
+import org.ptr.orders.app.rest.dto.ProductStatsResponse;
 import org.ptr.orders.app.service.CustomerProductsService;
+import org.ptr.orders.app.service.ProductWriteBehind;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
 
@@ -55,6 +85,9 @@ public class CustomersProductsControllerTest {
     @MockBean
     private ProductsRepository productsRepository;
 
+    @MockBean
+    private ProductWriteBehind productWriteBehind;
+
     private List<Customer> customerList;
     private List<CustomerResponse> customerResponseList;
     private List<Product> productList = new ArrayList<>();
@@ -143,17 +176,11 @@ public class CustomersProductsControllerTest {
     @Test
     public void testGetProductsByCustomer() throws Exception {
 
-        List<Product> customerOneProducts = productList.stream()
-            .filter( p-> p.getCustomer().getId() == 1)
-            .collect(Collectors.toList());
         List<ProductResponse> customerOneProductsDto = productResponseList.stream()
             .filter( p-> p.getCustomerId() == 1)
             .collect(Collectors.toList());
-        Page<Product> customerOneProductsPage = new PageImpl<>(customerOneProducts);
         Page<ProductResponse> customerOneProductsDtoPage = new PageImpl<>(customerOneProductsDto);
 
-        when(productsRepository.findProductsByCustomer_Id(anyLong(), ArgumentMatchers.any(Pageable.class)))
-            .thenReturn(customerOneProductsPage);
         when(customerProductsService.getProductsByCustomerId(anyLong(), ArgumentMatchers.any(Pageable.class)))
             .thenReturn(customerOneProductsDtoPage);
 
@@ -167,4 +194,334 @@ public class CustomersProductsControllerTest {
             .andExpect(jsonPath("$.productsList[1].customerId", is(1)))
             .andExpect(jsonPath("$.productsList[2].customerId", is(1)));
     }
+
+    @Test
+    public void testGetCustomersWithCursor() throws Exception {
+
+        when(customerProductsService.getCustomersAfter(isNull(), anyInt()))
+            .thenReturn(new SliceImpl<>(customerResponseList.subList(0, 2), Pageable.unpaged(), true));
+        when(customerProductsService.getCustomersAfter(eq(2L), anyInt()))
+            .thenReturn(new SliceImpl<>(customerResponseList.subList(2, 4), Pageable.unpaged(), false));
+
+        mvc.perform(MockMvcRequestBuilders
+            .get("/customers?after=&size=2")
+            .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.customersList[1].id", is(2)))
+            .andExpect(jsonPath("$.nextCursor", is(CursorCodec.encode(2L))));
+
+        mvc.perform(MockMvcRequestBuilders
+            .get("/customers?size=2&after=" + CursorCodec.encode(2L))
+            .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.customersList[0].id", is(3)))
+            .andExpect(jsonPath("$.nextCursor", nullValue()));
+
+        mvc.perform(MockMvcRequestBuilders
+            .get("/customers?after=not-a-cursor")
+            .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testGetProductsByCustomerWithoutExactCount() throws Exception {
+
+        List<ProductResponse> customerOneProductsDto = productResponseList.stream()
+            .filter( p-> p.getCustomerId() == 1)
+            .collect(Collectors.toList());
+        when(customerProductsService.getProductsSliceByCustomerId(anyLong(), ArgumentMatchers.any(Pageable.class)))
+            .thenReturn(new SliceImpl<>(customerOneProductsDto.subList(0, 2), PageRequest.of(0, 2), true));
+        when(customerProductsService.getProductsCount(1L)).thenReturn(5L);
+
+        mvc.perform(MockMvcRequestBuilders
+            .get("/customers/1/products?size=2&exactCount=false")
+            .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.currentPage", is(0)))
+            .andExpect(jsonPath("$.totalItems", is(5)))
+            .andExpect(jsonPath("$.hasNext", is(true)))
+            .andExpect(jsonPath("$.productsList[1].customerId", is(1)));
+    }
+
+    @Test
+    public void testExportProductsByCustomer() throws Exception {
+
+        doAnswer(invocation -> {
+            OutputStream outputStream = invocation.getArgument(1);
+            outputStream.write("{\"id\":1}\n{\"id\":3}\n".getBytes(StandardCharsets.UTF_8));
+            return 2L;
+        }).when(customerProductsService).exportProductsByCustomerId(eq(1L), ArgumentMatchers.any(OutputStream.class));
+
+        mvc.perform(MockMvcRequestBuilders
+            .get("/customers/1/products/export"))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType(CustomersProductsController.APPLICATION_NDJSON_VALUE))
+            .andExpect(content().string("{\"id\":1}\n{\"id\":3}\n"));
+    }
+
+    @Test
+    public void testGetCustomerByIdNotModified() throws Exception {
+
+        LocalDateTime modifiedAt = LocalDateTime.of(2020, 5, 1, 10, 15, 30, 123456000);
+        CustomerResponse customerResponse = CustomerResponse.builder().id(1L).title("Customer 1")
+            .createdAt(modifiedAt.minusDays(1)).modifiedAt(modifiedAt).version(0L).build();
+        when(customerProductsService.getCustomerById(1L)).thenReturn(customerResponse);
+
+        MvcResult firstResult = mvc.perform(MockMvcRequestBuilders.get("/customers/1")
+            .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.ETAG, EntityValidator.of(0L, modifiedAt).getETag()))
+            .andExpect(jsonPath("$.id", is(1)))
+            .andReturn();
+
+        mvc.perform(MockMvcRequestBuilders.get("/customers/1")
+            .header(HttpHeaders.IF_NONE_MATCH, firstResult.getResponse().getHeader(HttpHeaders.ETAG)))
+            .andExpect(status().isNotModified())
+            .andExpect(content().string(""));
+        mvc.perform(MockMvcRequestBuilders.get("/customers/1")
+            .header(HttpHeaders.IF_MODIFIED_SINCE, firstResult.getResponse().getHeader(HttpHeaders.LAST_MODIFIED)))
+            .andExpect(status().isNotModified());
+        verify(customerProductsService, times(3)).getCustomerById(1L);
+
+        customerResponse.setVersion(1L);
+        mvc.perform(MockMvcRequestBuilders.get("/customers/1")
+            .header(HttpHeaders.IF_NONE_MATCH, firstResult.getResponse().getHeader(HttpHeaders.ETAG)))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.id", is(1)));
+    }
+
+    @Test
+    public void testGetProductsByCustomerNotModified() throws Exception {
+
+        LocalDateTime modifiedAt = LocalDateTime.of(2020, 5, 1, 10, 15, 30);
+        when(customerProductsService.getProductsVersion(1L)).thenReturn(new VersionStamp(modifiedAt, 5L, null));
+
+        mvc.perform(MockMvcRequestBuilders.get("/customers/1/products")
+            .header(HttpHeaders.IF_NONE_MATCH, EntityValidator.of(5L, modifiedAt).getETag()))
+            .andExpect(status().isNotModified());
+        verify(customerProductsService, never())
+            .getProductsByCustomerId(anyLong(), ArgumentMatchers.any(Pageable.class));
+
+        when(customerProductsService.getProductsByCustomerId(eq(1L), ArgumentMatchers.any(Pageable.class)))
+            .thenReturn(new PageImpl<>(productResponseList.subList(0, 1)));
+        mvc.perform(MockMvcRequestBuilders.get("/customers/1/products")
+            .header(HttpHeaders.IF_NONE_MATCH, EntityValidator.of(4L, modifiedAt).getETag()))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.ETAG, EntityValidator.of(5L, modifiedAt).getETag()));
+
+        LocalDateTime committedAt = modifiedAt.plusSeconds(1L);
+        when(customerProductsService.getProductsVersion(1L)).thenReturn(new VersionStamp(modifiedAt, 5L, committedAt));
+        mvc.perform(MockMvcRequestBuilders.get("/customers/1/products")
+            .header(HttpHeaders.IF_NONE_MATCH, EntityValidator.of(5L, modifiedAt).getETag()))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.ETAG, EntityValidator.of(5L, modifiedAt, committedAt).getETag()));
+
+        mvc.perform(MockMvcRequestBuilders.get("/customers/1/products"))
+            .andExpect(status().isOk())
+            .andExpect(header().doesNotExist(HttpHeaders.ETAG));
+        verify(customerProductsService, times(3)).getProductsVersion(1L);
+    }
+
+    @Test
+    public void testPatchProductWithIfMatch() throws Exception {
+
+        String staleTag = EntityValidator.of(3L, LocalDateTime.of(2020, 5, 1, 10, 15, 30)).getETag();
+        doThrow(new OptimisticLockingFailureException("product by id : 7 is not at version : 3"))
+            .when(customerProductsService)
+            .patchProduct(eq(7L), ArgumentMatchers.any(ProductRequest.class), eq(Collections.singletonList(3L)));
+
+        mvc.perform(MockMvcRequestBuilders.patch("/products/7")
+            .header(HttpHeaders.IF_MATCH, staleTag)
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"price\":15}"))
+            .andExpect(status().isPreconditionFailed());
+        mvc.perform(MockMvcRequestBuilders.patch("/products/7")
+            .header(HttpHeaders.IF_MATCH, "\"not-a-tag\"")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"price\":15}"))
+            .andExpect(status().isPreconditionFailed());
+        mvc.perform(MockMvcRequestBuilders.patch("/products/7")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"price\":15}"))
+            .andExpect(status().isOk())
+            .andExpect(content().string("7"));
+        verify(customerProductsService).patchProduct(eq(7L), ArgumentMatchers.any(ProductRequest.class), isNull());
+    }
+
+    @Test
+    public void testPatchProductWithWeakOrListedIfMatch() throws Exception {
+
+        LocalDateTime modifiedAt = LocalDateTime.of(2020, 5, 1, 10, 15, 30);
+        String currentTag = EntityValidator.of(4L, modifiedAt).getETag();
+        String staleTag = EntityValidator.of(3L, modifiedAt).getETag();
+
+        mvc.perform(MockMvcRequestBuilders.patch("/products/7")
+            .header(HttpHeaders.IF_MATCH, "W/" + currentTag)
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"price\":15}"))
+            .andExpect(status().isPreconditionFailed());
+        String truncatedTag = currentTag.substring(0, currentTag.lastIndexOf('.')) + "\"";
+        String listingTag = EntityValidator.of(4L, modifiedAt, modifiedAt.plusSeconds(1L)).getETag();
+        for (String foreignTag : Arrays.asList(truncatedTag, listingTag, "\"4-zz.0\"", "\"4-5eac1f02.0.0\"")) {
+            mvc.perform(MockMvcRequestBuilders.patch("/products/7")
+                .header(HttpHeaders.IF_MATCH, foreignTag)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"price\":15}"))
+                .andExpect(status().isPreconditionFailed());
+        }
+        verify(customerProductsService, never())
+            .patchProduct(anyLong(), ArgumentMatchers.any(ProductRequest.class), ArgumentMatchers.any());
+
+        mvc.perform(MockMvcRequestBuilders.patch("/products/7")
+            .header(HttpHeaders.IF_MATCH, "W/" + staleTag + ", " + staleTag + ", " + currentTag)
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"price\":15}"))
+            .andExpect(status().isOk());
+        verify(customerProductsService)
+            .patchProduct(eq(7L), ArgumentMatchers.any(ProductRequest.class), eq(Arrays.asList(3L, 4L)));
+    }
+
+    @Test
+    public void testUpdateProductWriteBehind() throws Exception {
+
+        when(productWriteBehind.submit(eq(7L), ArgumentMatchers.any(ProductRequest.class))).thenReturn(true);
+        when(customerProductsService.updateProduct(eq(8L), ArgumentMatchers.any(ProductRequest.class))).thenReturn(8L);
+
+        mvc.perform(MockMvcRequestBuilders.put("/products/7")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"price\":15}"))
+            .andExpect(status().isAccepted())
+            .andExpect(content().string("7"));
+        verify(customerProductsService, never()).updateProduct(eq(7L), ArgumentMatchers.any(ProductRequest.class));
+
+        mvc.perform(MockMvcRequestBuilders.put("/products/8")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"price\":15}"))
+            .andExpect(status().isOk())
+            .andExpect(content().string("8"));
+        InOrder writeThrough = inOrder(productWriteBehind, customerProductsService);
+        writeThrough.verify(productWriteBehind).flush(8L);
+        writeThrough.verify(customerProductsService).updateProduct(eq(8L), ArgumentMatchers.any(ProductRequest.class));
+        verify(productWriteBehind, never()).flush(7L);
+
+        mvc.perform(MockMvcRequestBuilders.delete("/products/7"))
+            .andExpect(status().isOk());
+        verify(productWriteBehind).flush(7L);
+        verify(customerProductsService).deleteProduct(7L);
+    }
+
+    @Test
+    public void testGetProductStats() throws Exception {
+
+        ProductStatsResponse stats = ProductStatsResponse.builder().customerId(1L).productCount(2L)
+            .totalPrice(new BigDecimal("30.00")).minPrice(BigDecimal.TEN).maxPrice(new BigDecimal("20.00"))
+            .averagePrice(new BigDecimal("15.00")).build();
+        when(customerProductsService.getProductStats(1L)).thenReturn(stats);
+        when(customerProductsService.getTopCustomersByTotalPrice(1)).thenReturn(Collections.singletonList(stats));
+
+        mvc.perform(MockMvcRequestBuilders.get("/customers/1/products/stats"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.productCount", is(2)))
+            .andExpect(jsonPath("$.averagePrice", is(15.0)));
+        mvc.perform(MockMvcRequestBuilders.get("/customers/stats/top").param("limit", "1"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$[0].customerId", is(1)));
+        mvc.perform(MockMvcRequestBuilders.get("/customers/stats/top").param("limit", "0"))
+            .andExpect(status().isBadRequest());
+        verify(customerProductsService, never()).getTopCustomersByTotalPrice(0);
+    }
+
+    @Test
+    public void testGetProductsByPrice() throws Exception {
+
+        when(customerProductsService.getProductsByCustomerIdAndPrice(eq(1L), eq(new BigDecimal("1.5")), isNull(),
+            eq(true), ArgumentMatchers.any(Pageable.class)))
+            .thenReturn(new PageImpl<>(productResponseList.subList(0, 2), PageRequest.of(0, 2), 3L));
+
+        mvc.perform(MockMvcRequestBuilders.get("/customers/1/products").param("minPrice", "1.5")
+            .param("sort", "price,desc").param("size", "2"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.productsList[0].id", is(productResponseList.get(0).getId().intValue())))
+            .andExpect(jsonPath("$.totalItems", is(3)))
+            .andExpect(jsonPath("$.hasNext", is(true)));
+        mvc.perform(MockMvcRequestBuilders.get("/customers/1/products").param("sort", "title"))
+            .andExpect(status().isBadRequest());
+        mvc.perform(MockMvcRequestBuilders.get("/customers/1/products").param("minPrice", "2")
+            .param("maxPrice", "1"))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testGetChanges() throws Exception {
+
+        LocalDateTime changedAt = LocalDateTime.of(2024, 5, 1, 10, 0, 0, 123456000);
+        ChangeResponse change = ChangeResponse.builder().entity(ChangedEntity.PRODUCT).id(7L)
+            .operation(ChangeResponse.Operation.UPDATED).changedAt(changedAt).version(2L)
+            .product(productResponseList.get(0)).build();
+        when(customerProductsService.getChanges(isNull(), eq(1)))
+            .thenReturn(new SliceImpl<>(Collections.singletonList(change), PageRequest.of(0, 1), true));
+
+        mvc.perform(MockMvcRequestBuilders.get("/changes").param("limit", "1"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.changes[0].entity", is("PRODUCT")))
+            .andExpect(jsonPath("$.changes[0].operation", is("UPDATED")))
+            .andExpect(jsonPath("$.hasMore", is(true)))
+            .andExpect(jsonPath("$.nextCursor",
+                is(CursorCodec.encode(new ChangePosition(changedAt, ChangedEntity.PRODUCT, 7L)))));
+
+        mvc.perform(MockMvcRequestBuilders.get("/changes").param("since", "not-a-cursor"))
+            .andExpect(status().isBadRequest());
+        mvc.perform(MockMvcRequestBuilders.get("/changes").param("limit", "0"))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testGetChangesAfterPurgeHorizon() throws Exception {
+
+        LocalDateTime horizon = LocalDateTime.of(2024, 5, 1, 10, 0);
+        when(customerProductsService.getChangesHorizon()).thenReturn(horizon);
+        when(customerProductsService.getChanges(ArgumentMatchers.any(), eq(100)))
+            .thenReturn(new SliceImpl<>(Collections.emptyList(), PageRequest.of(0, 100), false));
+
+        String expired = CursorCodec.encode(new ChangePosition(horizon.minusNanos(1000), ChangedEntity.PRODUCT, 7L));
+        mvc.perform(MockMvcRequestBuilders.get("/changes").param("since", expired))
+            .andExpect(status().isGone())
+            .andExpect(content().string(String.format(CustomersProductsController.CHANGES_CURSOR_EXPIRED, horizon)));
+        String current = CursorCodec.encode(new ChangePosition(horizon, ChangedEntity.PRODUCT, 7L));
+        mvc.perform(MockMvcRequestBuilders.get("/changes").param("since", current))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.nextCursor", is(current)));
+        mvc.perform(MockMvcRequestBuilders.get("/changes"))
+            .andExpect(status().isOk());
+    }
+
+    @Test
+    public void testSearchProducts() throws Exception {
+
+        when(customerProductsService.isSearchReady()).thenReturn(true);
+        when(customerProductsService.searchProducts(eq("test prod"), isNull(), ArgumentMatchers.any(Pageable.class)))
+            .thenReturn(new PageImpl<>(productResponseList.subList(0, 2), PageRequest.of(0, 2), 9L));
+
+        mvc.perform(MockMvcRequestBuilders.get("/products/search").param("q", "test prod").param("size", "2"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.productsList[1].id", is(productResponseList.get(1).getId().intValue())))
+            .andExpect(jsonPath("$.totalItems", is(9)))
+            .andExpect(jsonPath("$.totalPages", is(5)))
+            .andExpect(jsonPath("$.hasNext", is(true)));
+        mvc.perform(MockMvcRequestBuilders.get("/products/search").param("q", " "))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testSearchProductsWhileIndexIsBuilt() throws Exception {
+
+        when(customerProductsService.isSearchReady()).thenReturn(false);
+
+        mvc.perform(MockMvcRequestBuilders.get("/products/search").param("q", "test prod"))
+            .andExpect(status().isServiceUnavailable())
+            .andExpect(header().string(HttpHeaders.RETRY_AFTER, "5"))
+            .andExpect(content().string(CustomersProductsController.SEARCH_INDEX_NOT_READY));
+        verify(customerProductsService, never()).searchProducts(ArgumentMatchers.anyString(),
+            ArgumentMatchers.any(), ArgumentMatchers.any(Pageable.class));
+    }
 }
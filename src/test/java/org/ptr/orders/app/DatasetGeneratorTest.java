@@ -0,0 +1,83 @@
+package org.ptr.orders.app;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.ptr.orders.app.dao.CustomersRepository;
+import org.ptr.orders.app.dao.ProductsRepository;
+import org.ptr.orders.app.rest.dto.DatasetResponse;
+import org.ptr.orders.app.service.DatasetGenerator;
+import org.ptr.orders.app.service.DatasetGenerator.Distribution;
+import org.ptr.orders.app.service.DatasetGenerator.PriceDistribution;
+import org.ptr.orders.app.service.DatasetGenerator.Spec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class DatasetGeneratorTest {
+
+    @Autowired
+    private DatasetGenerator datasetGenerator;
+    @Autowired
+    private CustomersRepository customersRepository;
+    @Autowired
+    private ProductsRepository productsRepository;
+
+    @Test
+    public void generateSkewedDatasetTest() {
+
+        Spec spec = datasetGenerator.configuredSpec().toBuilder()
+            .customers(40)
+            .productsPerCustomer(5)
+            .productsDistribution(Distribution.ZIPF)
+            .skew(1.2)
+            .missingPriceRatio(0.2)
+            .threads(3)
+            .batchSize(7)
+            .chunkSize(13)
+            .seed(7L)
+            .build();
+        long customersCount = customersRepository.count();
+        long productsCount = productsRepository.count();
+
+        DatasetResponse datasetResponse = datasetGenerator.generate(spec);
+
+        int[] productCounts = DatasetGenerator.productCounts(spec);
+        long products = Arrays.stream(productCounts).asLongStream().sum();
+        assertEquals(Long.valueOf(40L), datasetResponse.getCustomers());
+        assertEquals(Long.valueOf(products), datasetResponse.getProducts());
+        assertTrue("top customer owns " + datasetResponse.getMaxProductsPerCustomer(),
+            datasetResponse.getMaxProductsPerCustomer() > 40);
+        assertEquals(customersCount + 40, customersRepository.count());
+        assertEquals(productsCount + products, productsRepository.count());
+        assertArrayEquals(productCounts, DatasetGenerator.productCounts(spec));
+    }
+
+    @Test
+    public void productCountsFollowDistributionTest() {
+
+        Spec spec = datasetGenerator.configuredSpec().toBuilder()
+            .customers(1000)
+            .productsPerCustomer(10)
+            .priceDistribution(PriceDistribution.UNIFORM)
+            .minPrice(BigDecimal.ONE)
+            .build();
+
+        assertTrue(Arrays.stream(DatasetGenerator.productCounts(spec.toBuilder()
+            .productsDistribution(Distribution.FIXED).build())).allMatch(count -> count == 10));
+        int[] uniform = DatasetGenerator.productCounts(spec.toBuilder().productsDistribution(Distribution.UNIFORM)
+            .build());
+        assertTrue(Arrays.stream(uniform).allMatch(count -> count >= 0 && count <= 20));
+        assertEquals(10.0, Arrays.stream(uniform).average().getAsDouble(), 1.0);
+        int[] zipf = DatasetGenerator.productCounts(spec.toBuilder().productsDistribution(Distribution.ZIPF).build());
+        assertEquals(10_000.0, Arrays.stream(zipf).sum(), 500.0);
+        assertTrue(Arrays.stream(zipf).max().getAsInt() > 1000);
+    }
+}
@@ -0,0 +1,160 @@
+package org.ptr.orders.app;
+
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.ptr.orders.app.rest.dto.CustomerRequest;
+import org.ptr.orders.app.rest.dto.ProductRequest;
+import org.ptr.orders.app.service.CustomerProductsService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+/**
+ * Query budgets of the endpoints, requests go through controller, service and repositories down to the
+ * database in the shared application context. By-id caches are cleared before each test, in-memory
+ * indexes of the customer are loaded beforehand. Repeated and conditional by-id reads are served by the caches
+ * alone, a conditional listing costs its validator query
+ *
+ * */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class EndpointQueryBudgetTest {
+
+    private static final int PRODUCTS = 5;
+
+    @Autowired
+    private WebApplicationContext webApplicationContext;
+    @Autowired
+    private CustomerProductsService customerProductsService;
+    @Autowired
+    private CacheManager cacheManager;
+
+    private MockMvc mvc;
+    private Long customerId;
+    private List<Long> productIds;
+
+    @Before
+    public void setUp() {
+
+        mvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
+        customerId = customerProductsService.createCustomer(CustomerRequest.builder()
+            .title("Endpoint budget customer").build()).getId();
+        productIds = customerProductsService.createProducts(customerId, IntStream.range(0, PRODUCTS)
+            .mapToObj(i -> ProductRequest.builder().title("Endpoint budget " + i).price(BigDecimal.valueOf(i)).build())
+            .collect(Collectors.toList()));
+        customerProductsService.getProductsByCustomerIdAndPrice(customerId, null, null, false, PageRequest.of(0, 1));
+        cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
+    }
+
+    @Test
+    public void readEndpointsQueryBudgetTest() throws Exception {
+
+        SqlStatementCounter.start();
+        mvc.perform(MockMvcRequestBuilders.get("/customers/" + customerId)).andExpect(status().isOk());
+        SqlStatementCounter.assertStatements(1, 0, 0, 0);
+
+        SqlStatementCounter.start();
+        mvc.perform(MockMvcRequestBuilders.get("/products/" + productIds.get(0))).andExpect(status().isOk());
+        SqlStatementCounter.assertStatements(1, 0, 0, 0);
+
+        SqlStatementCounter.start();
+        mvc.perform(MockMvcRequestBuilders.get("/customers/" + customerId + "/products")).andExpect(status().isOk());
+        SqlStatementCounter.assertStatements(1, 0, 0, 0);
+
+        SqlStatementCounter.start();
+        mvc.perform(MockMvcRequestBuilders.get("/customers/" + customerId + "/products?sort=price,desc"))
+            .andExpect(status().isOk());
+        SqlStatementCounter.assertStatements(1, 0, 0, 0);
+
+        SqlStatementCounter.start();
+        mvc.perform(MockMvcRequestBuilders.get("/customers/" + customerId + "/products?after=&size=2"))
+            .andExpect(status().isOk());
+        SqlStatementCounter.assertStatements(1, 0, 0, 0);
+    }
+
+    @Test
+    public void cachedAndConditionalReadsQueryBudgetTest() throws Exception {
+
+        for (String path : Arrays.asList("/customers/" + customerId, "/products/" + productIds.get(0))) {
+            mvc.perform(MockMvcRequestBuilders.get(path)).andExpect(status().isOk());
+
+            SqlStatementCounter.start();
+            String eTag = mvc.perform(MockMvcRequestBuilders.get(path)).andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+            SqlStatementCounter.assertStatements(0, 0, 0, 0);
+
+            SqlStatementCounter.start();
+            mvc.perform(MockMvcRequestBuilders.get(path).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified());
+            SqlStatementCounter.assertStatements(0, 0, 0, 0);
+        }
+
+        String listing = "/customers/" + customerId + "/products";
+        SqlStatementCounter.start();
+        String eTag = mvc.perform(MockMvcRequestBuilders.get(listing).header(HttpHeaders.IF_NONE_MATCH, "\"0\""))
+            .andExpect(status().isOk())
+            .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        SqlStatementCounter.assertStatements(2, 0, 0, 0);
+
+        SqlStatementCounter.start();
+        mvc.perform(MockMvcRequestBuilders.get(listing).header(HttpHeaders.IF_NONE_MATCH, eTag))
+            .andExpect(status().isNotModified());
+        SqlStatementCounter.assertStatements(1, 0, 0, 0);
+    }
+
+    @Test
+    public void writeEndpointsQueryBudgetTest() throws Exception {
+
+        SqlStatementCounter.start();
+        mvc.perform(MockMvcRequestBuilders.post("/customers/" + customerId + "/products")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"title\":\"Endpoint budget new\",\"price\":7}"))
+            .andExpect(status().isOk());
+        SqlStatementCounter.assertStatements(1, 1, 0, 0);
+
+        SqlStatementCounter.start();
+        mvc.perform(MockMvcRequestBuilders.put("/customers/" + customerId)
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"title\":\"Endpoint budget renamed\"}"))
+            .andExpect(status().isOk());
+        SqlStatementCounter.assertStatements(1, 0, 1, 0);
+
+        SqlStatementCounter.start();
+        mvc.perform(MockMvcRequestBuilders.put("/products/" + productIds.get(0))
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"price\":8}"))
+            .andExpect(status().isOk());
+        SqlStatementCounter.assertStatements(1, 0, 1, 0);
+
+        SqlStatementCounter.start();
+        mvc.perform(MockMvcRequestBuilders.patch("/products/" + productIds.get(1))
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"price\":9}"))
+            .andExpect(status().isOk());
+        SqlStatementCounter.assertStatements(1, 0, 1, 0);
+
+        SqlStatementCounter.start();
+        mvc.perform(MockMvcRequestBuilders.delete("/products/" + productIds.get(2))).andExpect(status().isOk());
+        SqlStatementCounter.assertStatements(1, 0, 1, 0);
+
+        SqlStatementCounter.start();
+        mvc.perform(MockMvcRequestBuilders.delete("/customers/" + customerId)).andExpect(status().isOk());
+        SqlStatementCounter.assertStatements(0, 0, 2, 0);
+    }
+}
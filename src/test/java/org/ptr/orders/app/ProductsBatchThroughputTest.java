@@ -0,0 +1,79 @@
+package org.ptr.orders.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.ptr.orders.app.rest.CustomersProductsController;
+import org.ptr.orders.app.rest.dto.ProductRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.junit4.SpringRunner;
+
+/**
+ * Compares rows/sec of single-item product creation endpoint with the batch endpoint
+ *
+ * */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@Slf4j
+public class ProductsBatchThroughputTest {
+
+    private static final Long CUSTOMER_ID = 1L;
+    private static final int ROWS = 1000;
+
+    @Autowired
+    private CustomersProductsController customersProductsController;
+
+    @Test
+    public void batchEndpointOutperformsSingleItemEndpoint() throws Exception {
+
+        List<ProductRequest> requests = productRequests("single");
+        long singleStart = System.nanoTime();
+        for (ProductRequest request : requests) {
+            ResponseEntity<?> response = customersProductsController.createNewProductForCustomer(CUSTOMER_ID, request);
+            assertEquals(HttpStatus.OK, response.getStatusCode());
+            assertNotNull(response.getBody());
+        }
+        double singleRowsPerSec = rowsPerSec(ROWS, System.nanoTime() - singleStart);
+
+        requests = productRequests("batch");
+        long batchStart = System.nanoTime();
+        ResponseEntity<?> response = customersProductsController.createNewProductsForCustomer(CUSTOMER_ID, requests);
+        double batchRowsPerSec = rowsPerSec(ROWS, System.nanoTime() - batchStart);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        List<?> createdIds = (List<?>) response.getBody();
+        assertNotNull(createdIds);
+        assertEquals(ROWS, createdIds.size());
+        assertEquals(ROWS, createdIds.stream().distinct().count());
+
+        log.info("products created : single-item endpoint {} rows/sec, batch endpoint {} rows/sec",
+            String.format("%.0f", singleRowsPerSec), String.format("%.0f", batchRowsPerSec));
+        assertTrue(batchRowsPerSec > singleRowsPerSec);
+    }
+
+    private static List<ProductRequest> productRequests(String prefix) {
+        return IntStream.range(0, ROWS).mapToObj(i -> ProductRequest.builder()
+            .title(prefix + " throughput product " + i)
+            .price(BigDecimal.valueOf(i))
+            .isDeleted(Boolean.FALSE)
+            .createdAt(LocalDateTime.now())
+            .build()
+        ).collect(Collectors.toList());
+    }
+
+    private static double rowsPerSec(int rows, long nanos) {
+        return rows * 1_000_000_000d / nanos;
+    }
+}
@@ -0,0 +1,70 @@
+package org.ptr.orders.app;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.stereotype.Component;
+
+/**
+ *
+ * Query budgets of tests : counts SQL statements Hibernate prepares on the calling thread between
+ * {@link #start()} and {@link #assertStatements}, so a change adding round trips (N+1 reads of a lazy relation,
+ * a read before each write) fails the build. Counted are statements prepared, so rows batched into the same
+ * insert or update count once, however many JDBC batches they take.
+ * Registered as statement inspector of every SpringBootTest context, being picked up by component scan
+ * from the test classes
+ *
+ * */
+@Component
+public class SqlStatementCounter implements HibernatePropertiesCustomizer {
+
+    private static final ThreadLocal<List<String>> STATEMENTS = new ThreadLocal<>();
+
+    @Override
+    public void customize(Map<String, Object> hibernateProperties) {
+        StatementInspector inspector = SqlStatementCounter::record;
+        hibernateProperties.put(AvailableSettings.STATEMENT_INSPECTOR, inspector);
+    }
+
+    /**
+     * starts counting statements of current thread, from zero
+     * */
+    public static void start() {
+        STATEMENTS.set(new ArrayList<>());
+    }
+
+    /**
+     * stops counting and checks statements since {@link #start()} by kind, failure lists them all
+     * */
+    public static void assertStatements(int selects, int inserts, int updates, int deletes) {
+
+        List<String> statements = STATEMENTS.get();
+        STATEMENTS.remove();
+        if (statements == null) {
+            throw new IllegalStateException("statements are not counted, start() was not called");
+        }
+        String counted = String.format("select %d insert %d update %d delete %d",
+            count(statements, "select"), count(statements, "insert"), count(statements, "update"),
+            count(statements, "delete"));
+        assertEquals("statements " + String.join(" ; ", statements),
+            String.format("select %d insert %d update %d delete %d", selects, inserts, updates, deletes), counted);
+    }
+
+    private static String record(String sql) {
+        List<String> statements = STATEMENTS.get();
+        if (statements != null) {
+            statements.add(sql);
+        }
+        return sql;
+    }
+
+    private static long count(List<String> statements, String kind) {
+        return statements.stream().filter(sql -> sql.trim().toLowerCase(Locale.ROOT).startsWith(kind)).count();
+    }
+}